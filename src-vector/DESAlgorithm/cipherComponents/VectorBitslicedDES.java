@@ -0,0 +1,507 @@
+package DESAlgorithm.cipherComponents;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The bitsliced DES core running on the vector units of the CPU (e.g. AVX2, AVX-512) through the Vector API.
+ * Each bit-plane is as wide as the preferred vector, so a single vector instruction works on several batches of 64 blocks
+ * (4 batches with AVX2, 8 batches with AVX-512). The planes of all the batches are kept in long arrays,
+ * where the plane j takes the LANES longs from the index j * LANES, one long for each batch.
+ *
+ * This class needs the incubator module jdk.incubator.vector, so it is kept in its own source root (src-vector),
+ * which is compiled after src and onto the same output, with "--add-modules jdk.incubator.vector":
+ *     javac --add-modules jdk.incubator.vector -cp out -d out src-vector/DESAlgorithm/cipherComponents/VectorBitslicedDES.java
+ * The classes in src compile without the module. This class is only loaded by its name in BitslicedDES.create(...),
+ * which uses the scalar BitslicedDES when this class, the module (java also needs "--add-modules jdk.incubator.vector") or wide vectors are not there.
+ */
+class VectorBitslicedDES extends BitslicedDES {
+
+    // The widest vector the CPU handles well
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    // How many batches of 64 blocks are processed together (one lane of a vector for each batch)
+    private static final int LANES = SPECIES.length();
+
+    /**
+     * The constructor
+     * @param packedKeySets The packed K1, K2, ..., K16 of each pass
+     * @param inverted Whether each pass uses its key set in the inverted order (for decipher)
+     */
+    VectorBitslicedDES(long[][] packedKeySets, boolean[] inverted){
+        super(packedKeySets, inverted);
+    }
+
+    /**
+     * Check whether the vectors are wider than a long, otherwise the scalar core is as fast as this one.
+     * @return true if this core should be used
+     */
+    static boolean isSupported(){
+        return LANES > 1;
+    }
+
+    /**
+     * Perform DES on several batches of 64 blocks.
+     * The batches are processed LANES at a time, the rest of them are processed by the scalar core.
+     * @param in The input bytes
+     * @param inOff The index of the first input byte
+     * @param batchNum How many batches of 64 blocks (512 bytes) should be processed
+     * @param out The array to write the output bytes into (can be the same as the input)
+     * @param outOff The index where the first output byte goes
+     */
+    @Override
+    void cryptBatches(byte[] in, int inOff, int batchNum, byte[] out, int outOff){
+        // the working planes, which are reused by all the groups of batches
+        long[] blocks = new long[BATCH_BLOCKS];
+        long[] planes = new long[64 * LANES];
+        long[] l = new long[32 * LANES];
+        long[] r = new long[32 * LANES];
+
+        int groupNum = batchNum / LANES;
+        for (int group = 0; group < groupNum; group++){
+            // load the batches, each of them is transposed into the lane of its own
+            for (int lane = 0; lane < LANES; lane++){
+                int offset = inOff + (group * LANES + lane) * BATCH_BYTES;
+                for (int b = 0; b < BATCH_BLOCKS; b++){
+                    blocks[b] = blockByteToLong(in, offset + b * 8);
+                }
+                transpose(blocks);
+                for (int j = 0; j < 64; j++){
+                    planes[j * LANES + lane] = blocks[j];
+                }
+            }
+
+            // encipher or decipher all the batches at once
+            crypt(planes, l, r);
+
+            // take the lanes out, transpose them back into blocks, then store them
+            for (int lane = 0; lane < LANES; lane++){
+                for (int j = 0; j < 64; j++){
+                    blocks[j] = planes[j * LANES + lane];
+                }
+                transpose(blocks);
+                int offset = outOff + (group * LANES + lane) * BATCH_BYTES;
+                for (int b = 0; b < BATCH_BLOCKS; b++){
+                    blockLongToByte(blocks[b], out, offset + b * 8);
+                }
+            }
+        }
+
+        // the batches that cannot fill all the lanes
+        int done = groupNum * LANES * BATCH_BYTES;
+        super.cryptBatches(in, inOff + done, batchNum - groupNum * LANES, out, outOff + done);
+    }
+
+    /**
+     * Perform IP, the 16 iterations of every pass and IP-1 on the vectorized bit-planes.
+     * @param planes The 64 input planes, which would be replaced by the 64 output planes
+     * @param l The working array for the 32 planes of L
+     * @param r The working array for the 32 planes of R
+     */
+    private void crypt(long[] planes, long[] l, long[] r){
+        // the initial permutation IP only decides which plane goes to which place of L0 and R0
+        for (int i = 0; i < 32; i++){
+            System.arraycopy(planes, (Constants.IP[i] - 1) * LANES, l, i * LANES, LANES);
+            System.arraycopy(planes, (Constants.IP[i + 32] - 1) * LANES, r, i * LANES, LANES);
+        }
+
+        // perform the 16-time iteration of every pass: L' = R, R' = L (+) f(R, K)
+        for (int i = 0; i < this.keyMasks.length; i++){
+            // the preoutput R16L16 of a pass is the L0R0 of the next pass, so L and R are swapped back between the passes
+            if (i > 0 && i % Constants.ITERATION_TIMES == 0){
+                long[] nextL = r;
+                r = l;
+                l = nextL;
+            }
+
+            // calculate L (+) f(R, K) in the place of L
+            long[] k = this.keyMasks[i];
+            s1(r, k, l);
+            s2(r, k, l);
+            s3(r, k, l);
+            s4(r, k, l);
+            s5(r, k, l);
+            s6(r, k, l);
+            s7(r, k, l);
+            s8(r, k, l);
+
+            // swap L and R
+            long[] nextL = r;
+            r = l;
+            l = nextL;
+        }
+
+        // the preoutput is R16L16, the final permutation IP-1 again only decides which plane goes to which place
+        for (int i = 0; i < 64; i++){
+            int position = Constants.IP_INVERSE[i] - 1;
+            if (position < 32){
+                System.arraycopy(r, position * LANES, planes, i * LANES, LANES);
+            }else{
+                System.arraycopy(l, (position - 32) * LANES, planes, i * LANES, LANES);
+            }
+        }
+    }
+
+    /**
+     * Get an input of the S functions: a plane of R selected by E, XORed with the mask of K
+     * @param r The planes of R
+     * @param k The 48 masks of K for this iteration
+     * @param i The index of this input in the output of E (0 to 47)
+     * @return The input plane
+     */
+    private static LongVector input(long[] r, long[] k, int i){
+        return LongVector.fromArray(SPECIES, r, (Constants.E_BIT_SELECTION_TABLE[i] - 1) * LANES).lanewise(VectorOperators.XOR, k[i]);
+    }
+
+    /**
+     * The vectorized boolean circuit of S1, the output of S1 and P is XORed into L directly.
+     * @param r The planes of R
+     * @param k The 48 masks of K for this iteration
+     * @param l The planes of L
+     */
+    private static void s1(long[] r, long[] k, long[] l){
+        LongVector b0 = input(r, k, 0), b1 = input(r, k, 1), b2 = input(r, k, 2);
+        LongVector b3 = input(r, k, 3), b4 = input(r, k, 4), b5 = input(r, k, 5);
+        LongVector nb0 = b0.not(), nb1 = b1.not(), nb2 = b2.not(), nb3 = b3.not(), nb4 = b4.not(), nb5 = b5.not();
+        LongVector row0 = nb0.and(nb5), row1 = nb0.and(b5), row2 = b0.and(nb5), row3 = b0.and(b5);
+        LongVector hi0 = nb1.and(nb2), hi1 = nb1.and(b2), hi2 = b1.and(nb2), hi3 = b1.and(b2);
+        LongVector lo0 = nb3.and(nb4), lo1 = nb3.and(b4), lo2 = b3.and(nb4), lo3 = b3.and(b4);
+        LongVector c0 = hi0.and(lo0), c1 = hi0.and(lo1), c2 = hi0.and(lo2), c3 = hi0.and(lo3);
+        LongVector c4 = hi1.and(lo0), c5 = hi1.and(lo1), c6 = hi1.and(lo2), c7 = hi1.and(lo3);
+        LongVector c8 = hi2.and(lo0), c9 = hi2.and(lo1), c10 = hi2.and(lo2), c11 = hi2.and(lo3);
+        LongVector c12 = hi3.and(lo0), c13 = hi3.and(lo1), c14 = hi3.and(lo2), c15 = hi3.and(lo3);
+        LongVector o0 = row0.and(c0.or(c2).or(c5).or(c6).or(c7).or(c9).or(c11).or(c13))
+                .or(row1.and(c1.or(c4).or(c6).or(c8).or(c10).or(c11).or(c12).or(c15)))
+                .or(row2.and(c2.or(c3).or(c4).or(c7).or(c8).or(c9).or(c10).or(c13)))
+                .or(row3.and(c0.or(c1).or(c2).or(c5).or(c9).or(c11).or(c12).or(c15)));
+        LongVector o1 = row0.and(c0.or(c1).or(c2).or(c5).or(c10).or(c11).or(c12).or(c15))
+                .or(row1.and(c1.or(c2).or(c3).or(c4).or(c6).or(c9).or(c10).or(c13)))
+                .or(row2.and(c0.or(c2).or(c4).or(c5).or(c8).or(c9).or(c11).or(c14)))
+                .or(row3.and(c0.or(c1).or(c4).or(c7).or(c8).or(c11).or(c14).or(c15)));
+        LongVector o2 = row0.and(c0.or(c4).or(c5).or(c6).or(c8).or(c9).or(c10).or(c15))
+                .or(row1.and(c1.or(c2).or(c4).or(c5).or(c8).or(c9).or(c11).or(c14)))
+                .or(row2.and(c2.or(c5).or(c6).or(c7).or(c8).or(c11).or(c12).or(c13)))
+                .or(row3.and(c0.or(c3).or(c7).or(c9).or(c10).or(c11).or(c12).or(c14)));
+        LongVector o3 = row0.and(c2.or(c3).or(c5).or(c6).or(c8).or(c12).or(c13).or(c15))
+                .or(row1.and(c1.or(c2).or(c6).or(c7).or(c11).or(c12).or(c13).or(c14)))
+                .or(row2.and(c1.or(c4).or(c7).or(c8).or(c10).or(c11).or(c12).or(c14)))
+                .or(row3.and(c0.or(c5).or(c6).or(c7).or(c8).or(c9).or(c10).or(c15)));
+        // the permutation P only decides which plane of L each output bit goes to
+        int p0 = P_POSITIONS[0] * LANES;
+        LongVector.fromArray(SPECIES, l, p0).lanewise(VectorOperators.XOR, o0).intoArray(l, p0);
+        int p1 = P_POSITIONS[1] * LANES;
+        LongVector.fromArray(SPECIES, l, p1).lanewise(VectorOperators.XOR, o1).intoArray(l, p1);
+        int p2 = P_POSITIONS[2] * LANES;
+        LongVector.fromArray(SPECIES, l, p2).lanewise(VectorOperators.XOR, o2).intoArray(l, p2);
+        int p3 = P_POSITIONS[3] * LANES;
+        LongVector.fromArray(SPECIES, l, p3).lanewise(VectorOperators.XOR, o3).intoArray(l, p3);
+    }
+
+    /**
+     * The vectorized boolean circuit of S2, the output of S2 and P is XORed into L directly.
+     * @param r The planes of R
+     * @param k The 48 masks of K for this iteration
+     * @param l The planes of L
+     */
+    private static void s2(long[] r, long[] k, long[] l){
+        LongVector b0 = input(r, k, 6), b1 = input(r, k, 7), b2 = input(r, k, 8);
+        LongVector b3 = input(r, k, 9), b4 = input(r, k, 10), b5 = input(r, k, 11);
+        LongVector nb0 = b0.not(), nb1 = b1.not(), nb2 = b2.not(), nb3 = b3.not(), nb4 = b4.not(), nb5 = b5.not();
+        LongVector row0 = nb0.and(nb5), row1 = nb0.and(b5), row2 = b0.and(nb5), row3 = b0.and(b5);
+        LongVector hi0 = nb1.and(nb2), hi1 = nb1.and(b2), hi2 = b1.and(nb2), hi3 = b1.and(b2);
+        LongVector lo0 = nb3.and(nb4), lo1 = nb3.and(b4), lo2 = b3.and(nb4), lo3 = b3.and(b4);
+        LongVector c0 = hi0.and(lo0), c1 = hi0.and(lo1), c2 = hi0.and(lo2), c3 = hi0.and(lo3);
+        LongVector c4 = hi1.and(lo0), c5 = hi1.and(lo1), c6 = hi1.and(lo2), c7 = hi1.and(lo3);
+        LongVector c8 = hi2.and(lo0), c9 = hi2.and(lo1), c10 = hi2.and(lo2), c11 = hi2.and(lo3);
+        LongVector c12 = hi3.and(lo0), c13 = hi3.and(lo1), c14 = hi3.and(lo2), c15 = hi3.and(lo3);
+        LongVector o0 = row0.and(c0.or(c2).or(c3).or(c5).or(c8).or(c11).or(c12).or(c15))
+                .or(row1.and(c1.or(c4).or(c6).or(c7).or(c8).or(c11).or(c13).or(c14)))
+                .or(row2.and(c1.or(c3).or(c4).or(c6).or(c9).or(c10).or(c12).or(c15)))
+                .or(row3.and(c0.or(c1).or(c2).or(c5).or(c8).or(c11).or(c14).or(c15)));
+        LongVector o1 = row0.and(c0.or(c3).or(c4).or(c7).or(c9).or(c11).or(c12).or(c14))
+                .or(row1.and(c1.or(c2).or(c3).or(c4).or(c7).or(c8).or(c12).or(c15)))
+                .or(row2.and(c1.or(c2).or(c5).or(c6).or(c8).or(c10).or(c11).or(c15)))
+                .or(row3.and(c0.or(c5).or(c6).or(c9).or(c10).or(c11).or(c13).or(c14)));
+        LongVector o2 = row0.and(c0.or(c3).or(c4).or(c5).or(c6).or(c9).or(c10).or(c15))
+                .or(row1.and(c0.or(c3).or(c4).or(c5).or(c7).or(c11).or(c12).or(c14)))
+                .or(row2.and(c1.or(c2).or(c3).or(c4).or(c11).or(c13).or(c14).or(c15)))
+                .or(row3.and(c2.or(c4).or(c5).or(c7).or(c8).or(c9).or(c10).or(c14)));
+        LongVector o3 = row0.and(c0.or(c1).or(c5).or(c6).or(c8).or(c9).or(c11).or(c14))
+                .or(row1.and(c0.or(c1).or(c3).or(c4).or(c10).or(c13).or(c14).or(c15)))
+                .or(row2.and(c2.or(c3).or(c6).or(c7).or(c8).or(c12).or(c13).or(c15)))
+                .or(row3.and(c0.or(c3).or(c4).or(c5).or(c8).or(c10).or(c13).or(c15)));
+        // the permutation P only decides which plane of L each output bit goes to
+        int p0 = P_POSITIONS[4] * LANES;
+        LongVector.fromArray(SPECIES, l, p0).lanewise(VectorOperators.XOR, o0).intoArray(l, p0);
+        int p1 = P_POSITIONS[5] * LANES;
+        LongVector.fromArray(SPECIES, l, p1).lanewise(VectorOperators.XOR, o1).intoArray(l, p1);
+        int p2 = P_POSITIONS[6] * LANES;
+        LongVector.fromArray(SPECIES, l, p2).lanewise(VectorOperators.XOR, o2).intoArray(l, p2);
+        int p3 = P_POSITIONS[7] * LANES;
+        LongVector.fromArray(SPECIES, l, p3).lanewise(VectorOperators.XOR, o3).intoArray(l, p3);
+    }
+
+    /**
+     * The vectorized boolean circuit of S3, the output of S3 and P is XORed into L directly.
+     * @param r The planes of R
+     * @param k The 48 masks of K for this iteration
+     * @param l The planes of L
+     */
+    private static void s3(long[] r, long[] k, long[] l){
+        LongVector b0 = input(r, k, 12), b1 = input(r, k, 13), b2 = input(r, k, 14);
+        LongVector b3 = input(r, k, 15), b4 = input(r, k, 16), b5 = input(r, k, 17);
+        LongVector nb0 = b0.not(), nb1 = b1.not(), nb2 = b2.not(), nb3 = b3.not(), nb4 = b4.not(), nb5 = b5.not();
+        LongVector row0 = nb0.and(nb5), row1 = nb0.and(b5), row2 = b0.and(nb5), row3 = b0.and(b5);
+        LongVector hi0 = nb1.and(nb2), hi1 = nb1.and(b2), hi2 = b1.and(nb2), hi3 = b1.and(b2);
+        LongVector lo0 = nb3.and(nb4), lo1 = nb3.and(b4), lo2 = b3.and(nb4), lo3 = b3.and(b4);
+        LongVector c0 = hi0.and(lo0), c1 = hi0.and(lo1), c2 = hi0.and(lo2), c3 = hi0.and(lo3);
+        LongVector c4 = hi1.and(lo0), c5 = hi1.and(lo1), c6 = hi1.and(lo2), c7 = hi1.and(lo3);
+        LongVector c8 = hi2.and(lo0), c9 = hi2.and(lo1), c10 = hi2.and(lo2), c11 = hi2.and(lo3);
+        LongVector c12 = hi3.and(lo0), c13 = hi3.and(lo1), c14 = hi3.and(lo2), c15 = hi3.and(lo3);
+        LongVector o0 = row0.and(c0.or(c2).or(c3).or(c6).or(c9).or(c10).or(c12).or(c15))
+                .or(row1.and(c0.or(c3).or(c7).or(c9).or(c11).or(c12).or(c13).or(c14)))
+                .or(row2.and(c0.or(c3).or(c4).or(c5).or(c8).or(c11).or(c13).or(c14)))
+                .or(row3.and(c1.or(c2).or(c5).or(c6).or(c9).or(c10).or(c12).or(c15)));
+        LongVector o1 = row0.and(c3.or(c4).or(c6).or(c7).or(c9).or(c10).or(c11).or(c13))
+                .or(row1.and(c0.or(c1).or(c5).or(c6).or(c10).or(c11).or(c12).or(c14)))
+                .or(row2.and(c0.or(c1).or(c2).or(c5).or(c11).or(c12).or(c14).or(c15)))
+                .or(row3.and(c2.or(c4).or(c7).or(c8).or(c9).or(c10).or(c13).or(c15)));
+        LongVector o2 = row0.and(c0.or(c3).or(c4).or(c5).or(c6).or(c11).or(c12).or(c14))
+                .or(row1.and(c1.or(c4).or(c6).or(c7).or(c8).or(c11).or(c13).or(c14)))
+                .or(row2.and(c1.or(c5).or(c6).or(c8).or(c10).or(c13).or(c14).or(c15)))
+                .or(row3.and(c1.or(c4).or(c7).or(c9).or(c10).or(c11).or(c12).or(c14)));
+        LongVector o3 = row0.and(c2.or(c5).or(c6).or(c7).or(c8).or(c9).or(c11).or(c12))
+                .or(row1.and(c0.or(c1).or(c3).or(c4).or(c10).or(c13).or(c14).or(c15)))
+                .or(row2.and(c0.or(c3).or(c5).or(c6).or(c8).or(c9).or(c12).or(c15)))
+                .or(row3.and(c0.or(c2).or(c5).or(c7).or(c9).or(c11).or(c12).or(c13)));
+        // the permutation P only decides which plane of L each output bit goes to
+        int p0 = P_POSITIONS[8] * LANES;
+        LongVector.fromArray(SPECIES, l, p0).lanewise(VectorOperators.XOR, o0).intoArray(l, p0);
+        int p1 = P_POSITIONS[9] * LANES;
+        LongVector.fromArray(SPECIES, l, p1).lanewise(VectorOperators.XOR, o1).intoArray(l, p1);
+        int p2 = P_POSITIONS[10] * LANES;
+        LongVector.fromArray(SPECIES, l, p2).lanewise(VectorOperators.XOR, o2).intoArray(l, p2);
+        int p3 = P_POSITIONS[11] * LANES;
+        LongVector.fromArray(SPECIES, l, p3).lanewise(VectorOperators.XOR, o3).intoArray(l, p3);
+    }
+
+    /**
+     * The vectorized boolean circuit of S4, the output of S4 and P is XORed into L directly.
+     * @param r The planes of R
+     * @param k The 48 masks of K for this iteration
+     * @param l The planes of L
+     */
+    private static void s4(long[] r, long[] k, long[] l){
+        LongVector b0 = input(r, k, 18), b1 = input(r, k, 19), b2 = input(r, k, 20);
+        LongVector b3 = input(r, k, 21), b4 = input(r, k, 22), b5 = input(r, k, 23);
+        LongVector nb0 = b0.not(), nb1 = b1.not(), nb2 = b2.not(), nb3 = b3.not(), nb4 = b4.not(), nb5 = b5.not();
+        LongVector row0 = nb0.and(nb5), row1 = nb0.and(b5), row2 = b0.and(nb5), row3 = b0.and(b5);
+        LongVector hi0 = nb1.and(nb2), hi1 = nb1.and(b2), hi2 = b1.and(nb2), hi3 = b1.and(b2);
+        LongVector lo0 = nb3.and(nb4), lo1 = nb3.and(b4), lo2 = b3.and(nb4), lo3 = b3.and(b4);
+        LongVector c0 = hi0.and(lo0), c1 = hi0.and(lo1), c2 = hi0.and(lo2), c3 = hi0.and(lo3);
+        LongVector c4 = hi1.and(lo0), c5 = hi1.and(lo1), c6 = hi1.and(lo2), c7 = hi1.and(lo3);
+        LongVector c8 = hi2.and(lo0), c9 = hi2.and(lo1), c10 = hi2.and(lo2), c11 = hi2.and(lo3);
+        LongVector c12 = hi3.and(lo0), c13 = hi3.and(lo1), c14 = hi3.and(lo2), c15 = hi3.and(lo3);
+        LongVector o0 = row0.and(c1.or(c2).or(c6).or(c7).or(c10).or(c12).or(c13).or(c15))
+                .or(row1.and(c0.or(c1).or(c2).or(c5).or(c11).or(c13).or(c14).or(c15)))
+                .or(row2.and(c0.or(c2).or(c4).or(c5).or(c7).or(c8).or(c11).or(c14)))
+                .or(row3.and(c1.or(c4).or(c6).or(c7).or(c8).or(c11).or(c12).or(c15)));
+        LongVector o1 = row0.and(c0.or(c1).or(c2).or(c5).or(c11).or(c13).or(c14).or(c15))
+                .or(row1.and(c0.or(c3).or(c4).or(c5).or(c8).or(c9).or(c11).or(c14)))
+                .or(row2.and(c1.or(c4).or(c6).or(c7).or(c8).or(c11).or(c12).or(c15)))
+                .or(row3.and(c1.or(c3).or(c6).or(c9).or(c10).or(c12).or(c13).or(c15)));
+        LongVector o2 = row0.and(c0.or(c2).or(c3).or(c5).or(c7).or(c9).or(c12).or(c15))
+                .or(row1.and(c2.or(c4).or(c5).or(c7).or(c9).or(c10).or(c13).or(c14)))
+                .or(row2.and(c0.or(c1).or(c5).or(c6).or(c8).or(c10).or(c11).or(c13)))
+                .or(row3.and(c0.or(c1).or(c3).or(c4).or(c11).or(c13).or(c14).or(c15)));
+        LongVector o3 = row0.and(c0.or(c1).or(c3).or(c6).or(c8).or(c11).or(c12).or(c15))
+                .or(row1.and(c0.or(c2).or(c3).or(c5).or(c7).or(c9).or(c12).or(c15)))
+                .or(row2.and(c2.or(c5).or(c6).or(c7).or(c8).or(c9).or(c10).or(c12)))
+                .or(row3.and(c0.or(c1).or(c5).or(c6).or(c8).or(c10).or(c11).or(c13)));
+        // the permutation P only decides which plane of L each output bit goes to
+        int p0 = P_POSITIONS[12] * LANES;
+        LongVector.fromArray(SPECIES, l, p0).lanewise(VectorOperators.XOR, o0).intoArray(l, p0);
+        int p1 = P_POSITIONS[13] * LANES;
+        LongVector.fromArray(SPECIES, l, p1).lanewise(VectorOperators.XOR, o1).intoArray(l, p1);
+        int p2 = P_POSITIONS[14] * LANES;
+        LongVector.fromArray(SPECIES, l, p2).lanewise(VectorOperators.XOR, o2).intoArray(l, p2);
+        int p3 = P_POSITIONS[15] * LANES;
+        LongVector.fromArray(SPECIES, l, p3).lanewise(VectorOperators.XOR, o3).intoArray(l, p3);
+    }
+
+    /**
+     * The vectorized boolean circuit of S5, the output of S5 and P is XORed into L directly.
+     * @param r The planes of R
+     * @param k The 48 masks of K for this iteration
+     * @param l The planes of L
+     */
+    private static void s5(long[] r, long[] k, long[] l){
+        LongVector b0 = input(r, k, 24), b1 = input(r, k, 25), b2 = input(r, k, 26);
+        LongVector b3 = input(r, k, 27), b4 = input(r, k, 28), b5 = input(r, k, 29);
+        LongVector nb0 = b0.not(), nb1 = b1.not(), nb2 = b2.not(), nb3 = b3.not(), nb4 = b4.not(), nb5 = b5.not();
+        LongVector row0 = nb0.and(nb5), row1 = nb0.and(b5), row2 = b0.and(nb5), row3 = b0.and(b5);
+        LongVector hi0 = nb1.and(nb2), hi1 = nb1.and(b2), hi2 = b1.and(nb2), hi3 = b1.and(b2);
+        LongVector lo0 = nb3.and(nb4), lo1 = nb3.and(b4), lo2 = b3.and(nb4), lo3 = b3.and(b4);
+        LongVector c0 = hi0.and(lo0), c1 = hi0.and(lo1), c2 = hi0.and(lo2), c3 = hi0.and(lo3);
+        LongVector c4 = hi1.and(lo0), c5 = hi1.and(lo1), c6 = hi1.and(lo2), c7 = hi1.and(lo3);
+        LongVector c8 = hi2.and(lo0), c9 = hi2.and(lo1), c10 = hi2.and(lo2), c11 = hi2.and(lo3);
+        LongVector c12 = hi3.and(lo0), c13 = hi3.and(lo1), c14 = hi3.and(lo2), c15 = hi3.and(lo3);
+        LongVector o0 = row0.and(c1.or(c5).or(c6).or(c8).or(c11).or(c12).or(c14).or(c15))
+                .or(row1.and(c0.or(c1).or(c3).or(c6).or(c10).or(c11).or(c13).or(c14)))
+                .or(row2.and(c3.or(c4).or(c5).or(c7).or(c8).or(c9).or(c10).or(c15)))
+                .or(row3.and(c0.or(c1).or(c2).or(c5).or(c7).or(c9).or(c11).or(c12)));
+        LongVector o1 = row0.and(c1.or(c2).or(c4).or(c7).or(c9).or(c11).or(c12).or(c14))
+                .or(row1.and(c0.or(c3).or(c4).or(c5).or(c6).or(c8).or(c10).or(c15)))
+                .or(row2.and(c0.or(c5).or(c6).or(c8).or(c10).or(c11).or(c12).or(c15)))
+                .or(row3.and(c2.or(c3).or(c5).or(c7).or(c8).or(c9).or(c13).or(c14)));
+        LongVector o2 = row0.and(c0.or(c4).or(c5).or(c6).or(c7).or(c10).or(c11).or(c14))
+                .or(row1.and(c0.or(c1).or(c2).or(c5).or(c10).or(c11).or(c12).or(c15)))
+                .or(row2.and(c1.or(c3).or(c4).or(c6).or(c8).or(c12).or(c13).or(c15)))
+                .or(row3.and(c0.or(c3).or(c5).or(c6).or(c8).or(c9).or(c12).or(c15)));
+        LongVector o3 = row0.and(c3.or(c4).or(c6).or(c9).or(c10).or(c11).or(c12).or(c15))
+                .or(row1.and(c1.or(c5).or(c6).or(c7).or(c8).or(c10).or(c12).or(c13)))
+                .or(row2.and(c2.or(c3).or(c5).or(c6).or(c8).or(c9).or(c11).or(c13)))
+                .or(row3.and(c0.or(c3).or(c4).or(c7).or(c9).or(c11).or(c14).or(c15)));
+        // the permutation P only decides which plane of L each output bit goes to
+        int p0 = P_POSITIONS[16] * LANES;
+        LongVector.fromArray(SPECIES, l, p0).lanewise(VectorOperators.XOR, o0).intoArray(l, p0);
+        int p1 = P_POSITIONS[17] * LANES;
+        LongVector.fromArray(SPECIES, l, p1).lanewise(VectorOperators.XOR, o1).intoArray(l, p1);
+        int p2 = P_POSITIONS[18] * LANES;
+        LongVector.fromArray(SPECIES, l, p2).lanewise(VectorOperators.XOR, o2).intoArray(l, p2);
+        int p3 = P_POSITIONS[19] * LANES;
+        LongVector.fromArray(SPECIES, l, p3).lanewise(VectorOperators.XOR, o3).intoArray(l, p3);
+    }
+
+    /**
+     * The vectorized boolean circuit of S6, the output of S6 and P is XORed into L directly.
+     * @param r The planes of R
+     * @param k The 48 masks of K for this iteration
+     * @param l The planes of L
+     */
+    private static void s6(long[] r, long[] k, long[] l){
+        LongVector b0 = input(r, k, 30), b1 = input(r, k, 31), b2 = input(r, k, 32);
+        LongVector b3 = input(r, k, 33), b4 = input(r, k, 34), b5 = input(r, k, 35);
+        LongVector nb0 = b0.not(), nb1 = b1.not(), nb2 = b2.not(), nb3 = b3.not(), nb4 = b4.not(), nb5 = b5.not();
+        LongVector row0 = nb0.and(nb5), row1 = nb0.and(b5), row2 = b0.and(nb5), row3 = b0.and(b5);
+        LongVector hi0 = nb1.and(nb2), hi1 = nb1.and(b2), hi2 = b1.and(nb2), hi3 = b1.and(b2);
+        LongVector lo0 = nb3.and(nb4), lo1 = nb3.and(b4), lo2 = b3.and(nb4), lo3 = b3.and(b4);
+        LongVector c0 = hi0.and(lo0), c1 = hi0.and(lo1), c2 = hi0.and(lo2), c3 = hi0.and(lo3);
+        LongVector c4 = hi1.and(lo0), c5 = hi1.and(lo1), c6 = hi1.and(lo2), c7 = hi1.and(lo3);
+        LongVector c8 = hi2.and(lo0), c9 = hi2.and(lo1), c10 = hi2.and(lo2), c11 = hi2.and(lo3);
+        LongVector c12 = hi3.and(lo0), c13 = hi3.and(lo1), c14 = hi3.and(lo2), c15 = hi3.and(lo3);
+        LongVector o0 = row0.and(c0.or(c2).or(c3).or(c4).or(c7).or(c9).or(c12).or(c15))
+                .or(row1.and(c0.or(c1).or(c5).or(c6).or(c10).or(c11).or(c13).or(c15)))
+                .or(row2.and(c0.or(c1).or(c2).or(c5).or(c6).or(c11).or(c13).or(c14)))
+                .or(row3.and(c3.or(c4).or(c6).or(c7).or(c8).or(c9).or(c14).or(c15)));
+        LongVector o1 = row0.and(c0.or(c3).or(c6).or(c9).or(c11).or(c12).or(c13).or(c14))
+                .or(row1.and(c1.or(c2).or(c4).or(c5).or(c7).or(c8).or(c10).or(c11)))
+                .or(row2.and(c1.or(c2).or(c3).or(c6).or(c8).or(c10).or(c13).or(c15)))
+                .or(row3.and(c0.or(c3).or(c5).or(c6).or(c9).or(c11).or(c12).or(c15)));
+        LongVector o2 = row0.and(c2.or(c3).or(c5).or(c6).or(c10).or(c12).or(c13).or(c15))
+                .or(row1.and(c0.or(c1).or(c3).or(c4).or(c8).or(c11).or(c13).or(c14)))
+                .or(row2.and(c1.or(c2).or(c4).or(c7).or(c8).or(c11).or(c14).or(c15)))
+                .or(row3.and(c1.or(c2).or(c6).or(c7).or(c8).or(c9).or(c11).or(c12)));
+        LongVector o3 = row0.and(c1.or(c3).or(c4).or(c9).or(c10).or(c13).or(c14).or(c15))
+                .or(row1.and(c1.or(c4).or(c6).or(c7).or(c9).or(c10).or(c13).or(c14)))
+                .or(row2.and(c0.or(c2).or(c3).or(c7).or(c8).or(c12).or(c13).or(c14)))
+                .or(row3.and(c1.or(c4).or(c5).or(c6).or(c8).or(c10).or(c11).or(c15)));
+        // the permutation P only decides which plane of L each output bit goes to
+        int p0 = P_POSITIONS[20] * LANES;
+        LongVector.fromArray(SPECIES, l, p0).lanewise(VectorOperators.XOR, o0).intoArray(l, p0);
+        int p1 = P_POSITIONS[21] * LANES;
+        LongVector.fromArray(SPECIES, l, p1).lanewise(VectorOperators.XOR, o1).intoArray(l, p1);
+        int p2 = P_POSITIONS[22] * LANES;
+        LongVector.fromArray(SPECIES, l, p2).lanewise(VectorOperators.XOR, o2).intoArray(l, p2);
+        int p3 = P_POSITIONS[23] * LANES;
+        LongVector.fromArray(SPECIES, l, p3).lanewise(VectorOperators.XOR, o3).intoArray(l, p3);
+    }
+
+    /**
+     * The vectorized boolean circuit of S7, the output of S7 and P is XORed into L directly.
+     * @param r The planes of R
+     * @param k The 48 masks of K for this iteration
+     * @param l The planes of L
+     */
+    private static void s7(long[] r, long[] k, long[] l){
+        LongVector b0 = input(r, k, 36), b1 = input(r, k, 37), b2 = input(r, k, 38);
+        LongVector b3 = input(r, k, 39), b4 = input(r, k, 40), b5 = input(r, k, 41);
+        LongVector nb0 = b0.not(), nb1 = b1.not(), nb2 = b2.not(), nb3 = b3.not(), nb4 = b4.not(), nb5 = b5.not();
+        LongVector row0 = nb0.and(nb5), row1 = nb0.and(b5), row2 = b0.and(nb5), row3 = b0.and(b5);
+        LongVector hi0 = nb1.and(nb2), hi1 = nb1.and(b2), hi2 = b1.and(nb2), hi3 = b1.and(b2);
+        LongVector lo0 = nb3.and(nb4), lo1 = nb3.and(b4), lo2 = b3.and(nb4), lo3 = b3.and(b4);
+        LongVector c0 = hi0.and(lo0), c1 = hi0.and(lo1), c2 = hi0.and(lo2), c3 = hi0.and(lo3);
+        LongVector c4 = hi1.and(lo0), c5 = hi1.and(lo1), c6 = hi1.and(lo2), c7 = hi1.and(lo3);
+        LongVector c8 = hi2.and(lo0), c9 = hi2.and(lo1), c10 = hi2.and(lo2), c11 = hi2.and(lo3);
+        LongVector c12 = hi3.and(lo0), c13 = hi3.and(lo1), c14 = hi3.and(lo2), c15 = hi3.and(lo3);
+        LongVector o0 = row0.and(c1.or(c3).or(c4).or(c6).or(c7).or(c9).or(c10).or(c13))
+                .or(row1.and(c0.or(c2).or(c5).or(c7).or(c8).or(c11).or(c13).or(c14)))
+                .or(row2.and(c2.or(c3).or(c4).or(c7).or(c8).or(c9).or(c11).or(c14)))
+                .or(row3.and(c1.or(c2).or(c3).or(c6).or(c8).or(c11).or(c12).or(c15)));
+        LongVector o1 = row0.and(c0.or(c3).or(c4).or(c7).or(c9).or(c11).or(c12).or(c14))
+                .or(row1.and(c0.or(c3).or(c4).or(c8).or(c10).or(c11).or(c13).or(c15)))
+                .or(row2.and(c1.or(c3).or(c4).or(c6).or(c7).or(c9).or(c10).or(c13)))
+                .or(row3.and(c0.or(c2).or(c5).or(c7).or(c9).or(c11).or(c12).or(c15)));
+        LongVector o2 = row0.and(c1.or(c2).or(c3).or(c4).or(c8).or(c11).or(c13).or(c14))
+                .or(row1.and(c2.or(c3).or(c7).or(c8).or(c9).or(c12).or(c13).or(c15)))
+                .or(row2.and(c2.or(c5).or(c6).or(c7).or(c8).or(c9).or(c10).or(c15)))
+                .or(row3.and(c0.or(c1).or(c6).or(c7).or(c11).or(c12).or(c13).or(c14)));
+        LongVector o3 = row0.and(c1.or(c4).or(c7).or(c8).or(c10).or(c11).or(c12).or(c15))
+                .or(row1.and(c0.or(c2).or(c3).or(c5).or(c6).or(c9).or(c10).or(c13)))
+                .or(row2.and(c0.or(c2).or(c3).or(c5).or(c6).or(c9).or(c13).or(c14)))
+                .or(row3.and(c1.or(c2).or(c4).or(c7).or(c8).or(c9).or(c11).or(c14)));
+        // the permutation P only decides which plane of L each output bit goes to
+        int p0 = P_POSITIONS[24] * LANES;
+        LongVector.fromArray(SPECIES, l, p0).lanewise(VectorOperators.XOR, o0).intoArray(l, p0);
+        int p1 = P_POSITIONS[25] * LANES;
+        LongVector.fromArray(SPECIES, l, p1).lanewise(VectorOperators.XOR, o1).intoArray(l, p1);
+        int p2 = P_POSITIONS[26] * LANES;
+        LongVector.fromArray(SPECIES, l, p2).lanewise(VectorOperators.XOR, o2).intoArray(l, p2);
+        int p3 = P_POSITIONS[27] * LANES;
+        LongVector.fromArray(SPECIES, l, p3).lanewise(VectorOperators.XOR, o3).intoArray(l, p3);
+    }
+
+    /**
+     * The vectorized boolean circuit of S8, the output of S8 and P is XORed into L directly.
+     * @param r The planes of R
+     * @param k The 48 masks of K for this iteration
+     * @param l The planes of L
+     */
+    private static void s8(long[] r, long[] k, long[] l){
+        LongVector b0 = input(r, k, 42), b1 = input(r, k, 43), b2 = input(r, k, 44);
+        LongVector b3 = input(r, k, 45), b4 = input(r, k, 46), b5 = input(r, k, 47);
+        LongVector nb0 = b0.not(), nb1 = b1.not(), nb2 = b2.not(), nb3 = b3.not(), nb4 = b4.not(), nb5 = b5.not();
+        LongVector row0 = nb0.and(nb5), row1 = nb0.and(b5), row2 = b0.and(nb5), row3 = b0.and(b5);
+        LongVector hi0 = nb1.and(nb2), hi1 = nb1.and(b2), hi2 = b1.and(nb2), hi3 = b1.and(b2);
+        LongVector lo0 = nb3.and(nb4), lo1 = nb3.and(b4), lo2 = b3.and(nb4), lo3 = b3.and(b4);
+        LongVector c0 = hi0.and(lo0), c1 = hi0.and(lo1), c2 = hi0.and(lo2), c3 = hi0.and(lo3);
+        LongVector c4 = hi1.and(lo0), c5 = hi1.and(lo1), c6 = hi1.and(lo2), c7 = hi1.and(lo3);
+        LongVector c8 = hi2.and(lo0), c9 = hi2.and(lo1), c10 = hi2.and(lo2), c11 = hi2.and(lo3);
+        LongVector c12 = hi3.and(lo0), c13 = hi3.and(lo1), c14 = hi3.and(lo2), c15 = hi3.and(lo3);
+        LongVector o0 = row0.and(c0.or(c2).or(c5).or(c6).or(c8).or(c9).or(c11).or(c14))
+                .or(row1.and(c1.or(c2).or(c3).or(c4).or(c8).or(c11).or(c13).or(c14)))
+                .or(row2.and(c1.or(c4).or(c5).or(c6).or(c10).or(c11).or(c12).or(c15)))
+                .or(row3.and(c2.or(c5).or(c6).or(c7).or(c8).or(c9).or(c10).or(c15)));
+        LongVector o1 = row0.and(c0.or(c3).or(c4).or(c5).or(c11).or(c12).or(c14).or(c15))
+                .or(row1.and(c1.or(c2).or(c6).or(c7).or(c8).or(c9).or(c10).or(c13)))
+                .or(row2.and(c0.or(c2).or(c5).or(c6).or(c9).or(c11).or(c12).or(c14)))
+                .or(row3.and(c2.or(c3).or(c4).or(c7).or(c8).or(c9).or(c13).or(c14)));
+        LongVector o2 = row0.and(c1.or(c4).or(c5).or(c6).or(c8).or(c10).or(c11).or(c15))
+                .or(row1.and(c1.or(c4).or(c5).or(c6).or(c10).or(c11).or(c13).or(c15)))
+                .or(row2.and(c0.or(c1).or(c6).or(c7).or(c9).or(c10).or(c12).or(c13)))
+                .or(row3.and(c0.or(c2).or(c3).or(c5).or(c8).or(c12).or(c14).or(c15)));
+        LongVector o3 = row0.and(c0.or(c5).or(c6).or(c7).or(c9).or(c10).or(c12).or(c15))
+                .or(row1.and(c0.or(c1).or(c2).or(c5).or(c6).or(c9).or(c11).or(c14)))
+                .or(row2.and(c0.or(c1).or(c3).or(c4).or(c11).or(c12).or(c13).or(c14)))
+                .or(row3.and(c1.or(c3).or(c7).or(c8).or(c10).or(c12).or(c13).or(c15)));
+        // the permutation P only decides which plane of L each output bit goes to
+        int p0 = P_POSITIONS[28] * LANES;
+        LongVector.fromArray(SPECIES, l, p0).lanewise(VectorOperators.XOR, o0).intoArray(l, p0);
+        int p1 = P_POSITIONS[29] * LANES;
+        LongVector.fromArray(SPECIES, l, p1).lanewise(VectorOperators.XOR, o1).intoArray(l, p1);
+        int p2 = P_POSITIONS[30] * LANES;
+        LongVector.fromArray(SPECIES, l, p2).lanewise(VectorOperators.XOR, o2).intoArray(l, p2);
+        int p3 = P_POSITIONS[31] * LANES;
+        LongVector.fromArray(SPECIES, l, p3).lanewise(VectorOperators.XOR, o3).intoArray(l, p3);
+    }
+}
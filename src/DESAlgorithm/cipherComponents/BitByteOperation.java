@@ -174,4 +174,89 @@ public class BitByteOperation {
 
         return resultBlock;
     }
+
+    /**
+     * Pack an 8-byte block into a single 64-bit long.
+     * The first bit of the block (the highest bit of the first byte) becomes the highest bit of the long,
+     * so the bit numbered n in the DES standard sits at the position (64 - n) of the long.
+     * @param blockInByte A block of plain text or cipher text, which is represented in byte array (8-byte)
+     * @return The 64-bit block packed into a long
+     */
+    protected long blockByteToLong(byte[] blockInByte){
+        return blockByteToLong(blockInByte, 0);
+    }
+
+    /**
+     * Pack the 8 bytes starting from a specific offset of a byte array into a single 64-bit long.
+     * @param bytes A byte array containing the block
+     * @param offset The index of the first byte of the block
+     * @return The 64-bit block packed into a long
+     */
+    protected long blockByteToLong(byte[] bytes, int offset){
+        long block = 0;
+        // the first byte ends up in the highest 8 bits
+        for (int i = 0; i < 8; i++){
+            block = (block << 8) | (bytes[offset + i] & 0xff);
+        }
+        return block;
+    }
+
+    /**
+     * Unpack a 64-bit long back into an 8-byte block. (The reverse of blockByteToLong)
+     * @param block The 64-bit block packed into a long
+     * @return An 8-byte block
+     */
+    protected byte[] blockLongToByte(long block){
+        byte[] blockInByte = new byte[8];
+        blockLongToByte(block, blockInByte, 0);
+        return blockInByte;
+    }
+
+    /**
+     * Unpack a 64-bit long into 8 bytes of an existing byte array, starting from a specific offset.
+     * @param block The 64-bit block packed into a long
+     * @param bytes The byte array to write the block into
+     * @param offset The index where the first byte of the block goes
+     */
+    protected void blockLongToByte(long block, byte[] bytes, int offset){
+        // the highest 8 bits go to the first byte
+        for (int i = 0; i < 8; i++){
+            bytes[offset + i] = (byte) (block >>> (56 - 8 * i));
+        }
+    }
+
+    /**
+     * Unpack the lower bits of a long into a block represented in bits.
+     * @param block A block packed in the lower bits of a long
+     * @param blockLen The number of bits in the block
+     * @return A block represented in bits, the first bit is the highest one of the packed block
+     */
+    protected int[] blockLongToBit(long block, int blockLen){
+        int[] blockInBit = new int[blockLen];
+        for (int i = 0; i < blockLen; i++){
+            blockInBit[i] = (int) (block >>> (blockLen - 1 - i)) & 1;
+        }
+        return blockInBit;
+    }
+
+    /**
+     * To perform the permutation on a packed block using a selected permutation function.
+     * This is the same as performPermute(int[], int[]), but the bits are kept in the lower bits of a long.
+     * (The tables used for every block and every key are compiled into lookup masks by Permutation, which is much faster)
+     * @param block An input block packed into a long, the first bit of the block is at the position (blockLen - 1).
+     * @param blockLen The number of bits in the input block, e.g. 64 for IP, 32 for E and P.
+     * @param permutationFunc A permutation function for this transmission, which could be IP, IP-1, P, E...
+     * @return The permuted block, packed in the lower (permutationFunc.length) bits of a long.
+     */
+    protected long performPermute(long block, int blockLen, int[] permutationFunc){
+        long permutedBlock = 0;
+
+        // loop through the permutation table
+        for (int position : permutationFunc){
+            // the bit numbered "position" in the input block is at the (blockLen - position) of the long
+            permutedBlock = (permutedBlock << 1) | ((block >>> (blockLen - position)) & 1L);
+        }
+
+        return permutedBlock;
+    }
 }
@@ -0,0 +1,499 @@
+package DESAlgorithm.cipherComponents;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * The bitsliced DES core, which is shared by BitslicedEncipherTool and BitslicedDecipherTool.
+ * 64 independent 8-byte blocks are transposed into 64 bit-planes, where the plane j holds the bit (j+1) of all the 64 blocks.
+ * Then every operation of DES is performed on all the 64 blocks at once:
+ * the permutations become re-indexing of the planes, and each S(n) becomes a boolean circuit of ANDs and ORs.
+ *
+ * The circuits s1(...) to s8(...) are generated from S1...S8: for each row (first and last bit of the input),
+ * an output bit is the OR of the 8 columns (middle 4 bits) where the S table gives a 1 for that bit.
+ *
+ * The cores should be created by create(...), which gives the vectorized VectorBitslicedDES
+ * when it has been built (it is in the source root src-vector) and the JVM has the Vector API, and this scalar core otherwise.
+ */
+class BitslicedDES extends BitByteOperation {
+
+    // How many blocks are processed in one pass (one bit of a long for each block)
+    static final int BATCH_BLOCKS = 64;
+    // How many bytes are processed in one pass
+    static final int BATCH_BYTES = BATCH_BLOCKS * 8;
+
+    // The position in the output of P for each of the 32 bits of the concatenated S1...S8 outputs
+    static final int[] P_POSITIONS = buildPPositions();
+
+    // The constructor of VectorBitslicedDES, null if the Vector API cannot be used in this JVM
+    private static final Constructor<? extends BitslicedDES> VECTOR_CONSTRUCTOR = findVectorConstructor();
+
+    // The bitsliced K1, K2, ..., K16 of every pass in the order they are used, every bit of K is either all 0s or all 1s
+    final long[][] keyMasks;
+
+    /**
+     * Create a bitsliced core, the vectorized one if the Vector API can be used.
+     * @param packedKeySet The packed K1, K2, ..., K16
+     * @param inverted Whether the 16 iterations use the key set in the inverted order (for decipher)
+     * @return The bitsliced core
+     */
+    static BitslicedDES create(long[] packedKeySet, boolean inverted){
+        return create(new long[][]{packedKeySet}, new boolean[]{inverted});
+    }
+
+    /**
+     * Create a bitsliced core of several DES passes fused together, the vectorized one if the Vector API can be used.
+     * @param packedKeySets The packed K1, K2, ..., K16 of each pass
+     * @param inverted Whether each pass uses its key set in the inverted order (for decipher)
+     * @return The bitsliced core
+     */
+    static BitslicedDES create(long[][] packedKeySets, boolean[] inverted){
+        if (VECTOR_CONSTRUCTOR != null){
+            try {
+                return VECTOR_CONSTRUCTOR.newInstance(packedKeySets, inverted);
+            } catch (ReflectiveOperationException e) {
+                // use the scalar core instead
+            }
+        }
+        return new BitslicedDES(packedKeySets, inverted);
+    }
+
+    /**
+     * The constructor
+     * @param packedKeySet The packed K1, K2, ..., K16
+     * @param inverted Whether the 16 iterations use the key set in the inverted order (for decipher)
+     */
+    BitslicedDES(long[] packedKeySet, boolean inverted){
+        this(new long[][]{packedKeySet}, new boolean[]{inverted});
+    }
+
+    /**
+     * The constructor of several DES passes fused together (e.g. 3 passes for Triple DES).
+     * The IP-1 of a pass and the IP of the next pass cancel each other, so only the first IP and the last IP-1 are performed.
+     * @param packedKeySets The packed K1, K2, ..., K16 of each pass
+     * @param inverted Whether each pass uses its key set in the inverted order (for decipher)
+     */
+    BitslicedDES(long[][] packedKeySets, boolean[] inverted){
+        this.keyMasks = new long[Constants.ITERATION_TIMES * packedKeySets.length][48];
+        for (int pass = 0; pass < packedKeySets.length; pass++){
+            for (int i = 0; i < Constants.ITERATION_TIMES; i++){
+                long k = packedKeySets[pass][inverted[pass] ? (16 - i) - 1 : i];
+                for (int j = 0; j < 48; j++){
+                    // -1L is a long full of 1s
+                    this.keyMasks[pass * Constants.ITERATION_TIMES + i][j] = -((k >>> (47 - j)) & 1L);
+                }
+            }
+        }
+    }
+
+    /**
+     * Perform DES on several batches of 64 blocks.
+     * @param in The input bytes
+     * @param inOff The index of the first input byte
+     * @param batchNum How many batches of 64 blocks (512 bytes) should be processed
+     * @param out The array to write the output bytes into (can be the same as the input)
+     * @param outOff The index where the first output byte goes
+     */
+    void cryptBatches(byte[] in, int inOff, int batchNum, byte[] out, int outOff){
+        // the working planes, which are reused by all the batches
+        long[] planes = new long[64];
+        long[] l = new long[32];
+        long[] r = new long[32];
+        long[] output = new long[4];
+
+        for (int batch = 0; batch < batchNum; batch++){
+            int offset = batch * BATCH_BYTES;
+
+            // load the 64 blocks, then transpose them, so that planes[j] holds the bit (j+1) of every block
+            for (int b = 0; b < BATCH_BLOCKS; b++){
+                planes[b] = blockByteToLong(in, inOff + offset + b * 8);
+            }
+            transpose(planes);
+
+            // encipher or decipher all the 64 blocks at once
+            crypt(planes, l, r, output);
+
+            // transpose the planes back into 64 blocks, then store them
+            transpose(planes);
+            for (int b = 0; b < BATCH_BLOCKS; b++){
+                blockLongToByte(planes[b], out, outOff + offset + b * 8);
+            }
+        }
+    }
+
+    /**
+     * Perform IP, the 16 iterations of every pass and IP-1 on 64 bit-planes.
+     * @param planes The 64 input planes, which would be replaced by the 64 output planes
+     * @param l The working array for the 32 planes of L
+     * @param r The working array for the 32 planes of R
+     * @param output The working array for the 4 output planes of an S function
+     */
+    private void crypt(long[] planes, long[] l, long[] r, long[] output){
+        // the initial permutation IP only decides which plane goes to which place of L0 and R0
+        for (int i = 0; i < 32; i++){
+            l[i] = planes[Constants.IP[i] - 1];
+            r[i] = planes[Constants.IP[i + 32] - 1];
+        }
+
+        // perform the 16-time iteration of every pass: L' = R, R' = L (+) f(R, K)
+        for (int i = 0; i < this.keyMasks.length; i++){
+            // the preoutput R16L16 of a pass is the L0R0 of the next pass, so L and R are swapped back between the passes
+            if (i > 0 && i % Constants.ITERATION_TIMES == 0){
+                long[] nextL = r;
+                r = l;
+                l = nextL;
+            }
+
+            // calculate L (+) f(R, K) in the place of L
+            cipherFuncF(r, this.keyMasks[i], l, output);
+
+            // swap L and R
+            long[] nextL = r;
+            r = l;
+            l = nextL;
+        }
+
+        // the preoutput is R16L16, the final permutation IP-1 again only decides which plane goes to which place
+        for (int i = 0; i < 64; i++){
+            int position = Constants.IP_INVERSE[i] - 1;
+            planes[i] = position < 32 ? r[position] : l[position - 32];
+        }
+    }
+
+    /**
+     * The bitsliced cipher function F, the output of f(R, K) is XORed into L directly.
+     * @param r The 32 planes of R
+     * @param k The 48 masks of K for this iteration
+     * @param l The 32 planes of L, which would be updated to L (+) f(R, K)
+     * @param output The working array for the 4 output planes of an S function
+     */
+    private void cipherFuncF(long[] r, long[] k, long[] l, long[] output){
+        for (int n = 0; n < 8; n++){
+            // the 6 inputs of S(n+1): the bits selected by E, XORed with K
+            int base = 6 * n;
+            long b0 = r[Constants.E_BIT_SELECTION_TABLE[base] - 1] ^ k[base];
+            long b1 = r[Constants.E_BIT_SELECTION_TABLE[base + 1] - 1] ^ k[base + 1];
+            long b2 = r[Constants.E_BIT_SELECTION_TABLE[base + 2] - 1] ^ k[base + 2];
+            long b3 = r[Constants.E_BIT_SELECTION_TABLE[base + 3] - 1] ^ k[base + 3];
+            long b4 = r[Constants.E_BIT_SELECTION_TABLE[base + 4] - 1] ^ k[base + 4];
+            long b5 = r[Constants.E_BIT_SELECTION_TABLE[base + 5] - 1] ^ k[base + 5];
+
+            // the boolean circuit of S(n+1)
+            switch (n){
+                case 0: s1(b0, b1, b2, b3, b4, b5, output); break;
+                case 1: s2(b0, b1, b2, b3, b4, b5, output); break;
+                case 2: s3(b0, b1, b2, b3, b4, b5, output); break;
+                case 3: s4(b0, b1, b2, b3, b4, b5, output); break;
+                case 4: s5(b0, b1, b2, b3, b4, b5, output); break;
+                case 5: s6(b0, b1, b2, b3, b4, b5, output); break;
+                case 6: s7(b0, b1, b2, b3, b4, b5, output); break;
+                default: s8(b0, b1, b2, b3, b4, b5, output); break;
+            }
+
+            // the permutation P only decides which plane of L each output bit goes to
+            l[P_POSITIONS[4 * n]] ^= output[0];
+            l[P_POSITIONS[4 * n + 1]] ^= output[1];
+            l[P_POSITIONS[4 * n + 2]] ^= output[2];
+            l[P_POSITIONS[4 * n + 3]] ^= output[3];
+        }
+    }
+
+    /**
+     * The boolean circuit of S1.
+     * @param b0 ... b5 The 6 input planes, b0 is the first bit
+     * @param output The array to write the 4 output planes into, output[0] is the first bit
+     */
+    private static void s1(long b0, long b1, long b2, long b3, long b4, long b5, long[] output){
+        long row0 = ~b0 & ~b5, row1 = ~b0 & b5, row2 = b0 & ~b5, row3 = b0 & b5;
+        long hi0 = ~b1 & ~b2, hi1 = ~b1 & b2, hi2 = b1 & ~b2, hi3 = b1 & b2;
+        long lo0 = ~b3 & ~b4, lo1 = ~b3 & b4, lo2 = b3 & ~b4, lo3 = b3 & b4;
+        long c0 = hi0 & lo0, c1 = hi0 & lo1, c2 = hi0 & lo2, c3 = hi0 & lo3;
+        long c4 = hi1 & lo0, c5 = hi1 & lo1, c6 = hi1 & lo2, c7 = hi1 & lo3;
+        long c8 = hi2 & lo0, c9 = hi2 & lo1, c10 = hi2 & lo2, c11 = hi2 & lo3;
+        long c12 = hi3 & lo0, c13 = hi3 & lo1, c14 = hi3 & lo2, c15 = hi3 & lo3;
+        output[0] = (row0 & (c0 | c2 | c5 | c6 | c7 | c9 | c11 | c13))
+                | (row1 & (c1 | c4 | c6 | c8 | c10 | c11 | c12 | c15))
+                | (row2 & (c2 | c3 | c4 | c7 | c8 | c9 | c10 | c13))
+                | (row3 & (c0 | c1 | c2 | c5 | c9 | c11 | c12 | c15));
+        output[1] = (row0 & (c0 | c1 | c2 | c5 | c10 | c11 | c12 | c15))
+                | (row1 & (c1 | c2 | c3 | c4 | c6 | c9 | c10 | c13))
+                | (row2 & (c0 | c2 | c4 | c5 | c8 | c9 | c11 | c14))
+                | (row3 & (c0 | c1 | c4 | c7 | c8 | c11 | c14 | c15));
+        output[2] = (row0 & (c0 | c4 | c5 | c6 | c8 | c9 | c10 | c15))
+                | (row1 & (c1 | c2 | c4 | c5 | c8 | c9 | c11 | c14))
+                | (row2 & (c2 | c5 | c6 | c7 | c8 | c11 | c12 | c13))
+                | (row3 & (c0 | c3 | c7 | c9 | c10 | c11 | c12 | c14));
+        output[3] = (row0 & (c2 | c3 | c5 | c6 | c8 | c12 | c13 | c15))
+                | (row1 & (c1 | c2 | c6 | c7 | c11 | c12 | c13 | c14))
+                | (row2 & (c1 | c4 | c7 | c8 | c10 | c11 | c12 | c14))
+                | (row3 & (c0 | c5 | c6 | c7 | c8 | c9 | c10 | c15));
+    }
+
+    /**
+     * The boolean circuit of S2.
+     * @param b0 ... b5 The 6 input planes, b0 is the first bit
+     * @param output The array to write the 4 output planes into, output[0] is the first bit
+     */
+    private static void s2(long b0, long b1, long b2, long b3, long b4, long b5, long[] output){
+        long row0 = ~b0 & ~b5, row1 = ~b0 & b5, row2 = b0 & ~b5, row3 = b0 & b5;
+        long hi0 = ~b1 & ~b2, hi1 = ~b1 & b2, hi2 = b1 & ~b2, hi3 = b1 & b2;
+        long lo0 = ~b3 & ~b4, lo1 = ~b3 & b4, lo2 = b3 & ~b4, lo3 = b3 & b4;
+        long c0 = hi0 & lo0, c1 = hi0 & lo1, c2 = hi0 & lo2, c3 = hi0 & lo3;
+        long c4 = hi1 & lo0, c5 = hi1 & lo1, c6 = hi1 & lo2, c7 = hi1 & lo3;
+        long c8 = hi2 & lo0, c9 = hi2 & lo1, c10 = hi2 & lo2, c11 = hi2 & lo3;
+        long c12 = hi3 & lo0, c13 = hi3 & lo1, c14 = hi3 & lo2, c15 = hi3 & lo3;
+        output[0] = (row0 & (c0 | c2 | c3 | c5 | c8 | c11 | c12 | c15))
+                | (row1 & (c1 | c4 | c6 | c7 | c8 | c11 | c13 | c14))
+                | (row2 & (c1 | c3 | c4 | c6 | c9 | c10 | c12 | c15))
+                | (row3 & (c0 | c1 | c2 | c5 | c8 | c11 | c14 | c15));
+        output[1] = (row0 & (c0 | c3 | c4 | c7 | c9 | c11 | c12 | c14))
+                | (row1 & (c1 | c2 | c3 | c4 | c7 | c8 | c12 | c15))
+                | (row2 & (c1 | c2 | c5 | c6 | c8 | c10 | c11 | c15))
+                | (row3 & (c0 | c5 | c6 | c9 | c10 | c11 | c13 | c14));
+        output[2] = (row0 & (c0 | c3 | c4 | c5 | c6 | c9 | c10 | c15))
+                | (row1 & (c0 | c3 | c4 | c5 | c7 | c11 | c12 | c14))
+                | (row2 & (c1 | c2 | c3 | c4 | c11 | c13 | c14 | c15))
+                | (row3 & (c2 | c4 | c5 | c7 | c8 | c9 | c10 | c14));
+        output[3] = (row0 & (c0 | c1 | c5 | c6 | c8 | c9 | c11 | c14))
+                | (row1 & (c0 | c1 | c3 | c4 | c10 | c13 | c14 | c15))
+                | (row2 & (c2 | c3 | c6 | c7 | c8 | c12 | c13 | c15))
+                | (row3 & (c0 | c3 | c4 | c5 | c8 | c10 | c13 | c15));
+    }
+
+    /**
+     * The boolean circuit of S3.
+     * @param b0 ... b5 The 6 input planes, b0 is the first bit
+     * @param output The array to write the 4 output planes into, output[0] is the first bit
+     */
+    private static void s3(long b0, long b1, long b2, long b3, long b4, long b5, long[] output){
+        long row0 = ~b0 & ~b5, row1 = ~b0 & b5, row2 = b0 & ~b5, row3 = b0 & b5;
+        long hi0 = ~b1 & ~b2, hi1 = ~b1 & b2, hi2 = b1 & ~b2, hi3 = b1 & b2;
+        long lo0 = ~b3 & ~b4, lo1 = ~b3 & b4, lo2 = b3 & ~b4, lo3 = b3 & b4;
+        long c0 = hi0 & lo0, c1 = hi0 & lo1, c2 = hi0 & lo2, c3 = hi0 & lo3;
+        long c4 = hi1 & lo0, c5 = hi1 & lo1, c6 = hi1 & lo2, c7 = hi1 & lo3;
+        long c8 = hi2 & lo0, c9 = hi2 & lo1, c10 = hi2 & lo2, c11 = hi2 & lo3;
+        long c12 = hi3 & lo0, c13 = hi3 & lo1, c14 = hi3 & lo2, c15 = hi3 & lo3;
+        output[0] = (row0 & (c0 | c2 | c3 | c6 | c9 | c10 | c12 | c15))
+                | (row1 & (c0 | c3 | c7 | c9 | c11 | c12 | c13 | c14))
+                | (row2 & (c0 | c3 | c4 | c5 | c8 | c11 | c13 | c14))
+                | (row3 & (c1 | c2 | c5 | c6 | c9 | c10 | c12 | c15));
+        output[1] = (row0 & (c3 | c4 | c6 | c7 | c9 | c10 | c11 | c13))
+                | (row1 & (c0 | c1 | c5 | c6 | c10 | c11 | c12 | c14))
+                | (row2 & (c0 | c1 | c2 | c5 | c11 | c12 | c14 | c15))
+                | (row3 & (c2 | c4 | c7 | c8 | c9 | c10 | c13 | c15));
+        output[2] = (row0 & (c0 | c3 | c4 | c5 | c6 | c11 | c12 | c14))
+                | (row1 & (c1 | c4 | c6 | c7 | c8 | c11 | c13 | c14))
+                | (row2 & (c1 | c5 | c6 | c8 | c10 | c13 | c14 | c15))
+                | (row3 & (c1 | c4 | c7 | c9 | c10 | c11 | c12 | c14));
+        output[3] = (row0 & (c2 | c5 | c6 | c7 | c8 | c9 | c11 | c12))
+                | (row1 & (c0 | c1 | c3 | c4 | c10 | c13 | c14 | c15))
+                | (row2 & (c0 | c3 | c5 | c6 | c8 | c9 | c12 | c15))
+                | (row3 & (c0 | c2 | c5 | c7 | c9 | c11 | c12 | c13));
+    }
+
+    /**
+     * The boolean circuit of S4.
+     * @param b0 ... b5 The 6 input planes, b0 is the first bit
+     * @param output The array to write the 4 output planes into, output[0] is the first bit
+     */
+    private static void s4(long b0, long b1, long b2, long b3, long b4, long b5, long[] output){
+        long row0 = ~b0 & ~b5, row1 = ~b0 & b5, row2 = b0 & ~b5, row3 = b0 & b5;
+        long hi0 = ~b1 & ~b2, hi1 = ~b1 & b2, hi2 = b1 & ~b2, hi3 = b1 & b2;
+        long lo0 = ~b3 & ~b4, lo1 = ~b3 & b4, lo2 = b3 & ~b4, lo3 = b3 & b4;
+        long c0 = hi0 & lo0, c1 = hi0 & lo1, c2 = hi0 & lo2, c3 = hi0 & lo3;
+        long c4 = hi1 & lo0, c5 = hi1 & lo1, c6 = hi1 & lo2, c7 = hi1 & lo3;
+        long c8 = hi2 & lo0, c9 = hi2 & lo1, c10 = hi2 & lo2, c11 = hi2 & lo3;
+        long c12 = hi3 & lo0, c13 = hi3 & lo1, c14 = hi3 & lo2, c15 = hi3 & lo3;
+        output[0] = (row0 & (c1 | c2 | c6 | c7 | c10 | c12 | c13 | c15))
+                | (row1 & (c0 | c1 | c2 | c5 | c11 | c13 | c14 | c15))
+                | (row2 & (c0 | c2 | c4 | c5 | c7 | c8 | c11 | c14))
+                | (row3 & (c1 | c4 | c6 | c7 | c8 | c11 | c12 | c15));
+        output[1] = (row0 & (c0 | c1 | c2 | c5 | c11 | c13 | c14 | c15))
+                | (row1 & (c0 | c3 | c4 | c5 | c8 | c9 | c11 | c14))
+                | (row2 & (c1 | c4 | c6 | c7 | c8 | c11 | c12 | c15))
+                | (row3 & (c1 | c3 | c6 | c9 | c10 | c12 | c13 | c15));
+        output[2] = (row0 & (c0 | c2 | c3 | c5 | c7 | c9 | c12 | c15))
+                | (row1 & (c2 | c4 | c5 | c7 | c9 | c10 | c13 | c14))
+                | (row2 & (c0 | c1 | c5 | c6 | c8 | c10 | c11 | c13))
+                | (row3 & (c0 | c1 | c3 | c4 | c11 | c13 | c14 | c15));
+        output[3] = (row0 & (c0 | c1 | c3 | c6 | c8 | c11 | c12 | c15))
+                | (row1 & (c0 | c2 | c3 | c5 | c7 | c9 | c12 | c15))
+                | (row2 & (c2 | c5 | c6 | c7 | c8 | c9 | c10 | c12))
+                | (row3 & (c0 | c1 | c5 | c6 | c8 | c10 | c11 | c13));
+    }
+
+    /**
+     * The boolean circuit of S5.
+     * @param b0 ... b5 The 6 input planes, b0 is the first bit
+     * @param output The array to write the 4 output planes into, output[0] is the first bit
+     */
+    private static void s5(long b0, long b1, long b2, long b3, long b4, long b5, long[] output){
+        long row0 = ~b0 & ~b5, row1 = ~b0 & b5, row2 = b0 & ~b5, row3 = b0 & b5;
+        long hi0 = ~b1 & ~b2, hi1 = ~b1 & b2, hi2 = b1 & ~b2, hi3 = b1 & b2;
+        long lo0 = ~b3 & ~b4, lo1 = ~b3 & b4, lo2 = b3 & ~b4, lo3 = b3 & b4;
+        long c0 = hi0 & lo0, c1 = hi0 & lo1, c2 = hi0 & lo2, c3 = hi0 & lo3;
+        long c4 = hi1 & lo0, c5 = hi1 & lo1, c6 = hi1 & lo2, c7 = hi1 & lo3;
+        long c8 = hi2 & lo0, c9 = hi2 & lo1, c10 = hi2 & lo2, c11 = hi2 & lo3;
+        long c12 = hi3 & lo0, c13 = hi3 & lo1, c14 = hi3 & lo2, c15 = hi3 & lo3;
+        output[0] = (row0 & (c1 | c5 | c6 | c8 | c11 | c12 | c14 | c15))
+                | (row1 & (c0 | c1 | c3 | c6 | c10 | c11 | c13 | c14))
+                | (row2 & (c3 | c4 | c5 | c7 | c8 | c9 | c10 | c15))
+                | (row3 & (c0 | c1 | c2 | c5 | c7 | c9 | c11 | c12));
+        output[1] = (row0 & (c1 | c2 | c4 | c7 | c9 | c11 | c12 | c14))
+                | (row1 & (c0 | c3 | c4 | c5 | c6 | c8 | c10 | c15))
+                | (row2 & (c0 | c5 | c6 | c8 | c10 | c11 | c12 | c15))
+                | (row3 & (c2 | c3 | c5 | c7 | c8 | c9 | c13 | c14));
+        output[2] = (row0 & (c0 | c4 | c5 | c6 | c7 | c10 | c11 | c14))
+                | (row1 & (c0 | c1 | c2 | c5 | c10 | c11 | c12 | c15))
+                | (row2 & (c1 | c3 | c4 | c6 | c8 | c12 | c13 | c15))
+                | (row3 & (c0 | c3 | c5 | c6 | c8 | c9 | c12 | c15));
+        output[3] = (row0 & (c3 | c4 | c6 | c9 | c10 | c11 | c12 | c15))
+                | (row1 & (c1 | c5 | c6 | c7 | c8 | c10 | c12 | c13))
+                | (row2 & (c2 | c3 | c5 | c6 | c8 | c9 | c11 | c13))
+                | (row3 & (c0 | c3 | c4 | c7 | c9 | c11 | c14 | c15));
+    }
+
+    /**
+     * The boolean circuit of S6.
+     * @param b0 ... b5 The 6 input planes, b0 is the first bit
+     * @param output The array to write the 4 output planes into, output[0] is the first bit
+     */
+    private static void s6(long b0, long b1, long b2, long b3, long b4, long b5, long[] output){
+        long row0 = ~b0 & ~b5, row1 = ~b0 & b5, row2 = b0 & ~b5, row3 = b0 & b5;
+        long hi0 = ~b1 & ~b2, hi1 = ~b1 & b2, hi2 = b1 & ~b2, hi3 = b1 & b2;
+        long lo0 = ~b3 & ~b4, lo1 = ~b3 & b4, lo2 = b3 & ~b4, lo3 = b3 & b4;
+        long c0 = hi0 & lo0, c1 = hi0 & lo1, c2 = hi0 & lo2, c3 = hi0 & lo3;
+        long c4 = hi1 & lo0, c5 = hi1 & lo1, c6 = hi1 & lo2, c7 = hi1 & lo3;
+        long c8 = hi2 & lo0, c9 = hi2 & lo1, c10 = hi2 & lo2, c11 = hi2 & lo3;
+        long c12 = hi3 & lo0, c13 = hi3 & lo1, c14 = hi3 & lo2, c15 = hi3 & lo3;
+        output[0] = (row0 & (c0 | c2 | c3 | c4 | c7 | c9 | c12 | c15))
+                | (row1 & (c0 | c1 | c5 | c6 | c10 | c11 | c13 | c15))
+                | (row2 & (c0 | c1 | c2 | c5 | c6 | c11 | c13 | c14))
+                | (row3 & (c3 | c4 | c6 | c7 | c8 | c9 | c14 | c15));
+        output[1] = (row0 & (c0 | c3 | c6 | c9 | c11 | c12 | c13 | c14))
+                | (row1 & (c1 | c2 | c4 | c5 | c7 | c8 | c10 | c11))
+                | (row2 & (c1 | c2 | c3 | c6 | c8 | c10 | c13 | c15))
+                | (row3 & (c0 | c3 | c5 | c6 | c9 | c11 | c12 | c15));
+        output[2] = (row0 & (c2 | c3 | c5 | c6 | c10 | c12 | c13 | c15))
+                | (row1 & (c0 | c1 | c3 | c4 | c8 | c11 | c13 | c14))
+                | (row2 & (c1 | c2 | c4 | c7 | c8 | c11 | c14 | c15))
+                | (row3 & (c1 | c2 | c6 | c7 | c8 | c9 | c11 | c12));
+        output[3] = (row0 & (c1 | c3 | c4 | c9 | c10 | c13 | c14 | c15))
+                | (row1 & (c1 | c4 | c6 | c7 | c9 | c10 | c13 | c14))
+                | (row2 & (c0 | c2 | c3 | c7 | c8 | c12 | c13 | c14))
+                | (row3 & (c1 | c4 | c5 | c6 | c8 | c10 | c11 | c15));
+    }
+
+    /**
+     * The boolean circuit of S7.
+     * @param b0 ... b5 The 6 input planes, b0 is the first bit
+     * @param output The array to write the 4 output planes into, output[0] is the first bit
+     */
+    private static void s7(long b0, long b1, long b2, long b3, long b4, long b5, long[] output){
+        long row0 = ~b0 & ~b5, row1 = ~b0 & b5, row2 = b0 & ~b5, row3 = b0 & b5;
+        long hi0 = ~b1 & ~b2, hi1 = ~b1 & b2, hi2 = b1 & ~b2, hi3 = b1 & b2;
+        long lo0 = ~b3 & ~b4, lo1 = ~b3 & b4, lo2 = b3 & ~b4, lo3 = b3 & b4;
+        long c0 = hi0 & lo0, c1 = hi0 & lo1, c2 = hi0 & lo2, c3 = hi0 & lo3;
+        long c4 = hi1 & lo0, c5 = hi1 & lo1, c6 = hi1 & lo2, c7 = hi1 & lo3;
+        long c8 = hi2 & lo0, c9 = hi2 & lo1, c10 = hi2 & lo2, c11 = hi2 & lo3;
+        long c12 = hi3 & lo0, c13 = hi3 & lo1, c14 = hi3 & lo2, c15 = hi3 & lo3;
+        output[0] = (row0 & (c1 | c3 | c4 | c6 | c7 | c9 | c10 | c13))
+                | (row1 & (c0 | c2 | c5 | c7 | c8 | c11 | c13 | c14))
+                | (row2 & (c2 | c3 | c4 | c7 | c8 | c9 | c11 | c14))
+                | (row3 & (c1 | c2 | c3 | c6 | c8 | c11 | c12 | c15));
+        output[1] = (row0 & (c0 | c3 | c4 | c7 | c9 | c11 | c12 | c14))
+                | (row1 & (c0 | c3 | c4 | c8 | c10 | c11 | c13 | c15))
+                | (row2 & (c1 | c3 | c4 | c6 | c7 | c9 | c10 | c13))
+                | (row3 & (c0 | c2 | c5 | c7 | c9 | c11 | c12 | c15));
+        output[2] = (row0 & (c1 | c2 | c3 | c4 | c8 | c11 | c13 | c14))
+                | (row1 & (c2 | c3 | c7 | c8 | c9 | c12 | c13 | c15))
+                | (row2 & (c2 | c5 | c6 | c7 | c8 | c9 | c10 | c15))
+                | (row3 & (c0 | c1 | c6 | c7 | c11 | c12 | c13 | c14));
+        output[3] = (row0 & (c1 | c4 | c7 | c8 | c10 | c11 | c12 | c15))
+                | (row1 & (c0 | c2 | c3 | c5 | c6 | c9 | c10 | c13))
+                | (row2 & (c0 | c2 | c3 | c5 | c6 | c9 | c13 | c14))
+                | (row3 & (c1 | c2 | c4 | c7 | c8 | c9 | c11 | c14));
+    }
+
+    /**
+     * The boolean circuit of S8.
+     * @param b0 ... b5 The 6 input planes, b0 is the first bit
+     * @param output The array to write the 4 output planes into, output[0] is the first bit
+     */
+    private static void s8(long b0, long b1, long b2, long b3, long b4, long b5, long[] output){
+        long row0 = ~b0 & ~b5, row1 = ~b0 & b5, row2 = b0 & ~b5, row3 = b0 & b5;
+        long hi0 = ~b1 & ~b2, hi1 = ~b1 & b2, hi2 = b1 & ~b2, hi3 = b1 & b2;
+        long lo0 = ~b3 & ~b4, lo1 = ~b3 & b4, lo2 = b3 & ~b4, lo3 = b3 & b4;
+        long c0 = hi0 & lo0, c1 = hi0 & lo1, c2 = hi0 & lo2, c3 = hi0 & lo3;
+        long c4 = hi1 & lo0, c5 = hi1 & lo1, c6 = hi1 & lo2, c7 = hi1 & lo3;
+        long c8 = hi2 & lo0, c9 = hi2 & lo1, c10 = hi2 & lo2, c11 = hi2 & lo3;
+        long c12 = hi3 & lo0, c13 = hi3 & lo1, c14 = hi3 & lo2, c15 = hi3 & lo3;
+        output[0] = (row0 & (c0 | c2 | c5 | c6 | c8 | c9 | c11 | c14))
+                | (row1 & (c1 | c2 | c3 | c4 | c8 | c11 | c13 | c14))
+                | (row2 & (c1 | c4 | c5 | c6 | c10 | c11 | c12 | c15))
+                | (row3 & (c2 | c5 | c6 | c7 | c8 | c9 | c10 | c15));
+        output[1] = (row0 & (c0 | c3 | c4 | c5 | c11 | c12 | c14 | c15))
+                | (row1 & (c1 | c2 | c6 | c7 | c8 | c9 | c10 | c13))
+                | (row2 & (c0 | c2 | c5 | c6 | c9 | c11 | c12 | c14))
+                | (row3 & (c2 | c3 | c4 | c7 | c8 | c9 | c13 | c14));
+        output[2] = (row0 & (c1 | c4 | c5 | c6 | c8 | c10 | c11 | c15))
+                | (row1 & (c1 | c4 | c5 | c6 | c10 | c11 | c13 | c15))
+                | (row2 & (c0 | c1 | c6 | c7 | c9 | c10 | c12 | c13))
+                | (row3 & (c0 | c2 | c3 | c5 | c8 | c12 | c14 | c15));
+        output[3] = (row0 & (c0 | c5 | c6 | c7 | c9 | c10 | c12 | c15))
+                | (row1 & (c0 | c1 | c2 | c5 | c6 | c9 | c11 | c14))
+                | (row2 & (c0 | c1 | c3 | c4 | c11 | c12 | c13 | c14))
+                | (row3 & (c1 | c3 | c7 | c8 | c10 | c12 | c13 | c15));
+    }
+
+
+    /**
+     * Transpose a 64x64 bit matrix in place, the bit (63-j) of the row i is swapped with the bit (63-i) of the row j.
+     * This turns 64 packed blocks into 64 bit-planes, and the other way round.
+     * @param a The 64 rows of the matrix
+     */
+    static void transpose(long[] a){
+        long m = 0x00000000ffffffffL;
+        // swap the blocks of size 32x32, then 16x16, ..., then 1x1
+        for (int j = 32; j != 0; j >>>= 1, m ^= (m << j)){
+            for (int k = 0; k < 64; k = ((k | j) + 1) & ~j){
+                long t = (a[k] ^ (a[k | j] >>> j)) & m;
+                a[k] ^= t;
+                a[k | j] ^= (t << j);
+            }
+        }
+    }
+
+    /**
+     * Find the constructor of VectorBitslicedDES.
+     * The Vector API is an incubator module, which is only there when the JVM is started with "--add-modules jdk.incubator.vector",
+     * and VectorBitslicedDES is built apart from the other classes (only if the module is there when compiling),
+     * so VectorBitslicedDES is loaded by its name and never linked otherwise.
+     * @return The constructor, or null if the class or the module is not there, or the CPU has no vector wider than a long
+     */
+    private static Constructor<? extends BitslicedDES> findVectorConstructor(){
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()){
+            return null;
+        }
+        try {
+            Class<? extends BitslicedDES> vectorClass = Class.forName("DESAlgorithm.cipherComponents.VectorBitslicedDES").asSubclass(BitslicedDES.class);
+            if (!(Boolean) vectorClass.getDeclaredMethod("isSupported").invoke(null)){
+                return null;
+            }
+            return vectorClass.getDeclaredConstructor(long[][].class, boolean[].class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Build the P_POSITIONS table from P.
+     * @return P_POSITIONS[i] is the position in the output of P, where the bit (i+1) of the input goes
+     */
+    private static int[] buildPPositions(){
+        int[] positions = new int[32];
+        for (int i = 0; i < 32; i++){
+            positions[Constants.P[i] - 1] = i;
+        }
+        return positions;
+    }
+}
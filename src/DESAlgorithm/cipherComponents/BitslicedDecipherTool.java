@@ -0,0 +1,50 @@
+package DESAlgorithm.cipherComponents;
+
+/**
+ * A decipher tool for bulk data, which deciphers 64 blocks in one pass using the bitsliced DES core.
+ * The blocks that cannot fill a whole batch of 64 are deciphered one by one as in PackedDecipherTool.
+ * The result is exactly the same as the one of DecipherTool, block by block (ECB).
+ */
+public class BitslicedDecipherTool extends PackedDecipherTool{
+
+    // The bitsliced core using the same K1, K2, ..., K16
+    private final BitslicedDES bitslicedDES;
+
+    public BitslicedDecipherTool(Key key){
+        super(key);
+        this.bitslicedDES = BitslicedDES.create(this.packedKeySet, true);
+    }
+
+    /**
+     * The constructor for the subclasses having their own bitsliced core (e.g. several DES passes fused together)
+     * @param key The key object
+     * @param bitslicedDES The bitsliced core, which must give the same result as the decipher(long) of the subclass
+     */
+    protected BitslicedDecipherTool(Key key, BitslicedDES bitslicedDES){
+        super(key);
+        this.bitslicedDES = bitslicedDES;
+    }
+
+    /**
+     * Decipher a range of 8-byte blocks of the cipher text.
+     * @param in The cipher text
+     * @param inOff The index of the first byte of the cipher text
+     * @param len The number of bytes to decipher, which must be divided by 8
+     * @param out The array to write the plain text into (can be the same as the input)
+     * @param outOff The index where the first byte of the plain text goes
+     */
+    @Override
+    public void decipher(byte[] in, int inOff, int len, byte[] out, int outOff){
+        checkBulkLength(len);
+
+        // the whole batches of 64 blocks go through the bitsliced core
+        int batchNum = len / BitslicedDES.BATCH_BYTES;
+        this.bitslicedDES.cryptBatches(in, inOff, batchNum, out, outOff);
+
+        // the rest of the blocks are deciphered one by one
+        for (int offset = batchNum * BitslicedDES.BATCH_BYTES; offset < len; offset += 8){
+            blockLongToByte(decipher(blockByteToLong(in, inOff + offset)), out, outOff + offset);
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package DESAlgorithm.cipherComponents;
+
+/**
+ * An encipher tool for bulk data, which enciphers 64 blocks in one pass using the bitsliced DES core.
+ * The blocks that cannot fill a whole batch of 64 are enciphered one by one as in PackedEncipherTool.
+ * The result is exactly the same as the one of EncipherTool, block by block (ECB).
+ */
+public class BitslicedEncipherTool extends PackedEncipherTool{
+
+    // The bitsliced core using the same K1, K2, ..., K16
+    private final BitslicedDES bitslicedDES;
+
+    public BitslicedEncipherTool(Key key){
+        super(key);
+        this.bitslicedDES = BitslicedDES.create(this.packedKeySet, false);
+    }
+
+    /**
+     * The constructor for the subclasses having their own bitsliced core (e.g. several DES passes fused together)
+     * @param key The key object
+     * @param bitslicedDES The bitsliced core, which must give the same result as the encipher(long) of the subclass
+     */
+    protected BitslicedEncipherTool(Key key, BitslicedDES bitslicedDES){
+        super(key);
+        this.bitslicedDES = bitslicedDES;
+    }
+
+    /**
+     * Encipher a range of 8-byte blocks of the plain text.
+     * @param in The plain text
+     * @param inOff The index of the first byte of the plain text
+     * @param len The number of bytes to encipher, which must be divided by 8
+     * @param out The array to write the cipher text into (can be the same as the input)
+     * @param outOff The index where the first byte of the cipher text goes
+     */
+    @Override
+    public void encipher(byte[] in, int inOff, int len, byte[] out, int outOff){
+        checkBulkLength(len);
+
+        // the whole batches of 64 blocks go through the bitsliced core
+        int batchNum = len / BitslicedDES.BATCH_BYTES;
+        this.bitslicedDES.cryptBatches(in, inOff, batchNum, out, outOff);
+
+        // the rest of the blocks are enciphered one by one
+        for (int offset = batchNum * BitslicedDES.BATCH_BYTES; offset < len; offset += 8){
+            blockLongToByte(encipher(blockByteToLong(in, inOff + offset)), out, outOff + offset);
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package DESAlgorithm.cipherComponents;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A decipher tool using the cipher block chaining (CBC) mode.
+ * The plain text of a block only depends on the cipher text of this block and the previous one: P(i) = D(C(i)) (+) C(i-1),
+ * so a long range is split into segments, which are deciphered in parallel on the common ForkJoinPool.
+ * The tool remembers the last block of cipher text, so the consecutive calls continue the same chain.
+ * It should only be used by one thread.
+ */
+public class CBCDecipherTool extends DecipherTool{
+
+    // Ranges not longer than this are processed in a single thread (multiple of 512, so that the bitsliced tool can use whole batches)
+    static final int SEGMENT_SIZE = 32 * 1024;
+
+    // The working array for the deciphered blocks of a segment, one for each thread
+    private static final ThreadLocal<byte[]> WORKING = ThreadLocal.withInitial(() -> new byte[SEGMENT_SIZE]);
+
+    // The tool used to decipher the blocks before they are XORed with the previous cipher text (the bitsliced one by default)
+    private final DecipherTool blockDecipherTool;
+
+    // The last block of cipher text (the IV before the first block)
+    private long previous;
+
+    /**
+     * The constructor
+     * @param key The key object
+     * @param iv The initialization vector, which was XORed with the first block
+     */
+    public CBCDecipherTool(Key key, long iv){
+        this(new BitslicedDecipherTool(key), iv);
+    }
+
+    /**
+     * The constructor using a specific block cipher (e.g. Triple DES)
+     * @param blockDecipherTool The tool deciphering the blocks, which should be good at long ranges
+     * @param iv The initialization vector, which was XORed with the first block
+     */
+    public CBCDecipherTool(DecipherTool blockDecipherTool, long iv){
+        super(blockDecipherTool.key);
+        this.blockDecipherTool = blockDecipherTool;
+        this.previous = iv;
+    }
+
+    /**
+     * Decipher the next 64-bit block of the cipher text
+     * @param blockInByte An 8-byte block of the cipher text
+     * @return An 8-byte block of plain text
+     */
+    @Override
+    public byte[] decipher(byte[] blockInByte){
+        byte[] plainBlock = new byte[8];
+        decipher(blockInByte, 0, 8, plainBlock, 0);
+        return plainBlock;
+    }
+
+    /**
+     * Decipher the next range of 8-byte blocks of the cipher text.
+     * @param in The cipher text
+     * @param inOff The index of the first byte of the cipher text
+     * @param len The number of bytes to decipher, which must be divided by 8
+     * @param out The array to write the plain text into (can be the same as the input)
+     * @param outOff The index where the first byte of the plain text goes
+     */
+    @Override
+    public void decipher(byte[] in, int inOff, int len, byte[] out, int outOff){
+        checkBulkLength(len);
+        if (len == 0){
+            return;
+        }
+
+        // the block of cipher text before each segment must be taken before any segment is written,
+        // because the output may be written in place over the input
+        int segmentNum = (len + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+        long[] segmentPrevious = new long[segmentNum];
+        segmentPrevious[0] = this.previous;
+        for (int s = 1; s < segmentNum; s++){
+            segmentPrevious[s] = blockByteToLong(in, inOff + s * SEGMENT_SIZE - 8);
+        }
+        long last = blockByteToLong(in, inOff + len - 8);
+
+        if (segmentNum == 1){
+            // not worth splitting
+            decipherSegment(in, inOff, len, out, outOff, segmentPrevious[0]);
+        }else{
+            ForkJoinPool.commonPool().invoke(new SegmentTask(in, inOff, len, out, outOff, segmentPrevious, 0, segmentNum));
+        }
+
+        // the chain continues from the last block of cipher text
+        this.previous = last;
+    }
+
+    /**
+     * Decipher a segment, which is not longer than SEGMENT_SIZE, in the current thread.
+     * @param previous The block of cipher text before this segment
+     */
+    private void decipherSegment(byte[] in, int inOff, int len, byte[] out, int outOff, long previous){
+        byte[] working = WORKING.get();
+
+        // D(C(i)) of all the blocks at once
+        this.blockDecipherTool.decipher(in, inOff, len, working, 0);
+
+        // P(i) = D(C(i)) (+) C(i-1), from the last block to the first one,
+        // so writing P(i) over C(i) in place never destroys a C(i) that is still needed
+        for (int offset = len - 8; offset >= 0; offset -= 8){
+            long previousCipherBlock = offset == 0 ? previous : blockByteToLong(in, inOff + offset - 8);
+            blockLongToByte(blockByteToLong(working, offset) ^ previousCipherBlock, out, outOff + offset);
+        }
+    }
+
+    /**
+     * A task for the ForkJoinPool, which splits its segments in two halves until there is only one segment.
+     * (the tasks are never serialized)
+     */
+    @SuppressWarnings("serial")
+    private class SegmentTask extends RecursiveAction {
+
+        private final byte[] in;
+        private final int inOff;
+        private final int len;
+        private final byte[] out;
+        private final int outOff;
+        private final long[] segmentPrevious;
+        // the segments [fromSegment, toSegment) of the whole range are processed by this task
+        private final int fromSegment;
+        private final int toSegment;
+
+        SegmentTask(byte[] in, int inOff, int len, byte[] out, int outOff, long[] segmentPrevious, int fromSegment, int toSegment){
+            this.in = in;
+            this.inOff = inOff;
+            this.len = len;
+            this.out = out;
+            this.outOff = outOff;
+            this.segmentPrevious = segmentPrevious;
+            this.fromSegment = fromSegment;
+            this.toSegment = toSegment;
+        }
+
+        @Override
+        protected void compute() {
+            if (toSegment - fromSegment == 1){
+                int offset = fromSegment * SEGMENT_SIZE;
+                int segmentLen = Math.min(SEGMENT_SIZE, len - offset);
+                decipherSegment(in, inOff + offset, segmentLen, out, outOff + offset, segmentPrevious[fromSegment]);
+                return;
+            }
+
+            int middle = (fromSegment + toSegment) / 2;
+            invokeAll(
+                    new SegmentTask(in, inOff, len, out, outOff, segmentPrevious, fromSegment, middle),
+                    new SegmentTask(in, inOff, len, out, outOff, segmentPrevious, middle, toSegment)
+            );
+        }
+    }
+}
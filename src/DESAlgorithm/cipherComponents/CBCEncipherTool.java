@@ -0,0 +1,78 @@
+package DESAlgorithm.cipherComponents;
+
+/**
+ * An encipher tool using the cipher block chaining (CBC) mode.
+ * Every block of plain text is XORed with the previous block of cipher text (the IV for the first one) before it is enciphered,
+ * so the blocks have to be enciphered one after another.
+ * The tool remembers the last block of cipher text, so the consecutive calls continue the same chain.
+ */
+public class CBCEncipherTool extends EncipherTool{
+
+    // The tool used to encipher the single blocks
+    private final PackedEncipherTool packedEncipherTool;
+
+    // The last block of cipher text (the IV before the first block)
+    private long previous;
+
+    /**
+     * The constructor
+     * @param key The key object
+     * @param iv The initialization vector, which is XORed with the first block
+     */
+    public CBCEncipherTool(Key key, long iv){
+        this(new PackedEncipherTool(key), iv);
+    }
+
+    /**
+     * The constructor using a specific block cipher (e.g. Triple DES)
+     * @param packedEncipherTool The tool enciphering the single blocks
+     * @param iv The initialization vector, which is XORed with the first block
+     */
+    public CBCEncipherTool(PackedEncipherTool packedEncipherTool, long iv){
+        super(packedEncipherTool.key);
+        this.packedEncipherTool = packedEncipherTool;
+        this.previous = iv;
+    }
+
+    /**
+     * Encipher the next 64-bit block of the plain text
+     * @param blockInByte An 8-byte input block
+     * @return An 8-byte block represents the cipher text of the input block
+     */
+    @Override
+    public byte[] encipher(byte[] blockInByte){
+        byte[] cipherBlock = new byte[8];
+        encipher(blockInByte, 0, 8, cipherBlock, 0);
+        return cipherBlock;
+    }
+
+    /**
+     * Encipher the next range of 8-byte blocks of the plain text.
+     * @param in The plain text
+     * @param inOff The index of the first byte of the plain text
+     * @param len The number of bytes to encipher, which must be divided by 8
+     * @param out The array to write the cipher text into (can be the same as the input)
+     * @param outOff The index where the first byte of the cipher text goes
+     */
+    @Override
+    public void encipher(byte[] in, int inOff, int len, byte[] out, int outOff){
+        checkBulkLength(len);
+        for (int offset = 0; offset < len; offset += 8){
+            // C(i) = E(P(i) (+) C(i-1))
+            long block = blockByteToLong(in, inOff + offset) ^ this.previous;
+            this.previous = this.packedEncipherTool.encipher(block);
+            blockLongToByte(this.previous, out, outOff + offset);
+        }
+    }
+
+    /**
+     * Every block depends on the cipher text of the block before it, so no other tool can start in the middle of the chain.
+     * @param blockIndex The index of the block the other tool would start at
+     * @return null
+     */
+    @Override
+    public EncipherTool startingAt(long blockIndex){
+        return null;
+    }
+
+}
@@ -0,0 +1,62 @@
+package DESAlgorithm.cipherComponents;
+
+/**
+ * A decipher tool using the counter (CTR) mode.
+ * The tool remembers how many blocks it has deciphered, so the consecutive calls continue the same keystream.
+ * Long ranges are deciphered in parallel segments, but the tool itself should only be used by one thread.
+ */
+public class CTRDecipherTool extends DecipherTool{
+
+    // The counter mode, which enciphers the counter blocks with the block encipher tool (the bitsliced one by default) (deciphering is the same XOR with the keystream)
+    private final CounterMode counterMode;
+
+    // The index of the next block to be deciphered
+    private long blockIndex = 0;
+
+    /**
+     * The constructor
+     * @param key The key object
+     * @param nonce The value of the counter block for the first block, which should never be reused with the same key
+     */
+    public CTRDecipherTool(Key key, long nonce){
+        this(new BitslicedEncipherTool(key), nonce);
+    }
+
+    /**
+     * The constructor using a specific block cipher (e.g. Triple DES) to encipher the counter blocks
+     * @param blockEncipherTool The tool enciphering the counter blocks, which should be good at long ranges
+     * @param nonce The value of the counter block for the first block, which should never be reused with the same key
+     */
+    public CTRDecipherTool(EncipherTool blockEncipherTool, long nonce){
+        super(blockEncipherTool.key);
+        this.counterMode = new CounterMode(blockEncipherTool, nonce);
+    }
+
+    /**
+     * Decipher the next 64-bit block of the cipher text
+     * @param blockInByte An 8-byte block of the cipher text
+     * @return An 8-byte block of plain text
+     */
+    @Override
+    public byte[] decipher(byte[] blockInByte){
+        byte[] plainBlock = new byte[8];
+        decipher(blockInByte, 0, 8, plainBlock, 0);
+        return plainBlock;
+    }
+
+    /**
+     * Decipher the next range of 8-byte blocks of the cipher text.
+     * @param in The cipher text
+     * @param inOff The index of the first byte of the cipher text
+     * @param len The number of bytes to decipher, which must be divided by 8
+     * @param out The array to write the plain text into (can be the same as the input)
+     * @param outOff The index where the first byte of the plain text goes
+     */
+    @Override
+    public void decipher(byte[] in, int inOff, int len, byte[] out, int outOff){
+        checkBulkLength(len);
+        this.counterMode.crypt(in, inOff, len, out, outOff, this.blockIndex);
+        this.blockIndex += len / 8;
+    }
+
+}
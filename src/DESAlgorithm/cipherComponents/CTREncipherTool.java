@@ -0,0 +1,85 @@
+package DESAlgorithm.cipherComponents;
+
+/**
+ * An encipher tool using the counter (CTR) mode.
+ * The tool remembers how many blocks it has enciphered, so the consecutive calls continue the same keystream.
+ * Long ranges are enciphered in parallel segments, but the tool itself should only be used by one thread
+ * (other threads can use the tools given by startingAt(...), which share the same keystream).
+ */
+public class CTREncipherTool extends EncipherTool{
+
+    // The counter mode, which enciphers the counter blocks with the block encipher tool (the bitsliced one by default)
+    private final CounterMode counterMode;
+
+    // The index of the next block to be enciphered
+    private long blockIndex = 0;
+
+    /**
+     * The constructor
+     * @param key The key object
+     * @param nonce The value of the counter block for the first block, which should never be reused with the same key
+     */
+    public CTREncipherTool(Key key, long nonce){
+        this(new BitslicedEncipherTool(key), nonce);
+    }
+
+    /**
+     * The constructor using a specific block cipher (e.g. Triple DES) to encipher the counter blocks
+     * @param blockEncipherTool The tool enciphering the counter blocks, which should be good at long ranges
+     * @param nonce The value of the counter block for the first block, which should never be reused with the same key
+     */
+    public CTREncipherTool(EncipherTool blockEncipherTool, long nonce){
+        super(blockEncipherTool.key);
+        this.counterMode = new CounterMode(blockEncipherTool, nonce);
+    }
+
+    /**
+     * The constructor of a tool continuing the keystream of another one from a given block
+     * @param key The key object
+     * @param counterMode The counter mode of the other tool
+     * @param blockIndex The index of the first block to be enciphered
+     */
+    private CTREncipherTool(Key key, CounterMode counterMode, long blockIndex){
+        super(key);
+        this.counterMode = counterMode;
+        this.blockIndex = blockIndex;
+    }
+
+    /**
+     * Encipher the next 64-bit block of the plain text
+     * @param blockInByte An 8-byte input block
+     * @return An 8-byte block represents the cipher text of the input block
+     */
+    @Override
+    public byte[] encipher(byte[] blockInByte){
+        byte[] cipherBlock = new byte[8];
+        encipher(blockInByte, 0, 8, cipherBlock, 0);
+        return cipherBlock;
+    }
+
+    /**
+     * Encipher the next range of 8-byte blocks of the plain text.
+     * @param in The plain text
+     * @param inOff The index of the first byte of the plain text
+     * @param len The number of bytes to encipher, which must be divided by 8
+     * @param out The array to write the cipher text into (can be the same as the input)
+     * @param outOff The index where the first byte of the cipher text goes
+     */
+    @Override
+    public void encipher(byte[] in, int inOff, int len, byte[] out, int outOff){
+        checkBulkLength(len);
+        this.counterMode.crypt(in, inOff, len, out, outOff, this.blockIndex);
+        this.blockIndex += len / 8;
+    }
+
+    /**
+     * Get a tool enciphering the plain text from a given block on, the keystream of any block can be computed on its own.
+     * @param blockIndex The index of the block the other tool starts at
+     * @return A new tool sharing the key and the nonce of this one
+     */
+    @Override
+    public EncipherTool startingAt(long blockIndex){
+        return new CTREncipherTool(this.key, this.counterMode, blockIndex);
+    }
+
+}
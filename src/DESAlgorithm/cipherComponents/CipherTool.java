@@ -2,6 +2,15 @@ package DESAlgorithm.cipherComponents;
 
 public class CipherTool extends BitByteOperation {
 
+    // The combined S(n)/P tables used by the packed cipher function F, built once from S1...S8 and P
+    private static final int[][] SP_TABLES = buildSPTables();
+
+    // The size of the working array used when the bulk methods work on buffers without a backing array (multiple of 512)
+    protected static final int BULK_WORKING_SIZE = 4096;
+
+    // The working array of each thread, used by the bulk methods on buffers without a backing array, so they do not create one per call
+    protected static final ThreadLocal<byte[]> BULK_WORKING = ThreadLocal.withInitial(() -> new byte[BULK_WORKING_SIZE]);
+
     // The key object, which wraps the 64-bit key
     protected Key key;
 
@@ -10,6 +19,16 @@ public class CipherTool extends BitByteOperation {
         this.key = key;
     }
 
+    /**
+     * Check the length of the data given to the bulk methods, which must be made of whole 8-byte blocks.
+     * @param len The number of bytes
+     */
+    protected void checkBulkLength(int len){
+        if (len % 8 != 0){
+            throw new IllegalArgumentException("The length must be a multiple of 8 bytes: " + len);
+        }
+    }
+
     /**
      * The Cipher function F, used to calculate the f(R, K)
      * @param r The 32-bit R of a specific iteration
@@ -147,4 +166,110 @@ public class CipherTool extends BitByteOperation {
         return output;
     }
 
+    /**
+     * The packed version of the cipher function F, used to calculate the f(R, K) without any array.
+     * The E expansion is done by rotating R, and each S(n) together with P is a single lookup in SP_TABLES.
+     * @param r The 32-bit R of a specific iteration
+     * @param k The 48-bit K of a specific iteration, packed in the lower 48 bits of a long
+     * @return The 32-bit output of f(R, K)
+     */
+    protected int cipherFuncF(int r, long k){
+        int output = 0;
+        for (int i = 0; i < 8; i++){
+            // the i-th 6-bit block of E(R) is made of the bits 4i, ..., 4i+5 of R (bit 0 means bit 32),
+            // so rotating R to the right puts the bit 4i+5 at the lowest position
+            int blockOf6bits = Integer.rotateRight(r, 27 - 4 * i) & 0x3f;
+            // XOR it with the i-th 6-bit block of K
+            blockOf6bits ^= (int) (k >>> (42 - 6 * i)) & 0x3f;
+            // S(n) and P in one lookup, the outputs of the 8 S(n) do not overlap after P, so they can be XORed together
+            output ^= SP_TABLES[i][blockOf6bits];
+        }
+        return output;
+    }
+
+    /**
+     * Start that "complex key-dependent computation" on a packed block.
+     * @param permutedInput The 64-bit "permuted input block".
+     * @param packedKeySet The packed K1, K2, ..., K16
+     * @return The 64-bit "preoutput" (R16L16)
+     */
+    protected long keyDependentComputation(long permutedInput, long[] packedKeySet){
+        // separate the permuted input block into 32-bit L0 and 32-bit R0
+        int l = (int) (permutedInput >>> 32);
+        int r = (int) permutedInput;
+
+        // perform the 16-time iteration, during the iteration of index i, the K(i+1) is needed.
+        for (int i = 0; i < Constants.ITERATION_TIMES; i++){
+            // L' = R, R' = L (+) f(R, K)
+            int nextR = l ^ cipherFuncF(r, packedKeySet[i]);
+            l = r;
+            r = nextR;
+        }
+
+        // concatenate the R16 with L16 to form the preoutput (R16L16)
+        return ((long) r << 32) | (l & 0xffffffffL);
+    }
+
+    /**
+     * Perform the 16 iterations in an inverted order on a packed block.
+     * @param permutedInput The 64-bit R16L16
+     * @param packedKeySet The packed K1, K2, ..., K16
+     * @return The 64-bit preoutput (L0R0)
+     */
+    protected long invertedKeyDependentComputation(long permutedInput, long[] packedKeySet){
+        // separate the permuted input block into 32-bit R16 and 32-bit L16
+        int r = (int) (permutedInput >>> 32);
+        int l = (int) permutedInput;
+
+        // perform the 16-time iterations in the inverted order, during the iteration of index i, the K(16-i) is needed
+        for (int i = 0; i < Constants.ITERATION_TIMES; i++){
+            // R = L', L = R' (+) f(L', K)
+            int formerL = r ^ cipherFuncF(l, packedKeySet[(16 - i) - 1]);
+            r = l;
+            l = formerL;
+        }
+
+        // concatenate the L0 with R0 to form the preoutput (L0R0)
+        return ((long) l << 32) | (r & 0xffffffffL);
+    }
+
+    /**
+     * The packed version of the selection function S, which transform a 6-bit block into a 4-bit block.
+     * @param block The 6-bit block in the lower bits of an int
+     * @param s The S table chosen from the constant repository, which should be one of the S1...S8
+     * @return The 4-bit output in the lower bits of an int
+     */
+    private static int selectionFuncS(int block, int[] s){
+        // the row number is made of the first and the last bit
+        int row = ((block >>> 4) & 0b10) | (block & 0b1);
+        // the column number is made of the middle 4 bits
+        int column = (block >>> 1) & 0b1111;
+
+        return s[(row * 16) + column];
+    }
+
+    /**
+     * Build the combined S(n)/P tables.
+     * SP_TABLES[n][b] is the 32-bit output of P, when the n-th S function gets the 6-bit block b
+     * and all the other S functions output 0s.
+     * @return 8 tables of 64 entries
+     */
+    private static int[][] buildSPTables(){
+        int[][] spTables = new int[8][64];
+        for (int n = 0; n < 8; n++){
+            for (int b = 0; b < 64; b++){
+                // put the 4-bit output of S(n+1) at its place in the 32-bit concatenated block
+                int outputS32bits = selectionFuncS(b, Constants.SELECTION_FUNCTIONS[n]) << (28 - 4 * n);
+
+                // perform the permutation function P on it
+                int permuted = 0;
+                for (int position : Constants.P){
+                    permuted = (permuted << 1) | ((outputS32bits >>> (32 - position)) & 1);
+                }
+                spTables[n][b] = permuted;
+            }
+        }
+        return spTables;
+    }
+
 }
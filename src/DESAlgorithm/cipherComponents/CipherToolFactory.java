@@ -0,0 +1,110 @@
+package DESAlgorithm.cipherComponents;
+
+import java.security.SecureRandom;
+
+/**
+ * To create the encipher and decipher tools for a transfer.
+ * The sender and the receiver must use the same algorithm, the same mode and the same IV, so all of them are sent along with the transfer request.
+ */
+public class CipherToolFactory {
+
+    /*
+        Possible modes of operation
+    */
+    public static final String MODE_ECB = "ECB";    // every block is enciphered on its own
+    public static final String MODE_CTR = "CTR";    // counter mode, enciphered and deciphered in parallel segments
+    public static final String MODE_CBC = "CBC";    // cipher block chaining, enciphered block by block, deciphered in parallel segments
+
+    // All the modes, the first one is the default
+    public static final String[] MODES = {MODE_CTR, MODE_CBC, MODE_ECB};
+
+    /*
+        Possible block ciphers
+    */
+    public static final String ALGORITHM_DES = "DES";       // single DES, the key is 8 bytes (shorter ones are filled with 0s)
+    public static final String ALGORITHM_3DES = "3DES";     // Triple DES (EDE), the key must be 16 or 24 bytes
+
+    // All the block ciphers, the first one is the default
+    public static final String[] ALGORITHMS = {ALGORITHM_DES, ALGORITHM_3DES};
+
+    // The random generator for the IVs
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Generate a random IV (for CTR, this is the nonce of the counter blocks; for CBC, it is XORed with the first block)
+     * @return A random 64-bit IV
+     */
+    public static long generateIV(){
+        return RANDOM.nextLong();
+    }
+
+    /**
+     * Check whether a key string can be used with a block cipher
+     * @param algorithm One of the ALGORITHMS
+     * @param keyStr The user input of the key
+     * @return true if the key can be used
+     */
+    public static boolean isValidKey(String algorithm, String keyStr){
+        if (keyStr == null || keyStr.isEmpty()){
+            return false;
+        }
+        if (ALGORITHM_3DES.equals(algorithm)){
+            return Key.isTripleDESKey(keyStr);
+        }
+        return true;
+    }
+
+    /**
+     * Create the encipher tool for a transfer
+     * @param algorithm One of the ALGORITHMS
+     * @param mode One of the MODES
+     * @param key The key object
+     * @param iv The IV of this transfer (not used by ECB)
+     * @return A new encipher tool, which should only be used for this transfer
+     */
+    public static EncipherTool createEncipherTool(String algorithm, String mode, Key key, long iv){
+        // the tool for the single blocks, which is also good at long ranges
+        BitslicedEncipherTool blockEncipherTool;
+        if (ALGORITHM_DES.equals(algorithm)){
+            blockEncipherTool = new BitslicedEncipherTool(key);
+        }else if (ALGORITHM_3DES.equals(algorithm)){
+            blockEncipherTool = new TripleDESEncipherTool(key);
+        }else{
+            throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+        }
+
+        if (MODE_CTR.equals(mode)){
+            return new CTREncipherTool(blockEncipherTool, iv);
+        }else if (MODE_CBC.equals(mode)){
+            return new CBCEncipherTool(blockEncipherTool, iv);
+        }else if (MODE_ECB.equals(mode)){
+            return blockEncipherTool;
+        }
+        throw new IllegalArgumentException("Unknown mode: " + mode);
+    }
+
+    /**
+     * Create the decipher tool for a transfer
+     * @param algorithm One of the ALGORITHMS
+     * @param mode One of the MODES
+     * @param key The key object
+     * @param iv The IV of this transfer (not used by ECB)
+     * @return A new decipher tool, which should only be used for this transfer
+     */
+    public static DecipherTool createDecipherTool(String algorithm, String mode, Key key, long iv){
+        if (!ALGORITHM_DES.equals(algorithm) && !ALGORITHM_3DES.equals(algorithm)){
+            throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+        }
+        boolean tripleDES = ALGORITHM_3DES.equals(algorithm);
+
+        if (MODE_CTR.equals(mode)){
+            // CTR only enciphers the counter blocks, even when deciphering
+            return new CTRDecipherTool(tripleDES ? new TripleDESEncipherTool(key) : new BitslicedEncipherTool(key), iv);
+        }else if (MODE_CBC.equals(mode)){
+            return new CBCDecipherTool(tripleDES ? new TripleDESDecipherTool(key) : new BitslicedDecipherTool(key), iv);
+        }else if (MODE_ECB.equals(mode)){
+            return tripleDES ? new TripleDESDecipherTool(key) : new BitslicedDecipherTool(key);
+        }
+        throw new IllegalArgumentException("Unknown mode: " + mode);
+    }
+}
@@ -0,0 +1,111 @@
+package DESAlgorithm.cipherComponents;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The counter (CTR) mode shared by CTREncipherTool and CTRDecipherTool.
+ * The keystream block of the index i is the encipherment of (nonce + i), so it can be computed for any block on its own.
+ * A long range of data is therefore split into segments, which are processed in parallel on the common ForkJoinPool.
+ * Encipher and decipher are the same operation: XOR the data with the keystream.
+ */
+class CounterMode extends BitByteOperation {
+
+    // Ranges not longer than this are processed in a single thread (multiple of 512, so that the bitsliced tool can use whole batches)
+    static final int SEGMENT_SIZE = 32 * 1024;
+
+    // The working array for the keystream of a segment, one for each thread
+    private static final ThreadLocal<byte[]> KEYSTREAM = ThreadLocal.withInitial(() -> new byte[SEGMENT_SIZE]);
+
+    // The tool used to encipher the counter blocks (it must not keep any state between the calls)
+    private final EncipherTool encipherTool;
+
+    // The value of the counter block for the block index 0
+    private final long nonce;
+
+    /**
+     * The constructor
+     * @param encipherTool The tool used to encipher the counter blocks
+     * @param nonce The value of the counter block for the block index 0, which should never be reused with the same key
+     */
+    CounterMode(EncipherTool encipherTool, long nonce){
+        this.encipherTool = encipherTool;
+        this.nonce = nonce;
+    }
+
+    /**
+     * XOR a range of data with the keystream.
+     * @param in The input data
+     * @param inOff The index of the first input byte
+     * @param len The number of bytes
+     * @param out The array to write the output into (can be the same as the input)
+     * @param outOff The index where the first output byte goes
+     * @param firstBlockIndex The index of the block the first input byte belongs to
+     */
+    void crypt(byte[] in, int inOff, int len, byte[] out, int outOff, long firstBlockIndex){
+        if (len <= SEGMENT_SIZE){
+            // not worth splitting
+            cryptSegment(in, inOff, len, out, outOff, firstBlockIndex);
+        }else{
+            ForkJoinPool.commonPool().invoke(new SegmentTask(in, inOff, len, out, outOff, firstBlockIndex));
+        }
+    }
+
+    /**
+     * XOR a segment, which is not longer than SEGMENT_SIZE, with the keystream in the current thread.
+     */
+    private void cryptSegment(byte[] in, int inOff, int len, byte[] out, int outOff, long firstBlockIndex){
+        byte[] keystream = KEYSTREAM.get();
+
+        // generate the counter blocks for this segment, then encipher them all at once
+        int keystreamLen = (len + 7) / 8 * 8;
+        for (int offset = 0; offset < keystreamLen; offset += 8){
+            blockLongToByte(this.nonce + firstBlockIndex + offset / 8, keystream, offset);
+        }
+        this.encipherTool.encipher(keystream, 0, keystreamLen, keystream, 0);
+
+        // XOR the data with the keystream
+        for (int i = 0; i < len; i++){
+            out[outOff + i] = (byte) (in[inOff + i] ^ keystream[i]);
+        }
+    }
+
+    /**
+     * A task for the ForkJoinPool, which splits its range in two halves until they are short enough.
+     * (the tasks are never serialized)
+     */
+    @SuppressWarnings("serial")
+    private class SegmentTask extends RecursiveAction {
+
+        private final byte[] in;
+        private final int inOff;
+        private final int len;
+        private final byte[] out;
+        private final int outOff;
+        private final long firstBlockIndex;
+
+        SegmentTask(byte[] in, int inOff, int len, byte[] out, int outOff, long firstBlockIndex){
+            this.in = in;
+            this.inOff = inOff;
+            this.len = len;
+            this.out = out;
+            this.outOff = outOff;
+            this.firstBlockIndex = firstBlockIndex;
+        }
+
+        @Override
+        protected void compute() {
+            if (len <= SEGMENT_SIZE){
+                cryptSegment(in, inOff, len, out, outOff, firstBlockIndex);
+                return;
+            }
+
+            // split at a whole number of segments, so that every split starts at the beginning of a block
+            int leftLen = (len / SEGMENT_SIZE + 1) / 2 * SEGMENT_SIZE;
+            invokeAll(
+                    new SegmentTask(in, inOff, leftLen, out, outOff, firstBlockIndex),
+                    new SegmentTask(in, inOff + leftLen, len - leftLen, out, outOff + leftLen, firstBlockIndex + leftLen / 8)
+            );
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package DESAlgorithm.cipherComponents;
 
+import java.nio.ByteBuffer;
+
 public class DecipherTool extends CipherTool{
 
     // The constructor
@@ -29,6 +31,64 @@ public class DecipherTool extends CipherTool{
         return blockBitToByte(outputInBit);
     }
 
+    /**
+     * Decipher a range of 8-byte blocks of the cipher text, block by block, without creating any array.
+     * The blocks are deciphered on the packed key set of the key, which gives exactly the same result as decipher(byte[]).
+     * @param in The cipher text
+     * @param inOff The index of the first byte of the cipher text
+     * @param len The number of bytes to decipher, which must be divided by 8
+     * @param out The array to write the plain text into (can be the same as the input)
+     * @param outOff The index where the first byte of the plain text goes
+     */
+    public void decipher(byte[] in, int inOff, int len, byte[] out, int outOff){
+        checkBulkLength(len);
+
+        // the packed K1, K2, ..., K16, which are kept by the key
+        long[] packedKeySet = key.getPackedKeySet();
+        for (int offset = 0; offset < len; offset += 8){
+            // IP, the 16 iterations, then IP-1, all on the block packed into a long
+            long permutedInput = Permutation.IP.permute(blockByteToLong(in, inOff + offset));
+            long preOutput = invertedKeyDependentComputation(permutedInput, packedKeySet);
+            blockLongToByte(Permutation.IP_INVERSE.permute(preOutput), out, outOff + offset);
+        }
+    }
+
+    /**
+     * Decipher all the remaining bytes of a buffer into another buffer.
+     * The positions of both buffers are moved forward by the number of bytes deciphered.
+     * @param in The buffer of cipher text, the number of the remaining bytes must be divided by 8
+     * @param out The buffer to write the plain text into, which must have enough space remaining
+     */
+    public void decipher(ByteBuffer in, ByteBuffer out){
+        int len = in.remaining();
+        checkBulkLength(len);
+
+        // buffers backed by arrays can be deciphered directly on their arrays
+        if (in.hasArray() && out.hasArray()){
+            decipher(in.array(), in.arrayOffset() + in.position(), len, out.array(), out.arrayOffset() + out.position());
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+            return;
+        }
+
+        // if only the output has an array (e.g. reading from a mapped file), the input is copied into it, then deciphered in place
+        if (out.hasArray()){
+            int outPosition = out.position();
+            out.put(in);
+            decipher(out.array(), out.arrayOffset() + outPosition, len, out.array(), out.arrayOffset() + outPosition);
+            return;
+        }
+
+        // otherwise (e.g. direct buffers), the bytes go through the working array of this thread piece by piece
+        byte[] working = BULK_WORKING.get();
+        while (in.hasRemaining()){
+            int pieceLen = Math.min(in.remaining(), working.length);
+            in.get(working, 0, pieceLen);
+            decipher(working, 0, pieceLen, working, 0);
+            out.put(working, 0, pieceLen);
+        }
+    }
+
     /**
      * Perform the 16 iterations in an inverted order to perform the description.
      * @param permutedInputBlock The R16L16
@@ -1,5 +1,7 @@
 package DESAlgorithm.cipherComponents;
 
+import java.nio.ByteBuffer;
+
 public class EncipherTool extends CipherTool{
 
     public EncipherTool(Key key){
@@ -29,6 +31,75 @@ public class EncipherTool extends CipherTool{
 
     }
 
+    /**
+     * Encipher a range of 8-byte blocks of the plain text, block by block, without creating any array.
+     * The blocks are enciphered on the packed key set of the key, which gives exactly the same result as encipher(byte[]).
+     * @param in The plain text
+     * @param inOff The index of the first byte of the plain text
+     * @param len The number of bytes to encipher, which must be divided by 8
+     * @param out The array to write the cipher text into (can be the same as the input)
+     * @param outOff The index where the first byte of the cipher text goes
+     */
+    public void encipher(byte[] in, int inOff, int len, byte[] out, int outOff){
+        checkBulkLength(len);
+
+        // the packed K1, K2, ..., K16, which are kept by the key
+        long[] packedKeySet = key.getPackedKeySet();
+        for (int offset = 0; offset < len; offset += 8){
+            // IP, the 16 iterations, then IP-1, all on the block packed into a long
+            long permutedInput = Permutation.IP.permute(blockByteToLong(in, inOff + offset));
+            long preOutput = keyDependentComputation(permutedInput, packedKeySet);
+            blockLongToByte(Permutation.IP_INVERSE.permute(preOutput), out, outOff + offset);
+        }
+    }
+
+    /**
+     * Encipher all the remaining bytes of a buffer into another buffer.
+     * The positions of both buffers are moved forward by the number of bytes enciphered.
+     * @param in The buffer of plain text, the number of the remaining bytes must be divided by 8
+     * @param out The buffer to write the cipher text into, which must have enough space remaining
+     */
+    public void encipher(ByteBuffer in, ByteBuffer out){
+        int len = in.remaining();
+        checkBulkLength(len);
+
+        // buffers backed by arrays can be enciphered directly on their arrays
+        if (in.hasArray() && out.hasArray()){
+            encipher(in.array(), in.arrayOffset() + in.position(), len, out.array(), out.arrayOffset() + out.position());
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+            return;
+        }
+
+        // if only the output has an array (e.g. reading from a mapped file), the input is copied into it, then enciphered in place
+        if (out.hasArray()){
+            int outPosition = out.position();
+            out.put(in);
+            encipher(out.array(), out.arrayOffset() + outPosition, len, out.array(), out.arrayOffset() + outPosition);
+            return;
+        }
+
+        // otherwise (e.g. direct buffers), the bytes go through the working array of this thread piece by piece
+        byte[] working = BULK_WORKING.get();
+        while (in.hasRemaining()){
+            int pieceLen = Math.min(in.remaining(), working.length);
+            in.get(working, 0, pieceLen);
+            encipher(working, 0, pieceLen, working, 0);
+            out.put(working, 0, pieceLen);
+        }
+    }
+
+    /**
+     * Get a tool enciphering the plain text from a given block on, which can be used by another thread while this tool is used,
+     * so that the ranges of a long plain text can be enciphered by several threads at once.
+     * A block enciphered on its own (ECB) does not depend on the blocks before it, so this tool itself is given.
+     * @param blockIndex The index of the block (in the whole plain text) the other tool starts at
+     * @return The tool, or null if the blocks can only be enciphered one after another by this tool (e.g. CBC)
+     */
+    public EncipherTool startingAt(long blockIndex){
+        return this;
+    }
+
     /**
      * Start that "complex key-dependent computation".
      * The 16 iterations should be performed here.
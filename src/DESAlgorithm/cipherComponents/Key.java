@@ -1,22 +1,92 @@
 package DESAlgorithm.cipherComponents;
 
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class Key extends BitByteOperation{
 
+    // How many key schedules can be kept in the cache at most
+    public static final int CACHE_CAPACITY = 64;
+
+    // The cache of the generated keys (key: key string, value: key object), the least recently used one is removed when it is full
+    private static final Map<String, Key> CACHE = new LinkedHashMap<String, Key>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Key> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+    // The counters of the cache, which show whether the cache is working
+    private static long cacheHits = 0;
+    private static long cacheMisses = 0;
+
     private final String keyStr;   // The user input of the key
-    private int[] keyBits;         // After transforming into the bits
-    private int[][] keySet;       // An array contains 48-bit K1, K2, ..., K16
+    private final int byteOffset;  // Where the 8 bytes of this key start in the key string (not 0 only for the 2nd and 3rd keys of Triple DES)
+    private long keyBits;          // After transforming into the bits (packed into a long)
+    private long[] packedKeySet;   // An array contains 48-bit K1, K2, ..., K16, each one packed in the lower 48 bits of a long
+    private int[][] keySet;        // The bit form of K1, K2, ..., K16, only generated when it is asked for
+    private Key[] tripleDESKeys;   // The 3 keys of Triple DES, only generated when they are asked for
 
     // The constructor
     public Key(String keyStr){
+        this(keyStr, 0);
+    }
+
+    /**
+     * The constructor of a key taking the 8 bytes from a specific place of the key string.
+     * @param keyStr The user input of the key
+     * @param byteOffset The index of the first byte of this key in the UTF-8 bytes of the key string
+     */
+    private Key(String keyStr, int byteOffset){
         this.keyStr = keyStr;
+        this.byteOffset = byteOffset;
         // initialize the key in the bit form
         this.generateKeyBit();
         // initialize the 48-bit K1, K2, ..., K16
         this.generateKeySet();
     }
 
+    /**
+     * Get the key object of a key string from the cache.
+     * If this key string has not been used recently, a new key object would be generated and put into the cache.
+     * The key objects are never changed after they are generated, so one of them can be shared by different transfers.
+     * @param keyStr The user input of the key
+     * @return The key object of this key string
+     */
+    public static Key getInstance(String keyStr){
+        synchronized (CACHE){
+            Key key = CACHE.get(keyStr);
+            if (key != null){
+                cacheHits++;
+                return key;
+            }
+            cacheMisses++;
+
+            // generate the key schedule and remember it
+            key = new Key(keyStr);
+            CACHE.put(keyStr, key);
+            return key;
+        }
+    }
+
+    /**
+     * @return How many times getInstance() found the key in the cache
+     */
+    public static long getCacheHits(){
+        synchronized (CACHE){
+            return cacheHits;
+        }
+    }
+
+    /**
+     * @return How many times getInstance() had to generate a new key
+     */
+    public static long getCacheMisses(){
+        synchronized (CACHE){
+            return cacheMisses;
+        }
+    }
+
     /* Getters */
 
     public String getKeyStr() {
@@ -24,11 +94,59 @@ public class Key extends BitByteOperation{
     }
 
     public int[] getKeyBits() {
-        return keyBits;
+        return blockLongToBit(keyBits, 64);
+    }
+
+    public synchronized int[][] getKeySet() {
+        // the bit form is only needed by the tools working on bit arrays, so it is generated the first time it is used
+        if (this.keySet == null){
+            int[][] keySet = new int[Constants.ITERATION_TIMES][];
+            for (int i = 0; i < Constants.ITERATION_TIMES; i++){
+                keySet[i] = blockLongToBit(this.packedKeySet[i], 48);
+            }
+            this.keySet = keySet;
+        }
+        return this.keySet;
+    }
+
+    /**
+     * Get the packed K1, K2, ..., K16, which are used by the packed cipher function F.
+     * @return An array contains the 16 K(n), each one packed in the lower 48 bits of a long. (index n-1 for K(n))
+     */
+    public long[] getPackedKeySet() {
+        return packedKeySet;
+    }
+
+    /**
+     * Get the 3 keys for Triple DES (EDE), which are made of the bytes 1-8, 9-16 and 17-24 of the key string.
+     * For a 16-byte key string, the third key is the same as the first one.
+     * @return An array contains the key objects K1, K2, K3. (K1 is this key object itself)
+     */
+    public synchronized Key[] getTripleDESKeys(){
+        if (this.tripleDESKeys == null){
+            int length = this.keyStr.getBytes(StandardCharsets.UTF_8).length;
+            if (!isTripleDESKeyLength(length)){
+                throw new IllegalArgumentException("A Triple DES key must be 16 or 24 bytes, but it is " + length + " bytes");
+            }
+
+            Key k2 = new Key(this.keyStr, 8);
+            Key k3 = length == 24 ? new Key(this.keyStr, 16) : this;
+            this.tripleDESKeys = new Key[]{this, k2, k3};
+        }
+        return this.tripleDESKeys;
     }
 
-    public int[][] getKeySet() {
-        return keySet;
+    /**
+     * Check whether a key string can be used for Triple DES
+     * @param keyStr The user input of the key
+     * @return true if the key string is 16 or 24 bytes in UTF-8
+     */
+    public static boolean isTripleDESKey(String keyStr){
+        return isTripleDESKeyLength(keyStr.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static boolean isTripleDESKeyLength(int length){
+        return length == 16 || length == 24;
     }
 
     /**
@@ -39,123 +157,93 @@ public class Key extends BitByteOperation{
      */
     public int[] get48BitKnFromSet(int index){
         if (index >= 0 && index <= 15){
-            return this.keySet[index];
+            return getKeySet()[index];
         }else{
             return null;
         }
     }
 
     /**
-     * Transform the user inputted key string into an array of bits.
+     * Transform the user inputted key string into 64 bits.
      * This should be used in the constructor to initialize the field of keyBit.
      * This method would ensure the keyBit is 64-bit, if the user input less than 64-bit, it would be filled with 0s at the end.
      * On the other hand, if the user input is more than 64-bit, it would be truncated from the 64th bit.
+     * (For the 2nd and 3rd keys of Triple DES, the 64 bits start from the byteOffset)
      */
     private void generateKeyBit(){
         // transform the key string into the bytes
         byte[] keyBytes = this.keyStr.getBytes(StandardCharsets.UTF_8);
-        // the 8-byte array after transformation
-        byte[] keyBytes8 = new byte[8];
 
-        // transform the user input into 8 bytes array
+        this.keyBits = 0;
         for (int i = 0; i < 8; i++){
-            // check if reach the end of keyBytes
-            if(i < keyBytes.length){
-                // if not, we move this byte from keyBytes to keyBytes8
-                keyBytes8[i] = keyBytes[i];
-            }else{
-                // if the end is reached, we will fill 0 in the rest of the keyBytes8
-                keyBytes8[i] = 0;
+            // if the end of keyBytes is reached, the rest of the bytes are 0s
+            int b = byteOffset + i < keyBytes.length ? keyBytes[byteOffset + i] & 0xff : 0;
+
+            // a byte lower than 128 has less than 8 significant bits, so a parity bit is added at its end
+            // (1 if it has an even number of '1's, making an odd number of '1's in this byte)
+            if (b < 0x80){
+                b = (b << 1) | (Integer.bitCount(b) % 2 == 0 ? 1 : 0);
             }
-        }
 
-        // transform the 8-byte array into 64-bit array, then initialize the field of keyBit
-        this.keyBits = blockByteToBit(keyBytes8, true);
+            this.keyBits = (this.keyBits << 8) | b;
+        }
     }
 
     /**
      * Generate 48-bit K1, K2, ..., K16 from the keyBit using 16 times iterations.
-     * This should be used in the constructor to initialize the field of keySet.
+     * This should be used in the constructor to initialize the field of packedKeySet.
      */
     private void generateKeySet(){
-        // initialize the keySet (48-bit K1, K2, ..., K16)
-        this.keySet = new int[16][48];
+        // initialize the packedKeySet (48-bit K1, K2, ..., K16)
+        this.packedKeySet = new long[Constants.ITERATION_TIMES];
 
-        // separate the 48-bit key into 28-bit C0 and 28-bit D0
-        int[][] cd = permutedChoice1();
-        int[] c = cd[0];
-        int[] d = cd[1];
+        // separate the 56-bit key into 28-bit C0 and 28-bit D0
+        long cd = permutedChoice1();
+        int c = (int) (cd >>> 28);
+        int d = (int) (cd & 0xfffffff);
 
         // perform the 16-time iteration, during the iteration of index i, the K(i+1) would be generated.
         for(int i = 0; i < Constants.ITERATION_TIMES; i++){
 
-            // calculate the next C
-            int[] nextC = leftShift(c, Constants.LEFT_SHIFT_NUMBERS[i]);
-            // calculate the next D
-            int[] nextD = leftShift(d, Constants.LEFT_SHIFT_NUMBERS[i]);
+            // calculate the next C and the next D
+            c = leftShift(c, Constants.LEFT_SHIFT_NUMBERS[i]);
+            d = leftShift(d, Constants.LEFT_SHIFT_NUMBERS[i]);
 
             // perform the permuted choice 2 to generate the 48-bit K for this iteration
-            this.keySet[i] = permutedChoice2(nextC, nextD);
-
-            // update the C and D
-            c = nextC;
-            d = nextD;
-
+            this.packedKeySet[i] = permutedChoice2(c, d);
         }
     }
 
     /**
      * Perform the permuted choice 1 on the complete 64-bit key to generate the 28-bit C0 and 28-bit D0
-     * @return An array contains 2 arrays, which are 28-bit C0 and 28-bit D0 respectively.
+     * @return The 56-bit C0D0 packed in the lower bits of a long.
      */
-    private int[][] permutedChoice1(){
-        // perform the permutation of PC_1 on the keyBits block
-        int[] c0d0 = performPermute(this.keyBits, Constants.PC_1);
-
-        // split the c0d0 into 28-bit c0 and 28-it d0
-        return splitBlock(c0d0, 2);
+    private long permutedChoice1(){
+        return Permutation.PC_1.permute(this.keyBits);
     }
 
     /**
      * Perform the permuted choice 2 on the combination of C and D to generate the 48-bit K
      * @param c The 28-bit C (Left part of the key iteration)
      * @param d The 28-bit D (Right part of the key iteration)
-     * @return The 48-bit K, which should be used in the cipher function F of a specific iteration.
+     * @return The 48-bit K packed in the lower bits of a long, which should be used in the cipher function F of a specific iteration.
      */
-    private int[] permutedChoice2(int[] c, int[] d){
+    private long permutedChoice2(int c, int d){
         // concatenate c and d into cd
-        int[] cd = concatenateBlock(new int[][]{c, d});
+        long cd = ((long) c << 28) | d;
 
         // perform the permutation on cd using PC-2 table
-        return performPermute(cd, Constants.PC_2);
+        return Permutation.PC_2.permute(cd);
     }
 
     /**
-     * Perform the left shift on a 28-bit half key, which should be a specific C or D.
+     * Perform the left shift (rotation) on a 28-bit half key, which should be a specific C or D.
      * @param halfK A specific 28-bit C or 28-bit D
      * @param shiftNum The number of the left shift.
      * @return The next C or the next D.
      */
-    private int[] leftShift(int[] halfK, int shiftNum){
-        // the 28-bit block after leftShifting
-        int[] lShiftResult = new int[28];
-
-        // The shiftNum would be used to separate the key in to original left and right side.
-        // loop through the halfK to generate the left shift result.
-        for (int i = 0; i < halfK.length; i++){
-            // For first several bits, which should be moved to the end
-            if (i < shiftNum){
-                // e.g. if shiftNum = 2, then
-                // halfK: 1, 2, ... -> right part of the result: ..., 1, 2
-                lShiftResult[(lShiftResult.length - shiftNum) + i] = halfK[i];
-            }else{
-                // For the rest of the bits, which should be placed from the beginning of the result array
-                // e.g. if shiftNum = 2, then
-                // halfK: 1, 2, 3, 4, 5 -> right part of the result: 3, 4, 5, 1, 2
-                lShiftResult[i - shiftNum] = halfK[i];
-            }
-        }
-
-        return lShiftResult;
+    private int leftShift(int halfK, int shiftNum){
+        // the first several bits are moved to the end
+        return ((halfK << shiftNum) | (halfK >>> (28 - shiftNum))) & 0xfffffff;
     }
 }
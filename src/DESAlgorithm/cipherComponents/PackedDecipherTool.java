@@ -0,0 +1,61 @@
+package DESAlgorithm.cipherComponents;
+
+/**
+ * A decipher tool working on packed blocks.
+ * The 64-bit block is kept in a long and the L/R halves in ints, so no bit array is created during the decryption.
+ * The result is exactly the same as the one of DecipherTool.
+ */
+public class PackedDecipherTool extends DecipherTool{
+
+    // The packed K1, K2, ..., K16
+    protected final long[] packedKeySet;
+
+    public PackedDecipherTool(Key key){
+        super(key);
+        this.packedKeySet = key.getPackedKeySet();
+    }
+
+    /**
+     * Decipher a 64-bit block of cipher text back to the 64-bit block of plain text
+     * @param blockInByte An 8-byte block of the cipher text
+     * @return An 8-byte block of plain text
+     */
+    @Override
+    public byte[] decipher(byte[] blockInByte){
+        // pack the 8-byte block into a long, decipher it, then change the result back into an 8-byte block
+        return blockLongToByte(decipher(blockByteToLong(blockInByte)));
+    }
+
+    /**
+     * Decipher a range of 8-byte blocks of the cipher text, without creating any array.
+     * @param in The cipher text
+     * @param inOff The index of the first byte of the cipher text
+     * @param len The number of bytes to decipher, which must be divided by 8
+     * @param out The array to write the plain text into (can be the same as the input)
+     * @param outOff The index where the first byte of the plain text goes
+     */
+    @Override
+    public void decipher(byte[] in, int inOff, int len, byte[] out, int outOff){
+        checkBulkLength(len);
+        for (int offset = 0; offset < len; offset += 8){
+            blockLongToByte(decipher(blockByteToLong(in, inOff + offset)), out, outOff + offset);
+        }
+    }
+
+    /**
+     * Decipher a 64-bit block of the cipher text, which is packed into a long
+     * @param block The 64-bit block of the cipher text
+     * @return The 64-bit block of the plain text
+     */
+    protected long decipher(long block){
+        // perform the initial permutation using IP, getting the result "permuted input"
+        long permutedInput = Permutation.IP.permute(block);
+
+        // doing the inverted key dependent computation
+        long preOutput = invertedKeyDependentComputation(permutedInput, this.packedKeySet);
+
+        // perform the final permutation using IP-1, getting the final deciphered result of this block
+        return Permutation.IP_INVERSE.permute(preOutput);
+    }
+
+}
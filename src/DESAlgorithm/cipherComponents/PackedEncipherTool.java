@@ -0,0 +1,61 @@
+package DESAlgorithm.cipherComponents;
+
+/**
+ * An encipher tool working on packed blocks.
+ * The 64-bit block is kept in a long and the L/R halves in ints, so no bit array is created during the encryption.
+ * The result is exactly the same as the one of EncipherTool.
+ */
+public class PackedEncipherTool extends EncipherTool{
+
+    // The packed K1, K2, ..., K16
+    protected final long[] packedKeySet;
+
+    public PackedEncipherTool(Key key){
+        super(key);
+        this.packedKeySet = key.getPackedKeySet();
+    }
+
+    /**
+     * Encipher a 64-bit block of the plain text
+     * @param blockInByte An 8-byte input block
+     * @return An 8-byte block represents the cipher text of the input block
+     */
+    @Override
+    public byte[] encipher(byte[] blockInByte){
+        // pack the 8-byte block into a long, encipher it, then change the result back into an 8-byte block
+        return blockLongToByte(encipher(blockByteToLong(blockInByte)));
+    }
+
+    /**
+     * Encipher a range of 8-byte blocks of the plain text, without creating any array.
+     * @param in The plain text
+     * @param inOff The index of the first byte of the plain text
+     * @param len The number of bytes to encipher, which must be divided by 8
+     * @param out The array to write the cipher text into (can be the same as the input)
+     * @param outOff The index where the first byte of the cipher text goes
+     */
+    @Override
+    public void encipher(byte[] in, int inOff, int len, byte[] out, int outOff){
+        checkBulkLength(len);
+        for (int offset = 0; offset < len; offset += 8){
+            blockLongToByte(encipher(blockByteToLong(in, inOff + offset)), out, outOff + offset);
+        }
+    }
+
+    /**
+     * Encipher a 64-bit block of the plain text, which is packed into a long
+     * @param block The 64-bit input block
+     * @return The 64-bit block of the cipher text
+     */
+    protected long encipher(long block){
+        // perform the initial permutation using IP, getting the result "permuted input"
+        long permutedInput = Permutation.IP.permute(block);
+
+        // use the permuted input as the input of the "complex key-dependent computation", getting the result "preoutput"
+        long preOutput = keyDependentComputation(permutedInput, this.packedKeySet);
+
+        // perform the final permutation using IP-1, getting the final enciphered result of this block
+        return Permutation.IP_INVERSE.permute(preOutput);
+    }
+
+}
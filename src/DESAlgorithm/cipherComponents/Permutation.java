@@ -0,0 +1,52 @@
+package DESAlgorithm.cipherComponents;
+
+/**
+ * A permutation table (e.g. IP, IP-1, PC-1) compiled into byte-indexed lookup masks.
+ * For every byte of the input block, and every value this byte can have, the permuted result of that byte alone is precomputed.
+ * The bits of different input bytes never land on the same output bit, so the permuted block is the OR of one lookup per input byte
+ * (8 lookups for a 64-bit block), instead of one shift and mask for every bit of the table.
+ * The tables used for every block and every key are compiled once, when this class is loaded.
+ */
+public class Permutation extends BitByteOperation {
+
+    /*
+        The compiled tables of the constant repository
+    */
+    public static final Permutation IP = new Permutation(Constants.IP, 64);
+    public static final Permutation IP_INVERSE = new Permutation(Constants.IP_INVERSE, 64);
+    public static final Permutation PC_1 = new Permutation(Constants.PC_1, 64);
+    public static final Permutation PC_2 = new Permutation(Constants.PC_2, 56);
+
+    // masks[n][v] is the permuted block when the n-th lowest byte of the input is v and all the other bits are 0s
+    private final long[][] masks;
+
+    /**
+     * The constructor, which compiles the permutation table
+     * @param permutationFunc A permutation function, which could be IP, IP-1, E, PC-1, PC-2...
+     * @param blockLen The number of bits in the input block, e.g. 64 for IP, 32 for E, 56 for PC-2.
+     */
+    public Permutation(int[] permutationFunc, int blockLen){
+        this.masks = new long[(blockLen + 7) / 8][256];
+        for (int n = 0; n < this.masks.length; n++){
+            for (int v = 0; v < 256; v++){
+                // permute the block having only this byte, using the bit-by-bit version
+                this.masks[n][v] = performPermute((long) v << (8 * n), blockLen, permutationFunc);
+            }
+        }
+    }
+
+    /**
+     * Perform the permutation on a packed block.
+     * The result is the same as performPermute(block, blockLen, permutationFunc).
+     * @param block An input block packed into a long, the first bit of the block is at the position (blockLen - 1).
+     * @return The permuted block, packed in the lower (permutationFunc.length) bits of a long.
+     */
+    public long permute(long block){
+        long permutedBlock = 0;
+        for (int n = 0; n < this.masks.length; n++){
+            permutedBlock |= this.masks[n][(int) (block >>> (8 * n)) & 0xff];
+        }
+        return permutedBlock;
+    }
+
+}
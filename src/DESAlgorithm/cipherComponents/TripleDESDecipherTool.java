@@ -0,0 +1,56 @@
+package DESAlgorithm.cipherComponents;
+
+/**
+ * A decipher tool of Triple DES (EDE): the block is deciphered with K3, enciphered with K2, then deciphered with K1.
+ * The IP-1 at the end of a pass and the IP at the start of the next pass cancel each other,
+ * so the 3 passes are fused into one IP, 48 iterations and one IP-1.
+ * The whole batches of 64 blocks go through the bitsliced core with 3 passes, the rest of the blocks are deciphered one by one.
+ */
+public class TripleDESDecipherTool extends BitslicedDecipherTool{
+
+    // The packed K1, K2, ..., K16 of the 2nd and the 3rd key (the ones of the 1st key are in packedKeySet)
+    private final long[] packedKeySet2;
+    private final long[] packedKeySet3;
+
+    /**
+     * The constructor
+     * @param key The key object, whose key string must be 16 or 24 bytes
+     */
+    public TripleDESDecipherTool(Key key){
+        super(key, createBitslicedDES(key.getTripleDESKeys()));
+        Key[] keys = key.getTripleDESKeys();
+        this.packedKeySet2 = keys[1].getPackedKeySet();
+        this.packedKeySet3 = keys[2].getPackedKeySet();
+    }
+
+    /**
+     * Decipher a 64-bit block of the cipher text, which is packed into a long
+     * @param block The 64-bit block of the cipher text
+     * @return The 64-bit block of the plain text
+     */
+    @Override
+    protected long decipher(long block){
+        // perform the initial permutation using IP only once
+        long permutedInput = Permutation.IP.permute(block);
+
+        // decipher with K3, encipher with K2, decipher with K1, the preoutput of a pass is the input of the next one
+        long preOutput = invertedKeyDependentComputation(permutedInput, this.packedKeySet3);
+        preOutput = keyDependentComputation(preOutput, this.packedKeySet2);
+        preOutput = invertedKeyDependentComputation(preOutput, this.packedKeySet);
+
+        // perform the final permutation using IP-1 only once
+        return Permutation.IP_INVERSE.permute(preOutput);
+    }
+
+    /**
+     * Create the bitsliced core with 3 passes: K3 inverted, K2 in order, K1 inverted
+     * @param keys The 3 keys of Triple DES
+     * @return The bitsliced core
+     */
+    private static BitslicedDES createBitslicedDES(Key[] keys){
+        return BitslicedDES.create(
+                new long[][]{keys[2].getPackedKeySet(), keys[1].getPackedKeySet(), keys[0].getPackedKeySet()},
+                new boolean[]{true, false, true});
+    }
+
+}
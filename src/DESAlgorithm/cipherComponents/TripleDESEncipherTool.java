@@ -0,0 +1,56 @@
+package DESAlgorithm.cipherComponents;
+
+/**
+ * An encipher tool of Triple DES (EDE): the block is enciphered with K1, deciphered with K2, then enciphered with K3.
+ * The IP-1 at the end of a pass and the IP at the start of the next pass cancel each other,
+ * so the 3 passes are fused into one IP, 48 iterations and one IP-1.
+ * The whole batches of 64 blocks go through the bitsliced core with 3 passes, the rest of the blocks are enciphered one by one.
+ */
+public class TripleDESEncipherTool extends BitslicedEncipherTool{
+
+    // The packed K1, K2, ..., K16 of the 2nd and the 3rd key (the ones of the 1st key are in packedKeySet)
+    private final long[] packedKeySet2;
+    private final long[] packedKeySet3;
+
+    /**
+     * The constructor
+     * @param key The key object, whose key string must be 16 or 24 bytes
+     */
+    public TripleDESEncipherTool(Key key){
+        super(key, createBitslicedDES(key.getTripleDESKeys()));
+        Key[] keys = key.getTripleDESKeys();
+        this.packedKeySet2 = keys[1].getPackedKeySet();
+        this.packedKeySet3 = keys[2].getPackedKeySet();
+    }
+
+    /**
+     * Encipher a 64-bit block of the plain text, which is packed into a long
+     * @param block The 64-bit input block
+     * @return The 64-bit block of the cipher text
+     */
+    @Override
+    protected long encipher(long block){
+        // perform the initial permutation using IP only once
+        long permutedInput = Permutation.IP.permute(block);
+
+        // encipher with K1, decipher with K2, encipher with K3, the preoutput of a pass is the input of the next one
+        long preOutput = keyDependentComputation(permutedInput, this.packedKeySet);
+        preOutput = invertedKeyDependentComputation(preOutput, this.packedKeySet2);
+        preOutput = keyDependentComputation(preOutput, this.packedKeySet3);
+
+        // perform the final permutation using IP-1 only once
+        return Permutation.IP_INVERSE.permute(preOutput);
+    }
+
+    /**
+     * Create the bitsliced core with 3 passes: K1 in order, K2 inverted, K3 in order
+     * @param keys The 3 keys of Triple DES
+     * @return The bitsliced core
+     */
+    private static BitslicedDES createBitslicedDES(Key[] keys){
+        return BitslicedDES.create(
+                new long[][]{keys[0].getPackedKeySet(), keys[1].getPackedKeySet(), keys[2].getPackedKeySet()},
+                new boolean[]{false, true, false});
+    }
+
+}
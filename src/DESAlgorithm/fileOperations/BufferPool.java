@@ -0,0 +1,274 @@
+package DESAlgorithm.fileOperations;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of direct (off-heap) byte buffers, which are borrowed for the data of a transfer and given back when it is done,
+ * instead of allocating a new array for every chunk.
+ * The buffers come in a few sizes (SIZE_CLASSES), a borrowed buffer is the smallest one holding the requested capacity.
+ * Direct buffers are also what the channels write from, so a write from one of them is not copied again by the channel.
+ * The pool is used on the receiving side (the download sink, and the chunks waiting for the verifier).
+ * The sending pipeline keeps its own ring of heap chunks, which the cipher engines encipher in place.
+ *
+ * A buffer is borrowed as a PooledBuffer, which must be released once.
+ * If a PooledBuffer is forgotten without being released, the garbage collector tells the pool about it,
+ * then the leak is reported (with the place it was borrowed at, if TRACE_PROPERTY is set to true) and its buffer goes back into the pool.
+ */
+public class BufferPool {
+
+    // The capacities of the buffers
+    public static final int[] SIZE_CLASSES = {4 * 1024, 64 * 1024, 1024 * 1024};
+
+    // How many bytes of free buffers are kept for each size class, the buffers given back beyond it are left to the garbage collector
+    public static final long RETAINED_BYTES_PER_CLASS = 16L * 1024 * 1024;
+
+    // The system property recording where each buffer is borrowed, for the leak reports (it costs a stack trace per borrow)
+    public static final String TRACE_PROPERTY = "bufferPool.trace";
+
+    // The pool shared by all the transfers
+    private static final BufferPool SHARED = new BufferPool(Boolean.getBoolean(TRACE_PROPERTY));
+
+    // The free buffers of each size class
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> freeBuffers;
+    private final AtomicInteger[] freeCounts;
+
+    // The borrowed buffers, which keeps their trackers reachable until they are released
+    private final Set<Borrow> borrows = ConcurrentHashMap.newKeySet();
+
+    // Where the garbage collector puts the trackers of the buffers forgotten without being released
+    private final ReferenceQueue<PooledBuffer> leakedBuffers = new ReferenceQueue<>();
+
+    // Whether the place of each borrow is recorded
+    private final boolean trace;
+
+    // The counters of the pool
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong returned = new AtomicLong();
+    private final AtomicLong leaked = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicInteger highWater = new AtomicInteger();
+
+    /**
+     * The constructor
+     * @param trace Whether the place of each borrow is recorded for the leak reports
+     */
+    public BufferPool(boolean trace){
+        this.trace = trace;
+        this.freeBuffers = new ArrayList<>(SIZE_CLASSES.length);
+        this.freeCounts = new AtomicInteger[SIZE_CLASSES.length];
+        for (int i = 0; i < SIZE_CLASSES.length; i++){
+            this.freeBuffers.add(new ConcurrentLinkedQueue<>());
+            this.freeCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * @return The pool shared by all the transfers
+     */
+    public static BufferPool getShared(){
+        return SHARED;
+    }
+
+    /**
+     * Borrow a buffer.
+     * A capacity larger than the largest size class gets a buffer of its own, which is not kept after it is released.
+     * @param capacity How many bytes the buffer must hold
+     * @return The borrowed buffer, whose position is 0 and whose limit is the capacity asked for
+     */
+    public PooledBuffer borrow(int capacity){
+        collectLeaks();
+
+        int sizeClass = 0;
+        while (sizeClass < SIZE_CLASSES.length && SIZE_CLASSES[sizeClass] < capacity){
+            sizeClass++;
+        }
+
+        // take a free buffer of this size, or allocate a new one
+        ByteBuffer buffer = null;
+        if (sizeClass < SIZE_CLASSES.length){
+            buffer = this.freeBuffers.get(sizeClass).poll();
+            if (buffer != null){
+                this.freeCounts[sizeClass].decrementAndGet();
+            }
+        }
+        if (buffer == null){
+            buffer = ByteBuffer.allocateDirect(sizeClass < SIZE_CLASSES.length ? SIZE_CLASSES[sizeClass] : capacity);
+            this.allocated.incrementAndGet();
+        }
+        buffer.clear().limit(capacity);
+
+        PooledBuffer pooledBuffer = new PooledBuffer(buffer);
+        pooledBuffer.borrow = new Borrow(pooledBuffer, buffer, sizeClass, this.trace ? new Throwable("The buffer was borrowed here") : null);
+        this.borrows.add(pooledBuffer.borrow);
+
+        this.borrowed.incrementAndGet();
+        this.highWater.accumulateAndGet(this.borrows.size(), Math::max);
+        return pooledBuffer;
+    }
+
+    /**
+     * Put a buffer back into the free buffers of its size class, unless there are enough of them.
+     * @param buffer The buffer
+     * @param sizeClass The index of its size class (SIZE_CLASSES.length if it has no class)
+     */
+    private void recycle(ByteBuffer buffer, int sizeClass){
+        if (sizeClass == SIZE_CLASSES.length){
+            return;
+        }
+        if (this.freeCounts[sizeClass].incrementAndGet() <= RETAINED_BYTES_PER_CLASS / SIZE_CLASSES[sizeClass]){
+            this.freeBuffers.get(sizeClass).offer(buffer);
+        }else {
+            this.freeCounts[sizeClass].decrementAndGet();
+        }
+    }
+
+    /**
+     * Report the buffers which have been forgotten without being released, and take their buffers back.
+     */
+    private void collectLeaks(){
+        Reference<? extends PooledBuffer> reference;
+        while ((reference = this.leakedBuffers.poll()) != null){
+            Borrow borrow = (Borrow) reference;
+            if (!this.borrows.remove(borrow)){
+                continue;
+            }
+            this.leaked.incrementAndGet();
+            if (borrow.trace != null){
+                new IllegalStateException("A pooled buffer was never released", borrow.trace).printStackTrace();
+            }else {
+                System.err.println("A pooled buffer was never released (set -D" + TRACE_PROPERTY + "=true to see where it was borrowed)");
+            }
+            recycle(borrow.buffer, borrow.sizeClass);
+        }
+    }
+
+    /* Getters of the counters */
+
+    /**
+     * @return How many buffers have been borrowed
+     */
+    public long getBorrowed() {
+        return borrowed.get();
+    }
+
+    /**
+     * @return How many buffers have been released
+     */
+    public long getReturned() {
+        return returned.get();
+    }
+
+    /**
+     * @return How many buffers have been forgotten without being released
+     */
+    public long getLeaked() {
+        collectLeaks();
+        return leaked.get();
+    }
+
+    /**
+     * @return How many buffers are borrowed now
+     */
+    public int getOutstanding() {
+        return borrows.size();
+    }
+
+    /**
+     * @return The most buffers ever borrowed at the same time
+     */
+    public int getHighWater() {
+        return highWater.get();
+    }
+
+    /**
+     * @return How many direct buffers have been allocated
+     */
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{" +
+                "borrowed=" + getBorrowed() +
+                ", returned=" + getReturned() +
+                ", leaked=" + getLeaked() +
+                ", outstanding=" + getOutstanding() +
+                ", highWater=" + getHighWater() +
+                ", allocated=" + getAllocated() +
+                '}';
+    }
+
+    /**
+     * A borrowed buffer, which must be released once when it is no longer used.
+     */
+    public class PooledBuffer {
+
+        // The buffer
+        private final ByteBuffer buffer;
+
+        // The tracker of this borrow (null once released)
+        private Borrow borrow;
+
+        // the constructor
+        private PooledBuffer(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return The buffer, which must not be used after it is released
+         */
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        /**
+         * Give the buffer back to the pool.
+         */
+        public synchronized void release(){
+            if (this.borrow == null || !borrows.remove(this.borrow)){
+                throw new IllegalStateException("The buffer has already been released");
+            }
+            this.borrow.clear();
+            int sizeClass = this.borrow.sizeClass;
+            this.borrow = null;
+            returned.incrementAndGet();
+            recycle(this.buffer, sizeClass);
+        }
+    }
+
+    /**
+     * The tracker of a borrowed buffer, which the garbage collector puts into the queue of leaks if its PooledBuffer is forgotten.
+     * It holds the buffer itself, so that the buffer can still be taken back then.
+     */
+    private class Borrow extends PhantomReference<PooledBuffer> {
+
+        // The borrowed buffer
+        private final ByteBuffer buffer;
+
+        // The index of its size class
+        private final int sizeClass;
+
+        // Where it was borrowed (null if not recorded)
+        private final Throwable trace;
+
+        // the constructor
+        Borrow(PooledBuffer pooledBuffer, ByteBuffer buffer, int sizeClass, Throwable trace) {
+            super(pooledBuffer, leakedBuffers);
+            this.buffer = buffer;
+            this.sizeClass = sizeClass;
+            this.trace = trace;
+        }
+    }
+
+}
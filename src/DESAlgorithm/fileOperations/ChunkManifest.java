@@ -0,0 +1,210 @@
+package DESAlgorithm.fileOperations;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The list of the chunks of a file, made by the ContentDefinedChunker.
+ * The sender sends it before the file, so that the receiver can tell which chunks it already has,
+ * then only the missing chunks are enciphered and sent.
+ *
+ * The id of each chunk is a keyed hash of its content, so it tells nothing about the content to someone without the secret key.
+ * The ids are also the leaves of the Merkle tree, whose root is checked at the end of the transmission.
+ */
+public class ChunkManifest implements Serializable {
+
+    // The manifest is sent by the default serialization, so its version is fixed for peers built from different sources
+    private static final long serialVersionUID = 1L;
+
+    // The number of bytes of a chunk id
+    public static final int ID_LENGTH = 32;
+
+    // The length of the whole file
+    private final long fileLength;
+
+    // The length of each chunk
+    private final int[] lengths;
+
+    // The ids of all the chunks, one after another (ID_LENGTH bytes each)
+    private final byte[] ids;
+
+    // The position of each chunk in the file (worked out from the lengths, so it is not sent)
+    private transient long[] offsets;
+
+    // the constructor
+    public ChunkManifest(long fileLength, int[] lengths, byte[] ids) {
+        this.fileLength = fileLength;
+        this.lengths = lengths;
+        this.ids = ids;
+    }
+
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    /**
+     * @return How many chunks there are in the file
+     */
+    public int getChunkNumber(){
+        return this.lengths.length;
+    }
+
+    /**
+     * @param i The index of the chunk
+     * @return The length of the chunk
+     */
+    public int getLength(int i){
+        return this.lengths[i];
+    }
+
+    /**
+     * @param i The index of the chunk
+     * @return The position of the chunk in the file
+     */
+    public long getOffset(int i){
+        if (this.offsets == null){
+            long[] offsets = new long[this.lengths.length];
+            long offset = 0;
+            for (int j = 0; j < this.lengths.length; j++){
+                offsets[j] = offset;
+                offset += this.lengths[j];
+            }
+            this.offsets = offsets;
+        }
+        return this.offsets[i];
+    }
+
+    /**
+     * @param i The index of the chunk
+     * @return The id of the chunk
+     */
+    public byte[] getId(int i){
+        return Arrays.copyOfRange(this.ids, i * ID_LENGTH, (i + 1) * ID_LENGTH);
+    }
+
+    /**
+     * @return The ids of all the chunks, one after another (a copy)
+     */
+    public byte[] getIds(){
+        return this.ids.clone();
+    }
+
+    /**
+     * Check whether the lengths of the chunks add up to the length of the file.
+     * @return Whether this manifest is consistent
+     */
+    public boolean isValid(){
+        long sum = 0;
+        for (int len : this.lengths){
+            if (len <= 0){
+                return false;
+            }
+            sum += len;
+        }
+        return sum == this.fileLength && this.ids.length == this.lengths.length * ID_LENGTH;
+    }
+
+    /**
+     * Find the parts of the file to be sent, which are the chunks the receiver does not have.
+     * The neighbouring missing chunks are joined into one range.
+     * @param held Whether the receiver has each chunk
+     * @return The ranges to be sent: the position and the length of each range, one after another
+     */
+    public long[] getMissingRanges(boolean[] held){
+        long[] ranges = new long[2 * this.lengths.length];
+        int rangeNum = 0;
+        for (int i = 0; i < this.lengths.length; i++){
+            if (held[i]){
+                continue;
+            }
+            if (rangeNum > 0 && ranges[2 * rangeNum - 2] + ranges[2 * rangeNum - 1] == getOffset(i)){
+                // the previous chunk is missing as well, so the range is made longer
+                ranges[2 * rangeNum - 1] += this.lengths[i];
+            }else {
+                ranges[2 * rangeNum] = getOffset(i);
+                ranges[2 * rangeNum + 1] = this.lengths[i];
+                rangeNum++;
+            }
+        }
+        return Arrays.copyOf(ranges, 2 * rangeNum);
+    }
+
+    /**
+     * @return The root of the Merkle tree of the chunk ids
+     */
+    public byte[] getMerkleRoot(){
+        return merkleRoot(this.ids);
+    }
+
+    /**
+     * Calculate the root of a Merkle tree: each node is the SHA-256 of its 2 children, and a node without a pair goes up as it is.
+     * (the leaves and the nodes are hashed with different prefixes, so a node can never be taken for a leaf)
+     * @param leaves The leaves, one after another (ID_LENGTH bytes each)
+     * @return The root of the tree
+     */
+    public static byte[] merkleRoot(byte[] leaves){
+        MessageDigest digest = newDigest();
+        int nodeNum = leaves.length / ID_LENGTH;
+        if (nodeNum == 0){
+            return digest.digest();
+        }
+
+        // the lowest level: the hash of each leaf
+        byte[] level = new byte[nodeNum * ID_LENGTH];
+        for (int i = 0; i < nodeNum; i++){
+            digest.update((byte) 0);
+            digest.update(leaves, i * ID_LENGTH, ID_LENGTH);
+            System.arraycopy(digest.digest(), 0, level, i * ID_LENGTH, ID_LENGTH);
+        }
+
+        // hash the pairs level by level, until only the root is left
+        while (nodeNum > 1){
+            int parentNum = (nodeNum + 1) / 2;
+            byte[] parents = new byte[parentNum * ID_LENGTH];
+            for (int i = 0; i < parentNum; i++){
+                if (2 * i + 1 < nodeNum){
+                    digest.update((byte) 1);
+                    digest.update(level, 2 * i * ID_LENGTH, 2 * ID_LENGTH);
+                    System.arraycopy(digest.digest(), 0, parents, i * ID_LENGTH, ID_LENGTH);
+                }else {
+                    System.arraycopy(level, 2 * i * ID_LENGTH, parents, i * ID_LENGTH, ID_LENGTH);
+                }
+            }
+            level = parents;
+            nodeNum = parentNum;
+        }
+        return level;
+    }
+
+    /**
+     * Get a hash of the missing chunks, which names the data actually sent (e.g. for the cipher text cache).
+     * @param held Whether the receiver has each chunk
+     * @return The hash in hex
+     */
+    public String getMissingChunksHash(boolean[] held){
+        MessageDigest digest = newDigest();
+        for (int i = 0; i < this.lengths.length; i++){
+            if (!held[i]){
+                digest.update(this.ids, i * ID_LENGTH, ID_LENGTH);
+            }
+        }
+
+        StringBuilder strBuilder = new StringBuilder();
+        for (byte b : digest.digest()){
+            strBuilder.append(String.format("%02x", b));
+        }
+        return strBuilder.toString();
+    }
+
+    private static MessageDigest newDigest(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
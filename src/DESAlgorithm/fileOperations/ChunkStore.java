@@ -0,0 +1,169 @@
+package DESAlgorithm.fileOperations;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The index of the chunks in the files downloaded before, which is kept on the disk between runs.
+ * Only the place of each chunk is recorded (file, position and length), the chunks stay in the downloaded files.
+ * A downloaded file may have been changed or deleted since, so a chunk is read and hashed again before it is used.
+ */
+public class ChunkStore {
+
+    // The file keeping the index, where a record is added for each chunk of each download
+    private final File indexFile;
+
+    // The index (key: chunk id in hex, value: where the chunk is)
+    private final Map<String, Location> index = new HashMap<>();
+
+    /**
+     * The constructor, which loads the index kept by the earlier runs
+     * @param indexFile The file keeping the index
+     */
+    public ChunkStore(File indexFile){
+        this.indexFile = indexFile;
+
+        if (!indexFile.isFile()){
+            return;
+        }
+        int recordNum = 0;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))){
+            while (true){
+                String id = dis.readUTF();
+                Location location = new Location(new File(dis.readUTF()), dis.readLong(), dis.readInt());
+                // a later record of the same chunk replaces the earlier one
+                this.index.put(id, location);
+                recordNum++;
+            }
+        } catch (EOFException e) {
+            // all the records have been read (a record cut off by a crash is ignored)
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        // rewrite the index if most of its records have been replaced
+        if (recordNum > 2 * this.index.size()){
+            rewriteIndex();
+        }
+    }
+
+    /**
+     * Find the chunks of a file which are in the files downloaded before, and copy them into the download file.
+     * Each chunk is hashed again, those which do not match any more are removed from the index.
+     * @param manifest The chunks of the file to be downloaded
+     * @param chunker The chunker keyed by the secret key of this transmission
+     * @param sink The download file
+     * @return Whether each chunk has been copied (the others must be sent by the sender)
+     */
+    public synchronized boolean[] copyHeldChunks(ChunkManifest manifest, ContentDefinedChunker chunker, PositionalFileSink sink) throws IOException {
+        boolean[] held = new boolean[manifest.getChunkNumber()];
+        byte[] buffer = new byte[ContentDefinedChunker.MAX_CHUNK_SIZE];
+
+        // the downloaded files opened so far
+        Map<File, RandomAccessFile> openedFiles = new HashMap<>();
+        try {
+            for (int i = 0; i < held.length; i++){
+                byte[] id = manifest.getId(i);
+                String idHex = toHex(id);
+                Location location = this.index.get(idHex);
+                if (location == null || location.length != manifest.getLength(i)){
+                    continue;
+                }
+
+                // read the chunk from the file downloaded before
+                try {
+                    RandomAccessFile raf = openedFiles.get(location.file);
+                    if (raf == null){
+                        raf = new RandomAccessFile(location.file, "r");
+                        openedFiles.put(location.file, raf);
+                    }
+                    raf.seek(location.offset);
+                    raf.readFully(buffer, 0, location.length);
+                } catch (IOException e) {
+                    // the file has been deleted or cut
+                    this.index.remove(idHex);
+                    continue;
+                }
+
+                // the file may have been changed since it was downloaded
+                if (!Arrays.equals(chunker.chunkId(buffer, 0, location.length), id)){
+                    this.index.remove(idHex);
+                    continue;
+                }
+
+                sink.write(buffer, 0, location.length, manifest.getOffset(i));
+                held[i] = true;
+            }
+        } finally {
+            for (RandomAccessFile raf : openedFiles.values()){
+                raf.close();
+            }
+        }
+        return held;
+    }
+
+    /**
+     * Record the chunks of a finished download, so that they do not need to be sent again.
+     * @param file The downloaded file
+     * @param manifest The chunks of the file
+     */
+    public synchronized void addFile(File file, ChunkManifest manifest){
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.indexFile, true)))){
+            for (int i = 0; i < manifest.getChunkNumber(); i++){
+                String idHex = toHex(manifest.getId(i));
+                Location location = new Location(file.getAbsoluteFile(), manifest.getOffset(i), manifest.getLength(i));
+                this.index.put(idHex, location);
+                writeRecord(dos, idHex, location);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write the whole index into the index file again, without the replaced records.
+     */
+    private void rewriteIndex(){
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.indexFile)))){
+            for (Map.Entry<String, Location> entry : this.index.entrySet()){
+                writeRecord(dos, entry.getKey(), entry.getValue());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void writeRecord(DataOutputStream dos, String idHex, Location location) throws IOException {
+        dos.writeUTF(idHex);
+        dos.writeUTF(location.file.getPath());
+        dos.writeLong(location.offset);
+        dos.writeInt(location.length);
+    }
+
+    private static String toHex(byte[] bytes){
+        StringBuilder strBuilder = new StringBuilder();
+        for (byte b : bytes){
+            strBuilder.append(String.format("%02x", b));
+        }
+        return strBuilder.toString();
+    }
+
+    /**
+     * Where a chunk is: the downloaded file, the position and the length
+     */
+    private static class Location {
+        private final File file;
+        private final long offset;
+        private final int length;
+
+        // the constructor
+        public Location(File file, long offset, int length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+}
@@ -0,0 +1,215 @@
+package DESAlgorithm.fileOperations;
+
+import javax.crypto.Mac;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Hashes the chunks of a file while their bytes go by, and checks them against the ids in the chunk manifest.
+ * The bytes of the chunks being sent come one after another in the order of the file (as in FileEncipherOperator and FileDecipherOperator),
+ * so each chunk is checked as soon as its last byte is here, and the file never needs to be read again.
+ * The sender uses it to find the Merkle root of the data it actually read, the receiver uses it to find the chunks which came broken.
+ * The bytes are either hashed right away by the thread giving them (update), or collected chunk by chunk,
+ * then each whole chunk is hashed on one of several threads (updateOn). Each chunk has its own slot for its result,
+ * so the chunks can be checked in any order, and the results are read once all the threads are done.
+ */
+public class ChunkVerifier {
+
+    // The chunks of the file
+    private final ChunkManifest manifest;
+
+    // The MAC calculating the chunk ids (for the bytes hashed right away), and the one of each thread hashing whole chunks
+    private final Mac mac;
+    private final ThreadLocal<Mac> threadMacs;
+
+    // The indexes of the chunks going by, in order
+    private final int[] chunkIndexes;
+
+    // The chunk being hashed or collected (index into chunkIndexes), and how many of its bytes have been hashed or collected
+    private int current = 0;
+    private int currentHashed = 0;
+
+    // The bytes of the chunk being collected (null between the chunks)
+    private BufferPool.PooledBuffer collecting;
+
+    // The leaves of the Merkle tree: the ids from the manifest, where each hashed chunk gets the id of its actual bytes
+    private final byte[] leaves;
+
+    // The result slot of each chunk going by: whether it has been checked, and whether it has been found broken
+    private final boolean[] checked;
+    private final boolean[] failed;
+
+    /**
+     * The constructor
+     * @param manifest The chunks of the file
+     * @param chunker The chunker keyed by the secret key of this transmission
+     * @param held Whether each chunk is already there (the others are the ones going by)
+     */
+    public ChunkVerifier(ChunkManifest manifest, ContentDefinedChunker chunker, boolean[] held){
+        this.manifest = manifest;
+        this.mac = chunker.newMac();
+        this.threadMacs = ThreadLocal.withInitial(chunker::newMac);
+        this.leaves = manifest.getIds();
+
+        int[] chunkIndexes = new int[held.length];
+        int chunkNum = 0;
+        for (int i = 0; i < held.length; i++){
+            if (!held[i]){
+                chunkIndexes[chunkNum++] = i;
+            }
+        }
+        this.chunkIndexes = Arrays.copyOf(chunkIndexes, chunkNum);
+        this.checked = new boolean[chunkNum];
+        this.failed = new boolean[chunkNum];
+    }
+
+    /**
+     * Hash the next bytes of the chunks going by.
+     * @param data The array holding the bytes
+     * @param offset The index of the first byte
+     * @param len The number of bytes
+     */
+    public void update(byte[] data, int offset, int len){
+        update(ByteBuffer.wrap(data, offset, len));
+    }
+
+    /**
+     * Hash the next bytes of the chunks going by.
+     * @param data The bytes between the position and the limit of the buffer, all of them are consumed
+     */
+    public void update(ByteBuffer data){
+        int end = data.limit();
+        while (data.hasRemaining() && this.current < this.chunkIndexes.length){
+            int chunkIndex = this.chunkIndexes[this.current];
+
+            // hash as much as the current chunk can take
+            int hashLen = Math.min(data.remaining(), this.manifest.getLength(chunkIndex) - this.currentHashed);
+            data.limit(data.position() + hashLen);
+            this.mac.update(data);
+            data.limit(end);
+            this.currentHashed += hashLen;
+
+            // the chunk is complete, check it against the manifest
+            if (this.currentHashed == this.manifest.getLength(chunkIndex)){
+                check(this.current, this.mac.doFinal());
+
+                this.current++;
+                this.currentHashed = 0;
+            }
+        }
+    }
+
+    /**
+     * Collect the next bytes of the chunks going by, each chunk is hashed on one of the given threads once all its bytes are here.
+     * The bytes are copied into pooled buffers, so the array can be used again right away.
+     * The results can only be read after all the chunks given to the threads have been hashed.
+     * @param data The array holding the bytes
+     * @param offset The index of the first byte
+     * @param len The number of bytes
+     * @param executor The threads hashing the chunks
+     */
+    public void updateOn(byte[] data, int offset, int len, Executor executor){
+        while (len > 0 && this.current < this.chunkIndexes.length){
+            int chunkLen = this.manifest.getLength(this.chunkIndexes[this.current]);
+
+            // collect as much as the current chunk can take
+            if (this.collecting == null){
+                this.collecting = BufferPool.getShared().borrow(chunkLen);
+            }
+            int collectLen = Math.min(len, chunkLen - this.currentHashed);
+            this.collecting.buffer().put(data, offset, collectLen);
+            this.currentHashed += collectLen;
+            offset += collectLen;
+            len -= collectLen;
+
+            // the chunk is complete, hand it to the threads
+            if (this.currentHashed == chunkLen){
+                this.collecting.buffer().flip();
+                executor.execute(new ChunkTask(this.current, this.collecting));
+
+                this.collecting = null;
+                this.current++;
+                this.currentHashed = 0;
+            }
+        }
+    }
+
+    /**
+     * Give the buffers of the chunks which will not be hashed back to the pool (e.g. when the download is given up).
+     * @param tasks The tasks taken back from the threads before they ran
+     */
+    public void release(List<Runnable> tasks){
+        for (Runnable task : tasks){
+            ((ChunkTask) task).chunk.release();
+        }
+        if (this.collecting != null){
+            this.collecting.release();
+            this.collecting = null;
+        }
+    }
+
+    /**
+     * Put the id of the actual bytes of a chunk into its result slot, and check it against the manifest.
+     * @param slot The index of the chunk in chunkIndexes
+     * @param id The id of the actual bytes of the chunk
+     */
+    private void check(int slot, byte[] id){
+        int chunkIndex = this.chunkIndexes[slot];
+        this.failed[slot] = !Arrays.equals(id, this.manifest.getId(chunkIndex));
+        this.checked[slot] = true;
+        System.arraycopy(id, 0, this.leaves, chunkIndex * ChunkManifest.ID_LENGTH, ChunkManifest.ID_LENGTH);
+    }
+
+    /**
+     * @return The indexes of the chunks which were broken, or have not fully come
+     */
+    public int[] getFailedChunks(){
+        int[] failedChunks = new int[this.chunkIndexes.length];
+        int failedNum = 0;
+        for (int i = 0; i < this.chunkIndexes.length; i++){
+            if (this.failed[i] || !this.checked[i]){
+                failedChunks[failedNum++] = this.chunkIndexes[i];
+            }
+        }
+        return Arrays.copyOf(failedChunks, failedNum);
+    }
+
+    /**
+     * @return The root of the Merkle tree of the chunks, using the ids of the bytes which actually went by
+     */
+    public byte[] getMerkleRoot(){
+        return ChunkManifest.merkleRoot(this.leaves);
+    }
+
+    /**
+     * Hashes the collected bytes of a whole chunk on one of the threads, then gives the buffer back to the pool.
+     */
+    private class ChunkTask implements Runnable {
+
+        // The index of the chunk in chunkIndexes
+        private final int slot;
+
+        // The bytes of the chunk
+        private final BufferPool.PooledBuffer chunk;
+
+        // the constructor
+        ChunkTask(int slot, BufferPool.PooledBuffer chunk) {
+            this.slot = slot;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Mac mac = threadMacs.get();
+                mac.update(this.chunk.buffer());
+                check(this.slot, mac.doFinal());
+            } finally {
+                this.chunk.release();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,418 @@
+package DESAlgorithm.fileOperations;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An on-disk cache of the cipher text of the files sent before.
+ * An entry is found by the content of the file, the key, the block cipher and the mode of operation,
+ * so sending the same file with the same key again only reads the cipher text from the disk, instead of enciphering the file again.
+ * The cached cipher text was made with a specific IV, so a transfer using a cached entry must use the IV of the entry.
+ *
+ * Using the IV again is a deliberate trade-off of the cache: a hit sends exactly the same IV and cipher text as the earlier transfer.
+ * The IV only ever goes with the same plain text and key (so a CTR key stream is never used for different data),
+ * but someone seeing both transfers can tell that the same data was sent again with the same key.
+ * A peer which does not want that turns the cache off.
+ *
+ * Each entry is a file in the cache directory, which holds the 8-byte IV followed by the cipher text.
+ * The entries are named by an HMAC keyed by a random secret of the cache (in SECRET_FILE_NAME, readable only by its owner),
+ * so the names cannot be used to guess the keys offline. The directory should be private to the user (e.g. under the home directory),
+ * it is made readable only by its owner.
+ * When the total size goes over the budget, the least recently used entries are deleted.
+ * A hit holds its file open from the lookup, so the file can still be read if another transfer evicts it in the meantime.
+ */
+public class CipherTextCache {
+
+    // The default size budget of the cache (1 GB)
+    public static final long DEFAULT_SIZE_BUDGET = 1L << 30;
+
+    // The file name extensions of the entries and of the entries still being written
+    private static final String ENTRY_EXTENSION = ".cipher";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    // The file holding the secret of the cache, and the length of the secret in bytes
+    public static final String SECRET_FILE_NAME = "cache.secret";
+    private static final int SECRET_LENGTH = 32;
+
+    // The directory holding the entries
+    private final File directory;
+
+    // The maximum total size of the entries in bytes
+    private final long sizeBudget;
+
+    // The secret keying the names of the entries
+    private final SecretKeySpec secret;
+
+    // The entries (key: entry name, value: entry file), the least recently used one comes first
+    private final LinkedHashMap<String, File> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // The total size of the entries in bytes
+    private long totalSize = 0;
+
+    /**
+     * The constructor, the entries left in the directory by an earlier run are used again
+     * @param directory The directory holding the entries, which is created if it does not exist (it is made readable only by its owner)
+     * @param sizeBudget The maximum total size of the entries in bytes
+     * @throws IOException If the directory or the secret cannot be set up
+     */
+    public CipherTextCache(File directory, long sizeBudget) throws IOException {
+        this.directory = directory;
+        this.sizeBudget = sizeBudget;
+        Files.createDirectories(directory.toPath());
+        restrictToOwner(directory.toPath(), true);
+        this.secret = new SecretKeySpec(loadSecret(directory), "HmacSHA256");
+
+        File[] files = directory.listFiles();
+        if (files == null){
+            return;
+        }
+        // the entries are put in the order they were last used (the time they were last modified)
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files){
+            String fileName = file.getName();
+            if (fileName.endsWith(ENTRY_EXTENSION)){
+                this.entries.put(fileName.substring(0, fileName.length() - ENTRY_EXTENSION.length()), file);
+                this.totalSize += file.length();
+            }else if (fileName.endsWith(TEMP_EXTENSION)){
+                // an entry not finished by an earlier run
+                file.delete();
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Look for the cipher text of a file in the cache.
+     * @param plainTextFile The file to be sent
+     * @param keyStr The user input of the key
+     * @param algorithm The block cipher
+     * @param mode The mode of operation
+     * @param newIV The IV to use if the file is not in the cache
+     * @return The entry of the cache, which is a hit if the cipher text is there, otherwise it can be filled while the file is enciphered
+     */
+    public Entry lookup(File plainTextFile, String keyStr, String algorithm, String mode, long newIV) throws IOException {
+        // hash the file outside the lock, since it reads the whole file
+        return lookup(hash(plainTextFile), keyStr, algorithm, mode, newIV);
+    }
+
+    /**
+     * Look for the cipher text of some data in the cache.
+     * @param contentHash The hash of the plain text to be sent
+     * @param keyStr The user input of the key
+     * @param algorithm The block cipher
+     * @param mode The mode of operation
+     * @param newIV The IV to use if the data is not in the cache
+     * @return The entry of the cache, which is a hit if the cipher text is there, otherwise it can be filled while the data is enciphered
+     */
+    public Entry lookup(String contentHash, String keyStr, String algorithm, String mode, long newIV) throws IOException {
+        String name = mac(contentHash + "/" + algorithm + "/" + mode + "/" + keyStr);
+
+        synchronized (this){
+            File file = this.entries.get(name);
+            if (file != null && file.isFile()){
+                // remember the use of this entry for the next run
+                file.setLastModified(System.currentTimeMillis());
+
+                // the file is opened while the cache is locked, so it cannot be evicted before it is opened
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                try {
+                    ByteBuffer ivBuffer = ByteBuffer.allocate(8);
+                    while (ivBuffer.hasRemaining()){
+                        if (channel.read(ivBuffer) == -1){
+                            throw new EOFException("The cached file " + file + " has no IV");
+                        }
+                    }
+                    return new Entry(name, channel, ivBuffer.getLong(0));
+                } catch (IOException e) {
+                    channel.close();
+                    throw e;
+                }
+            }
+        }
+        return new Entry(name, null, newIV);
+    }
+
+    /**
+     * Put a finished entry into the cache, then delete the least recently used entries if the cache is too large.
+     * @param name The name of the entry
+     * @param tempFile The file holding the IV and the cipher text
+     */
+    private synchronized void put(String name, File tempFile) throws IOException {
+        File file = new File(this.directory, name + ENTRY_EXTENSION);
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        File replaced = this.entries.put(name, file);
+        if (replaced != null){
+            this.totalSize -= replaced.length();
+        }
+        this.totalSize += file.length();
+        evict();
+    }
+
+    /**
+     * Delete the least recently used entries until the total size is within the budget.
+     */
+    private synchronized void evict(){
+        Iterator<Map.Entry<String, File>> iterator = this.entries.entrySet().iterator();
+        while (this.totalSize > this.sizeBudget && iterator.hasNext()){
+            File file = iterator.next().getValue();
+            this.totalSize -= file.length();
+            file.delete();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Calculate the SHA-256 of the content of a file.
+     * @param file The file to hash
+     * @return The hash in hex
+     */
+    private static String hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream is = new FileInputStream(file)){
+            byte[] buffer = new byte[64 * 1024];
+            int len;
+            while ((len = is.read(buffer)) != -1){
+                digest.update(buffer, 0, len);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Calculate the HMAC of a string keyed by the secret of the cache, so that the key in it is never written on the disk,
+     * and cannot be guessed from the name of an entry without the secret.
+     * @param str The string to hash
+     * @return The HMAC in hex
+     */
+    private String mac(String str){
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(this.secret);
+            return toHex(mac.doFinal(str.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            // every Java platform has HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Read the secret of the cache, or make a new random one if there is none yet.
+     * A new secret is written into a file of its own first, then moved into its place, so it is never read half written.
+     * @param directory The directory of the cache
+     * @return The secret
+     */
+    private static byte[] loadSecret(File directory) throws IOException {
+        Path secretPath = new File(directory, SECRET_FILE_NAME).toPath();
+        while (true){
+            if (Files.exists(secretPath)){
+                byte[] secret = Files.readAllBytes(secretPath);
+                if (secret.length == SECRET_LENGTH){
+                    restrictToOwner(secretPath, false);
+                    return secret;
+                }
+                // a broken secret, the entries named by it are no longer found, and leave the cache as they get old
+                Files.delete(secretPath);
+            }
+
+            byte[] secret = new byte[SECRET_LENGTH];
+            new SecureRandom().nextBytes(secret);
+            Path newPath = Files.createTempFile(directory.toPath(), "secret", ".new");
+            try {
+                restrictToOwner(newPath, false);
+                Files.write(newPath, secret);
+                Files.move(newPath, secretPath);
+                return secret;
+            } catch (FileAlreadyExistsException e) {
+                // another peer using this cache has made the secret in the meantime, use that one
+            } finally {
+                Files.deleteIfExists(newPath);
+            }
+        }
+    }
+
+    /**
+     * Make a file or a directory readable and writable only by its owner (rw------- or rwx------).
+     * @param path The file or the directory
+     * @param isDirectory Whether it is a directory
+     */
+    private static void restrictToOwner(Path path, boolean isDirectory) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+        if (view != null){
+            view.setPermissions(PosixFilePermissions.fromString(isDirectory ? "rwx------" : "rw-------"));
+            return;
+        }
+
+        // otherwise (e.g. on Windows), take the permissions away from everyone, then give them back to the owner
+        File file = path.toFile();
+        boolean restricted = file.setReadable(false, false) && file.setReadable(true, true)
+                && file.setWritable(false, false) && file.setWritable(true, true);
+        if (isDirectory){
+            restricted &= file.setExecutable(false, false) && file.setExecutable(true, true);
+        }
+        if (!restricted){
+            throw new IOException("Cannot make " + path + " private to its owner");
+        }
+    }
+
+    private static MessageDigest newDigest(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes){
+        StringBuilder strBuilder = new StringBuilder();
+        for (byte b : bytes){
+            strBuilder.append(String.format("%02x", b));
+        }
+        return strBuilder.toString();
+    }
+
+    /**
+     * An entry of the cache for a single transfer.
+     * A hit can be read by getChannel() then let go by close(), a miss can be filled by write(...) while the file is enciphered, then put into the cache by commit().
+     */
+    public class Entry {
+
+        // The name of this entry, the HMAC of the content hash, the block cipher, the mode and the key
+        private final String name;
+
+        // The cached file, open for reading (null for a miss)
+        private final FileChannel channel;
+
+        // The IV the cipher text is made with
+        private final long iv;
+
+        // The file being written for a miss, and the stream writing it
+        private File tempFile;
+        private DataOutputStream dos;
+        private long writtenLength;
+
+        // Whether the cipher text has become too large to be cached
+        private boolean tooLarge = false;
+
+        // the constructor
+        private Entry(String name, FileChannel channel, long iv) {
+            this.name = name;
+            this.channel = channel;
+            this.iv = iv;
+        }
+
+        /**
+         * @return Whether the cipher text is in the cache
+         */
+        public boolean isHit(){
+            return this.channel != null;
+        }
+
+        /**
+         * @return The IV to use for this transfer
+         */
+        public long getIV(){
+            return this.iv;
+        }
+
+        /**
+         * @return The cached file, which holds the 8-byte IV followed by the cipher text
+         */
+        public FileChannel getChannel(){
+            return this.channel;
+        }
+
+        /**
+         * Let the cached file of a hit go, after it has been sent (it can then be deleted by an eviction).
+         */
+        public void close(){
+            if (this.channel == null){
+                return;
+            }
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Write the next part of the cipher text of a miss.
+         * If the cipher text becomes larger than the whole cache, it is not cached.
+         * @param cipherText The array holding the cipher text
+         * @param offset The index of the first byte
+         * @param len The number of bytes
+         */
+        public void write(byte[] cipherText, int offset, int len) throws IOException {
+            if (this.tooLarge){
+                return;
+            }
+            if (this.dos == null){
+                // start the file with the IV
+                this.tempFile = Files.createTempFile(directory.toPath(), this.name, TEMP_EXTENSION).toFile();
+                this.dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.tempFile), 64 * 1024));
+                this.dos.writeLong(this.iv);
+                this.writtenLength = 8;
+            }
+
+            this.writtenLength += len;
+            if (this.writtenLength > sizeBudget){
+                // it would push everything else out of the cache, so it is not cached
+                discard();
+                this.tooLarge = true;
+                return;
+            }
+            this.dos.write(cipherText, offset, len);
+        }
+
+        /**
+         * Put the written cipher text into the cache, after the whole file has been enciphered.
+         */
+        public void commit() throws IOException {
+            if (this.dos == null){
+                return;
+            }
+            this.dos.close();
+            this.dos = null;
+            put(this.name, this.tempFile);
+        }
+
+        /**
+         * Give up the written cipher text (e.g. the transfer has failed).
+         */
+        public void discard(){
+            if (this.dos == null){
+                return;
+            }
+            try {
+                this.dos.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            this.dos = null;
+            this.tempFile.delete();
+        }
+    }
+
+}
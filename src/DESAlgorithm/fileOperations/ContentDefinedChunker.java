@@ -0,0 +1,145 @@
+package DESAlgorithm.fileOperations;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Splits a file into chunks where its content says so, instead of at fixed positions.
+ * A rolling hash (Gear hash) of the last bytes is updated byte by byte, and a chunk ends where some bits of the hash are all 0.
+ * Changing a few bytes of a file only changes the chunks around them, since the ends of the other chunks still come at the same bytes,
+ * so a modified file sent again has mostly the same chunks as before.
+ *
+ * The id of a chunk is an HMAC-SHA256 of its content, keyed by the secret key of the transmission.
+ */
+public class ContentDefinedChunker {
+
+    // The chunk lengths: a chunk never ends before MIN_CHUNK_SIZE bytes, and always ends at MAX_CHUNK_SIZE bytes
+    public static final int MIN_CHUNK_SIZE = 2 * 1024;
+    public static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    // A chunk ends where the top 13 bits of the hash are 0, which makes the chunks about 8 KB long on average
+    // (the top bits are used, since each bit of the Gear hash depends on more of the last bytes than the bits below it)
+    private static final long BOUNDARY_MASK = -1L << (64 - 13);
+
+    // The random value added to the hash for each byte value (always the same, so that both peers find the same chunks)
+    private static final long[] GEAR = new long[256];
+    static {
+        Random random = new Random(0x5eed_c0de_d0d0L);
+        for (int i = 0; i < GEAR.length; i++){
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    // The key of the chunk ids
+    private final SecretKeySpec idKey;
+
+    /**
+     * The constructor
+     * @param keyStr The user input of the secret key, which keys the ids of the chunks
+     */
+    public ContentDefinedChunker(String keyStr){
+        try {
+            // derive a separate key for the ids, so that the DES key itself is not used for anything else
+            byte[] keyBytes = MessageDigest.getInstance("SHA-256").digest(("chunk id:" + keyStr).getBytes(StandardCharsets.UTF_8));
+            this.idKey = new SecretKeySpec(keyBytes, "HmacSHA256");
+        } catch (GeneralSecurityException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Split a file into chunks.
+     * @param file The file to split
+     * @return The manifest of the chunks
+     */
+    public ChunkManifest chunk(File file) throws IOException {
+        Mac mac = newMac();
+
+        // the lengths and the ids of the chunks found so far
+        int[] lengths = new int[16];
+        ByteArrayOutputStream ids = new ByteArrayOutputStream();
+        int chunkNum = 0;
+
+        long fileLength = 0;
+        try (InputStream is = new FileInputStream(file)){
+            byte[] buffer = new byte[1024 * 1024];
+            long hash = 0;
+            int chunkLen = 0;
+
+            int len;
+            while ((len = is.read(buffer)) != -1){
+                fileLength += len;
+                // the start of the part of the buffer which has not been hashed into the current chunk id
+                int start = 0;
+
+                for (int i = 0; i < len; i++){
+                    hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+                    chunkLen++;
+
+                    if ((chunkLen >= MIN_CHUNK_SIZE && (hash & BOUNDARY_MASK) == 0) || chunkLen == MAX_CHUNK_SIZE){
+                        // the chunk ends at this byte
+                        mac.update(buffer, start, i + 1 - start);
+                        ids.write(mac.doFinal());
+                        if (chunkNum == lengths.length){
+                            lengths = Arrays.copyOf(lengths, 2 * chunkNum);
+                        }
+                        lengths[chunkNum++] = chunkLen;
+
+                        start = i + 1;
+                        hash = 0;
+                        chunkLen = 0;
+                    }
+                }
+
+                // the rest of the buffer belongs to the chunk going on in the next buffer
+                mac.update(buffer, start, len - start);
+            }
+
+            // the last chunk ends at the end of the file
+            if (chunkLen > 0){
+                ids.write(mac.doFinal());
+                if (chunkNum == lengths.length){
+                    lengths = Arrays.copyOf(lengths, chunkNum + 1);
+                }
+                lengths[chunkNum++] = chunkLen;
+            }
+        }
+
+        return new ChunkManifest(fileLength, Arrays.copyOf(lengths, chunkNum), ids.toByteArray());
+    }
+
+    /**
+     * Calculate the id of a chunk.
+     * @param data The array holding the chunk
+     * @param offset The index of the first byte
+     * @param len The length of the chunk
+     * @return The id of the chunk
+     */
+    public byte[] chunkId(byte[] data, int offset, int len){
+        Mac mac = newMac();
+        mac.update(data, offset, len);
+        return mac.doFinal();
+    }
+
+    /**
+     * @return A new MAC calculating the chunk ids
+     */
+    Mac newMac(){
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(this.idKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            // every Java platform has HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
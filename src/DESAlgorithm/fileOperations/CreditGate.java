@@ -0,0 +1,62 @@
+package DESAlgorithm.fileOperations;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * The credits the receiver has granted to the sender, one for each data frame it is ready to take.
+ * The sender takes a credit before it sends a frame, and waits when there are none left,
+ * so no more than the granted frames are ever on their way (in the socket buffers, or waiting to be deciphered),
+ * whatever the speed of the receiver.
+ */
+public class CreditGate {
+
+    // How many frames can be sent now
+    private int credits = 0;
+
+    // Whether the transfer has stopped (e.g. the receiver gave up), then no more credits come
+    private boolean closed = false;
+
+    /**
+     * Take a credit for sending a frame, waiting until the receiver grants one.
+     */
+    public synchronized void acquire() throws IOException {
+        while (this.credits == 0 && !this.closed){
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the receiver");
+            }
+        }
+        if (this.closed){
+            throw new IOException("The receiver has stopped the transfer");
+        }
+        this.credits--;
+    }
+
+    /**
+     * Add the credits granted by the receiver.
+     * @param frameNumber How many more frames the receiver is ready to take
+     */
+    public synchronized void grant(int frameNumber){
+        this.credits += frameNumber;
+        notifyAll();
+    }
+
+    /**
+     * @return Whether the transfer has been stopped
+     */
+    public synchronized boolean isClosed(){
+        return this.closed;
+    }
+
+    /**
+     * Stop the transfer, the sender waiting for credits gives up.
+     */
+    public synchronized void close(){
+        this.closed = true;
+        notifyAll();
+    }
+
+}
@@ -3,71 +3,249 @@ package DESAlgorithm.fileOperations;
 import DESAlgorithm.cipherComponents.DecipherTool;
 
 import java.io.*;
-import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * To decrypt and download cipher blocks.
+ * The received blocks are collected into a chunk, which is deciphered at once,
+ * then written at its position of the preallocated download file.
+ * The blocks may only carry some ranges of the file (the chunks which were not found locally), which are filled one after another.
+ * If the sender compresses the data, the deciphered frames are decompressed before they are written.
+ * If a chunk verifier is given, the written data is also hashed chunk by chunk on several other threads, while more blocks are coming,
+ * and the download file is only moved into its place by finish(), after the broken chunks have been sent again.
  */
 public class FileDecipherOperator extends FileOperator {
 
-    // The file for downloading the blocks into
-    private File outputFile;
+    // How many threads hash the written chunks at once
+    public static final int VERIFYING_THREADS = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() / 2, 4));
+
+    // How many whole chunks can wait for the verifying threads, after that the chunks are hashed by the thread writing them
+    private static final int VERIFYING_QUEUE_LENGTH = 64;
+
+    // The preallocated file, where the deciphered chunks are written at their positions
+    private final PositionalFileSink sink;
+
+    // The ranges of the file carried by the blocks: the position and the length of each range, one after another
+    private final long[] ranges;
+
+    // The range being filled, and how many bytes of it have been filled
+    private int rangeIndex = 0;
+    private long rangeFilled = 0;
+
+    // The number of bytes carried by the blocks (without the padding), and how many of them have been written
+    private final long streamLength;
+    private long writtenLength = 0;
+
+    // The verifier checking the chunks of the written data, and the threads hashing the chunks (null if the data is not verified)
+    private final ChunkVerifier chunkVerifier;
+    private final ThreadPoolExecutor verifyingThreads;
+
+    // The decompressor of the frames, and the array for the data of a frame (null if the data is not compressed)
+    private final FrameDecompressor decompressor;
+    private final byte[] frameData;
+
+    // The collected cipher blocks, which have not been deciphered yet (deciphered once the chunk size agreed with the sender is collected)
+    private final byte[] chunk;
+    private int chunkLen = 0;
 
     // the constructor
-    public FileDecipherOperator(DecipherTool decipherTool, File outputFile) {
+    public FileDecipherOperator(DecipherTool decipherTool, File outputFile, long fileLength) throws IOException {
+        this(decipherTool, new PositionalFileSink(outputFile, fileLength), new long[]{0, fileLength}, DEFAULT_CHUNK_SIZE, false, null);
+    }
+
+    /**
+     * The constructor for receiving some ranges of the file, the rest of the file must have been written into the sink
+     * @param decipherTool The tool deciphering the blocks
+     * @param sink The download file
+     * @param ranges The ranges of the file carried by the blocks (position and length of each one, in order)
+     * @param chunkSize How many bytes of cipher blocks are deciphered at once (the same as the one of the sender)
+     * @param compressed Whether the sender compresses the data before enciphering it
+     * @param chunkVerifier The verifier checking the chunks in these ranges (null if the data is not verified)
+     */
+    public FileDecipherOperator(DecipherTool decipherTool, PositionalFileSink sink, long[] ranges, int chunkSize, boolean compressed, ChunkVerifier chunkVerifier) {
         super(decipherTool);
-        this.outputFile = outputFile;
+        this.sink = sink;
+        this.ranges = ranges;
+        this.chunk = new byte[chunkSize];
+        this.chunkVerifier = chunkVerifier;
+        this.verifyingThreads = chunkVerifier != null ? new ThreadPoolExecutor(VERIFYING_THREADS, VERIFYING_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(VERIFYING_QUEUE_LENGTH), new ThreadPoolExecutor.CallerRunsPolicy()) : null;
+        this.decompressor = compressed ? new FrameDecompressor(chunkSize) : null;
+        this.frameData = compressed ? new byte[this.decompressor.getMaxDataLength()] : null;
+
+        long streamLength = 0;
+        for (int i = 1; i < ranges.length; i += 2){
+            streamLength += ranges[i];
+        }
+        this.streamLength = streamLength;
     }
 
     /**
-     * Decipher a data block using DES algorithm, then writing it into the local place.
+     * Collect the cipher blocks of a data frame, each time the chunk is full (or the last block is here),
+     * the whole chunk is deciphered using DES algorithm, then written into the local place.
+     * When the last block has been written, the download file is moved into its place (if the data is not verified),
+     * otherwise the verifying threads are waited for.
+     * @param cipherData The array holding the cipher blocks
+     * @param offset The index of the first byte
+     * @param len The number of bytes, which can be divided by 8
+     * @param isFinal Whether the last block of the transmission is in these blocks
      */
-    public void decipherAndDownloadBlock(byte[] cipherBlock, boolean isFinal, BufferedOutputStream bos) throws IOException {
+    public void decipherAndDownload(byte[] cipherData, int offset, int len, boolean isFinal) throws IOException {
+        while (len > 0) {
+            // collect as many blocks as the chunk can take
+            int collectLen = Math.min(len, this.chunk.length - this.chunkLen);
+            System.arraycopy(cipherData, offset, this.chunk, this.chunkLen, collectLen);
+            this.chunkLen += collectLen;
+            offset += collectLen;
+            len -= collectLen;
 
-        // decipher this block
-        byte[] decipheredBlock = ((DecipherTool) this.cipherTool).decipher(cipherBlock);
+            // decipher a full chunk, unless it holds the last block (whose padding is removed below)
+            if (this.chunkLen == this.chunk.length && (len > 0 || !isFinal)) {
+                decipherAndDownloadChunk(false);
+            }
+        }
 
-        // if this is the last block
         if (isFinal) {
-            // find the index of 0 in this byte array
-            int index0 = indexOf(decipheredBlock, 0);
-            // if the array contains 0
-            if (index0 != -1) {
-                // remove all the 0s at the end of this 8 bytes
-                decipheredBlock = Arrays.copyOfRange(decipheredBlock, 0, indexOf(decipheredBlock, 0));
-            }
+            decipherAndDownloadChunk(true);
         }
+    }
+
+    /**
+     * Decipher the collected chunk and write it into the local place.
+     * @param isFinal Whether the last block is in this chunk
+     */
+    private void decipherAndDownloadChunk(boolean isFinal) throws IOException {
+        // decipher the whole chunk in place
+        ((DecipherTool) this.cipherTool).decipher(this.chunk, 0, this.chunkLen, this.chunk, 0);
+
+        try {
+            int writeLen = this.chunkLen;
+            // if this is the last block, the padding is removed (its length is in the last byte, so nothing is scanned)
+            if (isFinal) {
+                writeLen = removePadding(this.chunk, this.chunkLen);
+            }
 
-        // write in the file
-        bos.write(decipheredBlock);
-        bos.flush();
+            // write in the file at the positions of this chunk
+            if (this.decompressor == null) {
+                writeIntoRanges(this.chunk, writeLen);
+            } else {
+                decompressIntoRanges(this.chunk, writeLen);
+            }
+            this.chunkLen = 0;
 
-        // if the last block, we close the stream
-        if(isFinal){
-            bos.close();
+            // the data must end here
+            if (isFinal && (this.writtenLength != this.streamLength || (this.decompressor != null && this.decompressor.hasPartialFrame()))) {
+                throw new IOException("The data ends at " + this.writtenLength + " bytes, but " + this.streamLength + " bytes were expected");
+            }
+        } catch (IOException e) {
+            // the download file is wrong, so it is not kept
+            abort();
+            throw e;
         }
 
+        // if the last block, the download file is moved into its place
+        if (isFinal) {
+            if (this.decompressor != null) {
+                this.decompressor.end();
+            }
+            if (this.chunkVerifier == null) {
+                this.sink.finish();
+            } else {
+                waitForVerifier();
+            }
+        }
     }
 
     /**
-     * Find the index of a specific number in an int array.
-     * If the array contains this number multiple times, the index of the first one would be returned
-     * @param array The array to go through
-     * @param num The number we will find in this array
-     * @return The index of the first time this number appearing
+     * @return The indexes of the chunks which came broken (only after the last block, when the data is verified)
      */
-    private int indexOf(byte[] array, int num){
-        for (int i = 0; i < array.length; i++){
-            // check if this byte is 0
-            String s = Integer.toBinaryString(array[i]);
-            if (s.equals(String.valueOf(num))){
-                return i;
+    public int[] getFailedChunks(){
+        return this.chunkVerifier.getFailedChunks();
+    }
+
+    /**
+     * Move the verified download file into its place.
+     */
+    public void finish() throws IOException {
+        this.sink.finish();
+    }
+
+    /**
+     * Wait until the verifying threads have hashed all the written chunks.
+     */
+    private void waitForVerifier() throws IOException {
+        this.verifyingThreads.shutdown();
+        try {
+            this.verifyingThreads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while verifying the chunks");
+        }
+    }
+
+    /**
+     * Write the deciphered data into the ranges, going on from where the last chunk stopped.
+     * @param data The deciphered data
+     * @param len The number of bytes to write
+     */
+    private void writeIntoRanges(byte[] data, int len) throws IOException {
+        // hash the chunks of the data on the verifying threads (the verifier copies them, since the array is used again for the next blocks)
+        if (this.chunkVerifier != null && len > 0) {
+            this.chunkVerifier.updateOn(data, 0, len, this.verifyingThreads);
+        }
+
+        int offset = 0;
+        while (offset < len) {
+            if (this.rangeIndex >= this.ranges.length) {
+                throw new IOException("More data has been received than the " + this.streamLength + " bytes expected");
+            }
+
+            // write as much as the current range can take
+            long rangeLen = this.ranges[this.rangeIndex + 1];
+            int writeLen = (int) Math.min(len - offset, rangeLen - this.rangeFilled);
+            this.sink.write(data, offset, writeLen, this.ranges[this.rangeIndex] + this.rangeFilled);
+            offset += writeLen;
+            this.rangeFilled += writeLen;
+            this.writtenLength += writeLen;
+
+            // go on to the next range
+            if (this.rangeFilled == rangeLen) {
+                this.rangeIndex += 2;
+                this.rangeFilled = 0;
             }
         }
+    }
 
-        // -1 means this array does not contain this number
-        return -1;
+    /**
+     * Decompress the frames in the deciphered data, then write their data into the ranges.
+     * A frame may go on into the next chunk, its first part is kept by the decompressor.
+     * @param data The deciphered data
+     * @param len The number of bytes of frames
+     */
+    private void decompressIntoRanges(byte[] data, int len) throws IOException {
+        int offset = 0;
+        while (offset < len) {
+            offset += this.decompressor.collect(data, offset, len - offset);
+            if (this.decompressor.isFrameComplete()) {
+                writeIntoRanges(this.frameData, this.decompressor.decompress(this.frameData));
+            }
+        }
     }
 
+    /**
+     * Give up the download (e.g. the sender is gone), the partly written file is deleted.
+     */
+    public void abort(){
+        this.sink.abort();
+        if (this.verifyingThreads != null) {
+            // the chunks waiting for the verifying threads are not hashed, their buffers go back to the pool
+            this.chunkVerifier.release(this.verifyingThreads.shutdownNow());
+        }
+        if (this.decompressor != null) {
+            this.decompressor.end();
+        }
+    }
 
-}
\ No newline at end of file
+}
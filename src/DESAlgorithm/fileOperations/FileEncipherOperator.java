@@ -1,80 +1,611 @@
 package DESAlgorithm.fileOperations;
 
 import DESAlgorithm.cipherComponents.EncipherTool;
-import P2PFileTransfer.Packet.Message;
+import P2PFileTransfer.Packet.DataFrame;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
- * To encrypt and transfer a file block by block.
- * The file comes from local place, flushed to the socket stream.
+ * To encrypt and transfer a file, the cipher text is sent as data frames of many blocks each.
+ * The file comes from local place (read through memory mapping), flushed to the socket stream.
+ *
+ * The work is done by a pipeline of 3 stages running at the same time:
+ * the reading stage cuts the mapped file into chunks, the cipher workers encipher the chunks straight out of the mapped file into their arrays,
+ * and the sending stage (the thread calling encipherAndSendBlocks) sends each of them to the receiver as one data frame.
+ * A fixed number of chunks are allocated, and they go round the stages through bounded queues,
+ * so when the receiver is slow, the reading stage waits for a free chunk instead of reading more of the file.
+ * The chunks are enciphered by several workers at once when the tool can start at any block (ECB, CTR, see EncipherTool.startingAt),
+ * then put back in order by the sending stage; a chain of CBC is enciphered by a single worker.
+ *
+ * Only some ranges of the file may be sent (the chunks the receiver does not have), they are sent as one stream of cipher blocks.
+ * The reading stage also hashes the chunks of the file it reads, for the Merkle root checked by the receiver,
+ * and the data may be compressed into frames by the reading stage before it is enciphered.
+ * If an entry of the cipher text cache is given, a hit is sent straight from the cached cipher text without enciphering,
+ * (without copying it into the heap, if the socket channel under the output stream is set), and a miss is written into the cache while it is sent.
+ * If a credit gate is set, each frame waits for a credit from the receiver before it is sent.
  */
 public class FileEncipherOperator extends FileOperator{
 
+    // How many bytes of the file are mapped into memory at once, larger files are mapped window by window
+    public static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    // How many chunks go round the pipeline
+    public static final int RING_SLOTS = 8;
+
+    // How many cipher workers encipher the chunks at once by default (one for each core, no more than the chunks)
+    public static final int CIPHER_WORKERS = Math.min(Runtime.getRuntime().availableProcessors(), RING_SLOTS);
+
+    // The chunk marking the end of the file (or a failed stage), which is passed along the stages after the last chunk
+    private static final Chunk END = new Chunk(0);
+
     // The output stream to the receiver
     private ObjectOutputStream oos;
 
     // The uploaded file for encryption and transmission
     private File plainTextFile;
 
+    // The ranges of the file to be sent: the position and the length of each range, one after another
+    private long[] ranges;
+
+    // How many bytes are read, enciphered and sent in a data frame at once (agreed with the receiver)
+    private int chunkSize;
+
+    // Whether the data is compressed before it is enciphered
+    private boolean compressed;
+
+    // The verifier hashing the chunks of the file as they are read (null if they are not hashed)
+    private ChunkVerifier chunkVerifier;
+
+    // The entry of the cipher text cache for this file (null if the cache is not used)
+    private CipherTextCache.Entry cacheEntry;
+
+    // The credits granted by the receiver (null if the frames are sent without waiting for credits)
+    private CreditGate creditGate;
+
+    // The channel of the socket under the output stream, for sending the cached cipher text without copying it (null if not known)
+    private SocketChannel socketChannel;
+
+    // How many cipher workers encipher the chunks at once (only one for the tools which cannot start at any block)
+    private int cipherWorkers = CIPHER_WORKERS;
+
+    // The exception stopping the reading stage or a cipher worker, which is reported by the sending stage
+    private volatile Exception stageException;
+
     // The constructor
     public FileEncipherOperator(File plainTextFile, EncipherTool encipherTool, ObjectOutputStream oos) {
+        this(plainTextFile, new long[]{0, plainTextFile.length()}, encipherTool, oos, null, DEFAULT_CHUNK_SIZE, false, null);
+    }
+
+    /**
+     * The constructor for sending some ranges of the file, using the cipher text cache
+     * @param plainTextFile The file to be sent
+     * @param ranges The ranges of the file to be sent (position and length of each one, in order)
+     * @param encipherTool The tool enciphering the file, which must use the IV of the cache entry
+     * @param oos The output stream to the receiver
+     * @param cacheEntry The entry of the cache for these ranges of the file (null if the cache is not used)
+     * @param chunkSize How many bytes are enciphered and sent at once (agreed with the receiver, see agreeChunkSize)
+     * @param compressed Whether the data is compressed before it is enciphered (the receiver must have agreed on it)
+     * @param chunkVerifier The verifier hashing the chunks in these ranges as they are read (null if they are not hashed)
+     */
+    public FileEncipherOperator(File plainTextFile, long[] ranges, EncipherTool encipherTool, ObjectOutputStream oos, CipherTextCache.Entry cacheEntry, int chunkSize, boolean compressed, ChunkVerifier chunkVerifier) {
         super(encipherTool);
         this.oos = oos;
         this.plainTextFile = plainTextFile;
+        this.ranges = ranges;
+        this.cacheEntry = cacheEntry;
+        this.chunkSize = chunkSize;
+        this.compressed = compressed;
+        this.chunkVerifier = chunkVerifier;
+    }
+
+    /**
+     * Let each frame wait for a credit from the receiver before it is sent.
+     * @param creditGate The credits granted by the receiver
+     */
+    public void setCreditGate(CreditGate creditGate) {
+        this.creditGate = creditGate;
+    }
+
+    /**
+     * Send the cached cipher text straight from the file into the socket.
+     * @param socketChannel The channel of the socket under the output stream to the receiver (in blocking mode)
+     */
+    public void setSocketChannel(SocketChannel socketChannel) {
+        this.socketChannel = socketChannel;
+    }
+
+    /**
+     * Set how many cipher workers encipher the chunks at once.
+     * @param cipherWorkers The number of workers (from 1 to RING_SLOTS), which is 1 anyway if the tool cannot start at any block
+     */
+    public void setCipherWorkers(int cipherWorkers) {
+        this.cipherWorkers = Math.max(1, Math.min(cipherWorkers, RING_SLOTS));
     }
 
     /**
      * Encipher the file using DES algorithm, a cipher text file would then be generated.
-     * After each block being encrypted, it would be sent to the receiver.
+     * The reading stage and the cipher workers are started in their own threads,
+     * then each encrypted block would be sent to the receiver by this thread.
+     * If the file cannot be read, enciphered or sent, the exception is thrown once the other stages are stopped,
+     * then the frames have stopped before the last one, and the receiver should be told that the transfer has failed.
      */
-    public void encipherAndSendBlocks(){
-        // How many 8-byte blocks are there in this file. (the file length can be surely divided by 8)
-        long blockNumber = this.plainTextFile.length() / 8 + (this.plainTextFile.length() % 8 != 0 ? 1 : 0);
-
-        // start a stream for reading in the plain text file
-        try (
-                BufferedInputStream bis = new BufferedInputStream(new FileInputStream(this.plainTextFile))
-        ){
-            // set the buffer size as 8 bytes (a 64-bit block)
-            byte[] block = new byte[8];
-
-            // how many blocks has been read
-            long blockNumSoFar = 0;
-
-            // read in the file as blocks
-            while((bis.read(block)) != -1){
-                // update block number
-                blockNumSoFar++;
-
-                // encipher this block
-                byte[] cipherBlock = ((EncipherTool) this.cipherTool).encipher(block);
-
-                // pack the cipher block into the message
-                Message msg;
-                // determine whether this is the last block
-                if (blockNumSoFar == blockNumber){
-                    // the last block
-                    // encapsulate the cipher block into a message
-                    msg = new Message(Message.ENCRYPTED_DATA_BLOCK_FINAL, cipherBlock);
-
-                }else{
-                    // not the last block
-                    // encapsulate the cipher block into a message
-                    msg = new Message(Message.ENCRYPTED_DATA_BLOCK, cipherBlock);
+    public void encipherAndSendBlocks() throws IOException {
+        // the file has been enciphered before, send the cached cipher text
+        if (this.cacheEntry != null && this.cacheEntry.isHit()){
+            try {
+                if (this.socketChannel != null){
+                    transferCachedBlocks();
+                }else {
+                    sendCachedBlocks();
+                }
+            } finally {
+                this.cacheEntry.close();
+            }
+            return;
+        }
+
+        long fileLength = this.plainTextFile.length();
+
+        // the queues between the stages, each one has a place for every chunk and the END (of each worker)
+        BlockingQueue<Chunk> freeChunks = new ArrayBlockingQueue<>(RING_SLOTS + 1);
+        BlockingQueue<Chunk> readChunks = new ArrayBlockingQueue<>(RING_SLOTS + 1);
+        BlockingQueue<Chunk> cipherChunks = new ArrayBlockingQueue<>(RING_SLOTS + RING_SLOTS);
+        for (int i = 0; i < RING_SLOTS; i++){
+            freeChunks.add(new Chunk(this.chunkSize));
+        }
+
+        // a chain of CBC can only be enciphered by one worker, in the order of the chunks
+        EncipherTool encipherTool = (EncipherTool) cipherTool;
+        int workerNum = encipherTool.startingAt(0) != null ? this.cipherWorkers : 1;
 
+        // start the reading stage and the cipher workers
+        Thread readingThread = new Thread(new ReadingStage(fileLength, freeChunks, readChunks));
+        Thread[] workerThreads = new Thread[workerNum];
+        for (int i = 0; i < workerNum; i++){
+            workerThreads[i] = new Thread(new CipherWorker(encipherTool, workerNum > 1, readChunks, cipherChunks));
+        }
+        readingThread.start();
+        for (Thread workerThread : workerThreads){
+            workerThread.start();
+        }
+
+        try {
+            // the chunks enciphered out of order wait here for the ones before them (there are no more than RING_SLOTS chunks,
+            // and they are all within RING_SLOTS of the next one to be sent, so each one has its own place)
+            Chunk[] waitingChunks = new Chunk[RING_SLOTS];
+            long nextSequence = 0;
+            boolean lastSent = false;
+            int endedWorkers = 0;
+
+            // send the enciphered chunks in order, until the last one is sent, or every worker has ended (when a stage fails)
+            while (!lastSent && endedWorkers < workerNum){
+                Chunk chunk = cipherChunks.take();
+                if (chunk == END){
+                    endedWorkers++;
+                    if (this.stageException != null){
+                        // the chunk of the failed stage will never come
+                        break;
+                    }
+                    continue;
+                }
+                waitingChunks[(int) (chunk.sequence % RING_SLOTS)] = chunk;
+
+                // send the chunks which are next in order
+                while (!lastSent && (chunk = waitingChunks[(int) (nextSequence % RING_SLOTS)]) != null){
+                    waitingChunks[(int) (nextSequence % RING_SLOTS)] = null;
+                    nextSequence++;
+
+                    sendCipherFrame(chunk.data, chunk.len, chunk.last);
+                    // keep the cipher text for sending this file again
+                    writeIntoCache(chunk);
+                    lastSent = chunk.last;
+                    // give the chunk back to the reading stage
+                    freeChunks.put(chunk);
+                }
+            }
+
+            // the END also comes when the reading stage or a cipher worker fails
+            if (this.stageException instanceof IOException){
+                throw (IOException) this.stageException;
+            }else if (this.stageException != null){
+                throw new IOException("The file cannot be enciphered", this.stageException);
+            }else if (!lastSent){
+                throw new IOException("The cipher workers have ended before the last chunk");
+            }
+
+            if (this.cacheEntry != null){
+                // the whole cipher text has been written, so it goes into the cache
+                // (failing to cache it does not fail the transfer, which is done)
+                try {
+                    this.cacheEntry.commit();
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
+                this.cacheEntry = null;
+            }
 
-                // write the block into the cipher text file
-                this.oos.writeObject(msg);
-                this.oos.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sending the file");
+        } finally {
+            // stop the other stages if the sending stage stops early
+            readingThread.interrupt();
+            for (Thread workerThread : workerThreads){
+                workerThread.interrupt();
+            }
 
-                // refresh the buffer block (if the total bytes cannot be divided by 8, the last block would be filled with 0s at the end)
-                block = new byte[8];
+            // the cipher text of a failed transfer is not cached
+            if (this.cacheEntry != null){
+                this.cacheEntry.discard();
             }
+        }
+    }
 
+    /**
+     * Write a cipher chunk into the cache entry.
+     * Failing to write into the cache does not stop the transfer, the file is just not cached.
+     * @param chunk The enciphered chunk
+     */
+    private void writeIntoCache(Chunk chunk){
+        if (this.cacheEntry == null){
+            return;
+        }
+        try {
+            this.cacheEntry.write(chunk.data, 0, chunk.len);
         } catch (IOException e) {
             e.printStackTrace();
+            this.cacheEntry.discard();
+            this.cacheEntry = null;
+        }
+    }
+
+    /**
+     * Send the cipher text of a cache hit, which is read from the cached file chunk by chunk.
+     * The cached file starts with the 8-byte IV, then the cipher text with its padding.
+     */
+    private void sendCachedBlocks() throws IOException {
+        FileChannel cachedChannel = this.cacheEntry.getChannel();
+        long cipherLength = cachedChannel.size() - 8;
+        // How many 8-byte blocks are there in the cipher text
+        long blockNumber = cipherLength / 8;
+
+        byte[] cipherChunk = new byte[this.chunkSize];
+        // how many blocks has been sent
+        long blockNumSoFar = 0;
+        while (blockNumSoFar < blockNumber){
+            int len = (int) Math.min(this.chunkSize, (blockNumber - blockNumSoFar) * 8);
+
+            // read the chunk after the IV and the blocks sent so far
+            ByteBuffer chunkBuffer = ByteBuffer.wrap(cipherChunk, 0, len);
+            while (chunkBuffer.hasRemaining()){
+                if (cachedChannel.read(chunkBuffer, 8 + blockNumSoFar * 8 + chunkBuffer.position()) == -1){
+                    throw new EOFException("The cached cipher text has been cut");
+                }
+            }
+
+            blockNumSoFar += len / 8;
+            sendCipherFrame(cipherChunk, len, blockNumSoFar == blockNumber);
+        }
+    }
+
+    /**
+     * Send the cipher text of a cache hit with the file channel transferring it into the socket channel,
+     * so the bytes go from the cached file to the socket without coming into the heap (sendfile on Linux).
+     * Each chunk is sent as a raw frame (see DataFrame): its header goes through the object stream, which is flushed,
+     * then its data goes into the socket channel outside the object stream.
+     */
+    private void transferCachedBlocks() throws IOException {
+        FileChannel cachedChannel = this.cacheEntry.getChannel();
+
+        // the cached file starts with the 8-byte IV, then the cipher text with its padding
+        long cipherLength = cachedChannel.size() - 8;
+
+        // how many bytes of cipher text have been sent
+        long sentLength = 0;
+        while (sentLength < cipherLength){
+            int len = (int) Math.min(this.chunkSize, cipherLength - sentLength);
+            boolean isFinal = sentLength + len == cipherLength;
+            if (this.creditGate != null){
+                this.creditGate.acquire();
+            }
+
+            // the header of the raw frame ends the block data record, and everything written through the object stream
+            // (e.g. the IV message, and this header) is in the socket before the cipher text of this frame
+            DataFrame.writeHeader(this.oos, isFinal ? DataFrame.RAW_ENCRYPTED_DATA_FINAL : DataFrame.RAW_ENCRYPTED_DATA, len);
+            this.oos.flush();
+
+            // the cipher text of this frame
+            long position = 8 + sentLength;
+            long end = position + len;
+            while (position < end){
+                long transferred = cachedChannel.transferTo(position, end - position, this.socketChannel);
+                if (transferred == 0 && position >= cachedChannel.size()){
+                    throw new EOFException("The cached cipher text has been cut");
+                }
+                position += transferred;
+            }
+            sentLength += len;
+        }
+    }
+
+    /**
+     * Send the cipher text of a chunk as one data frame.
+     * @param cipherChunk The cipher text of this chunk
+     * @param len The number of bytes in this chunk, which can be divided by 8
+     * @param isFinal Whether the last block is in this chunk
+     */
+    private void sendCipherFrame(byte[] cipherChunk, int len, boolean isFinal) throws IOException {
+        if (this.creditGate != null){
+            this.creditGate.acquire();
+        }
+        DataFrame.write(this.oos, isFinal ? DataFrame.ENCRYPTED_DATA_FINAL : DataFrame.ENCRYPTED_DATA, cipherChunk, 0, len);
+        this.oos.flush();
+    }
+
+    /**
+     * A chunk of the file going round the pipeline, first holding the plain text (or where it is in the mapped file), then the cipher text
+     */
+    private static class Chunk {
+        // The bytes of this chunk (with room for the padding after a whole chunk of compressed frame)
+        private final byte[] data;
+        // The number of bytes used, which can be divided by 8
+        private int len;
+        // Whether this is the last chunk, which holds the padding
+        private boolean last;
+
+        // The place of this chunk in the order of sending
+        private long sequence;
+        // The index of the first block of this chunk in the whole cipher text
+        private long blockIndex;
+        // The parts of the mapped file making the beginning of the plain text, one after another
+        // (empty if the plain text is already in the array, e.g. a compressed frame), the bytes after them are already in the array
+        private final List<ByteBuffer> slices = new ArrayList<>();
+
+        // the constructor
+        Chunk(int chunkSize) {
+            this.data = new byte[chunkSize + 8];
+        }
+    }
+
+    /**
+     * The reading stage: maps the file window by window, and cuts the ranges to be sent into free chunks one after another.
+     * A single mapping cannot be larger than 2 GB, so the file is mapped as rolling windows.
+     * A chunk only holds the slices of the mapped windows, which are enciphered straight into its array by a cipher worker.
+     * If the data is compressed, the slices are copied into the chunk, then turned into a frame before it is passed on.
+     */
+    private class ReadingStage implements Runnable {
+
+        private final long fileLength;
+        private final BlockingQueue<Chunk> freeChunks;
+        private final BlockingQueue<Chunk> readChunks;
+
+        // The compressor of the chunks (null if the data is not compressed)
+        private final FrameCompressor compressor;
+
+        // The place of the next chunk in the order of sending, and the index of its first block
+        private long nextSequence = 0;
+        private long nextBlockIndex = 0;
+
+        // the constructor
+        public ReadingStage(long fileLength, BlockingQueue<Chunk> freeChunks, BlockingQueue<Chunk> readChunks) {
+            this.fileLength = fileLength;
+            this.freeChunks = freeChunks;
+            this.readChunks = readChunks;
+            this.compressor = compressed ? new FrameCompressor(chunkSize) : null;
+        }
+
+        /**
+         * Take a free chunk, waiting until one is given back by the sending stage
+         * @return The empty chunk
+         */
+        private Chunk takeFreeChunk() throws InterruptedException {
+            Chunk chunk = this.freeChunks.take();
+            chunk.len = 0;
+            chunk.last = false;
+            chunk.slices.clear();
+            return chunk;
+        }
+
+        /**
+         * Pass a filled chunk on to the cipher workers, as a compressed frame if the data is compressed
+         * (a last chunk of its own only holds the padding, which is not a frame)
+         * @param chunk The chunk holding the data
+         */
+        private void passOn(Chunk chunk) throws InterruptedException {
+            if (this.compressor != null && chunk.len > 0){
+                chunk.len = this.compressor.compress(chunk.data, chunk.len);
+            }
+            if (chunk.last){
+                chunk.len = addPadding(chunk.data, chunk.len);
+            }
+            chunk.sequence = this.nextSequence++;
+            chunk.blockIndex = this.nextBlockIndex;
+            this.nextBlockIndex += chunk.len / 8;
+            this.readChunks.put(chunk);
+        }
+
+        @Override
+        public void run() {
+            // open a channel for mapping the plain text file
+            try (
+                    FileChannel channel = FileChannel.open(plainTextFile.toPath(), StandardOpenOption.READ)
+            ){
+                // the mapped window and its position in the file
+                MappedByteBuffer window = null;
+                long windowStart = 0;
+
+                // the chunk being filled, and how much data goes into a chunk (a compressed frame needs room for its header)
+                Chunk chunk = null;
+                int chunkDataLen = this.compressor == null ? chunkSize : this.compressor.getMaxDataLength();
+
+                for (int r = 0; r < ranges.length; r += 2){
+                    long position = ranges[r];
+                    long end = position + ranges[r + 1];
+
+                    while (position < end){
+                        // map the next window when the range goes out of the current one (the ranges are in order, so the windows only go forward)
+                        if (window == null || position >= windowStart + window.capacity()){
+                            windowStart = position;
+                            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_SIZE, this.fileLength - windowStart));
+                        }
+
+                        if (chunk == null){
+                            chunk = takeFreeChunk();
+                        }
+
+                        // take as much as the range, the window and the chunk all allow
+                        int len = (int) Math.min(Math.min(end - position, windowStart + window.capacity() - position), chunkDataLen - chunk.len);
+                        ByteBuffer slice = window.slice((int) (position - windowStart), len);
+                        // hash the plain text before it is compressed
+                        if (chunkVerifier != null){
+                            chunkVerifier.update(slice.duplicate());
+                        }
+                        if (this.compressor != null){
+                            // the frame is made in the array of the chunk
+                            slice.get(chunk.data, chunk.len, len);
+                        }else {
+                            chunk.slices.add(slice);
+                        }
+                        chunk.len += len;
+                        position += len;
+
+                        if (chunk.len == chunkDataLen){
+                            passOn(chunk);
+                            chunk = null;
+                        }
+                    }
+                }
+
+                // at the end, the padding is added into the chunk being filled (which always has room for it),
+                // or into a chunk of its own if the last chunk was full (or nothing is sent)
+                if (chunk == null){
+                    chunk = takeFreeChunk();
+                }
+                chunk.last = true;
+                passOn(chunk);
+
+            } catch (IOException e) {
+                stageException = e;
+            } catch (InterruptedException e) {
+                // the sending stage has stopped
+                return;
+            } finally {
+                if (this.compressor != null){
+                    this.compressor.end();
+                }
+            }
+
+            // tell the cipher workers that there are no more chunks
+            this.readChunks.add(END);
+        }
+    }
+
+    /**
+     * A cipher worker: enciphers the chunks into their arrays, straight out of the mapped slices.
+     * When there are several workers, each chunk is enciphered by a tool starting at its first block, so the chunks can be done in any order.
+     * (The CTR tools encipher a chunk on several threads of the common ForkJoinPool by themselves)
+     */
+    private class CipherWorker implements Runnable {
+
+        private final EncipherTool encipherTool;
+        private final boolean startAtChunks;
+        private final BlockingQueue<Chunk> readChunks;
+        private final BlockingQueue<Chunk> cipherChunks;
+
+        /**
+         * The constructor
+         * @param encipherTool The tool of the transfer
+         * @param startAtChunks Whether each chunk is enciphered by a tool starting at its first block (otherwise by the tool itself, in order)
+         * @param readChunks The chunks from the reading stage
+         * @param cipherChunks The chunks for the sending stage
+         */
+        public CipherWorker(EncipherTool encipherTool, boolean startAtChunks, BlockingQueue<Chunk> readChunks, BlockingQueue<Chunk> cipherChunks) {
+            this.encipherTool = encipherTool;
+            this.startAtChunks = startAtChunks;
+            this.readChunks = readChunks;
+            this.cipherChunks = cipherChunks;
+        }
+
+        /**
+         * Encipher a chunk in its array.
+         * The whole blocks of each slice are enciphered straight into the array,
+         * only a block split between two slices (or between the last slice and the padding) is put together in the array first.
+         * @param tool The tool starting at the first block of this chunk
+         * @param chunk The chunk
+         */
+        private void encipher(EncipherTool tool, Chunk chunk){
+            // the place of the next byte in the array, and how many bytes of a split block are there before it
+            int offset = 0;
+            int splitLen = 0;
+
+            for (ByteBuffer slice : chunk.slices){
+                // finish the split block
+                if (splitLen > 0){
+                    int len = Math.min(8 - splitLen, slice.remaining());
+                    slice.get(chunk.data, offset, len);
+                    offset += len;
+                    splitLen += len;
+                    if (splitLen == 8){
+                        tool.encipher(chunk.data, offset - 8, 8, chunk.data, offset - 8);
+                        splitLen = 0;
+                    }
+                }
+
+                // the whole blocks
+                int wholeLen = slice.remaining() / 8 * 8;
+                if (wholeLen > 0){
+                    ByteBuffer wholeBlocks = slice.slice(slice.position(), wholeLen);
+                    tool.encipher(wholeBlocks, ByteBuffer.wrap(chunk.data, offset, wholeLen));
+                    slice.position(slice.position() + wholeLen);
+                    offset += wholeLen;
+                }
+
+                // the start of the next split block
+                int restLen = slice.remaining();
+                if (restLen > 0){
+                    slice.get(chunk.data, offset, restLen);
+                    offset += restLen;
+                    splitLen = restLen;
+                }
+            }
+
+            // the rest of the chunk is already in the array (the padding, or the whole compressed frame)
+            int start = offset - splitLen;
+            tool.encipher(chunk.data, start, chunk.len - start, chunk.data, start);
+            // the slices are not needed any more, the window can be unmapped
+            chunk.slices.clear();
+        }
+
+        @Override
+        public void run() {
+            try {
+                Chunk chunk;
+                while ((chunk = this.readChunks.take()) != END){
+                    encipher(this.startAtChunks ? this.encipherTool.startingAt(chunk.blockIndex) : this.encipherTool, chunk);
+                    this.cipherChunks.put(chunk);
+                }
+
+                // the other workers need the END as well
+                this.readChunks.add(END);
+
+            } catch (RuntimeException e) {
+                stageException = e;
+            } catch (InterruptedException e) {
+                // the sending stage has stopped
+                return;
+            }
+
+            // tell the sending stage that this worker has ended
+            this.cipherChunks.add(END);
         }
     }
 
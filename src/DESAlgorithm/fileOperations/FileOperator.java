@@ -3,9 +3,17 @@ package DESAlgorithm.fileOperations;
 import DESAlgorithm.cipherComponents.CipherTool;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 
 public class FileOperator {
 
+    // How many bytes are enciphered, sent in a data frame and deciphered at once, which the peers agree on before the transmission
+    // (multiples of MIN_CHUNK_SIZE, so that the bitsliced tool can use whole batches of 512 bytes)
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int MIN_CHUNK_SIZE = 4 * 1024;
+    public static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
     // the tool used for encipher or decipher
     protected CipherTool cipherTool;
 
@@ -14,4 +22,49 @@ public class FileOperator {
         this.cipherTool = cipherTool;
     }
 
+    /**
+     * Agree on the chunk size offered by the other peer: it is kept between MIN_CHUNK_SIZE and MAX_CHUNK_SIZE,
+     * and rounded down to a multiple of MIN_CHUNK_SIZE.
+     * @param offeredChunkSize The chunk size offered
+     * @return The chunk size to be used
+     */
+    public static int agreeChunkSize(int offeredChunkSize){
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, offeredChunkSize));
+        return chunkSize - chunkSize % MIN_CHUNK_SIZE;
+    }
+
+    /**
+     * Add the padding at the end of a file (PKCS#5): n bytes of the value n are added (1 <= n <= 8), so that the length can be divided by 8.
+     * There is always at least 1 byte of padding, so that the last byte always tells how many bytes should be removed.
+     * @param data The array holding the end of the file, which must have room for 8 more bytes after len
+     * @param len The number of bytes of the file in this array
+     * @return The length after the padding
+     */
+    protected static int addPadding(byte[] data, int len){
+        int padLen = 8 - len % 8;
+        Arrays.fill(data, len, len + padLen, (byte) padLen);
+        return len + padLen;
+    }
+
+    /**
+     * Find the length of a file without its padding, which only needs the last byte (the last 8 bytes are checked as well).
+     * @param data The array holding the end of the file
+     * @param len The number of bytes in this array, including the padding
+     * @return The length without the padding
+     */
+    protected static int removePadding(byte[] data, int len) throws IOException {
+        int padLen = len > 0 ? data[len - 1] & 0xff : 0;
+
+        // a padding which is not valid means the blocks were not deciphered with the right key (or they are broken)
+        boolean valid = padLen >= 1 && padLen <= 8 && padLen <= len;
+        for (int i = len - padLen; valid && i < len; i++){
+            valid = data[i] == padLen;
+        }
+        if (!valid){
+            throw new IOException("The padding of the last block is not valid, the secret key may be wrong");
+        }
+
+        return len - padLen;
+    }
+
 }
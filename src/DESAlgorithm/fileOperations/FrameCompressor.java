@@ -0,0 +1,102 @@
+package DESAlgorithm.fileOperations;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the data before it is enciphered, one frame at a time.
+ * Each frame can be decompressed by itself, and a frame which cannot be made smaller is kept as it is,
+ * so data which does not compress (e.g. zip or jpg files) only costs the frame headers.
+ *
+ * The layout of a frame: the length of the data (4 bytes), the length of the stored bytes (4 bytes), then the stored bytes,
+ * which are compressed by Deflate if they are fewer than the data, otherwise they are the data itself.
+ * Frames are filled with 0s up to a multiple of 8 bytes, so each frame is made of whole cipher blocks.
+ */
+public class FrameCompressor {
+
+    // The names of the compressions, which the peers agree on before the transmission
+    public static final String COMPRESSION_NONE = "none";
+    public static final String COMPRESSION_DEFLATE = "deflate";
+
+    // The length of the frame header
+    public static final int HEADER_LENGTH = 8;
+
+    // The deflater, which is used again for every frame
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    // The largest frame
+    private final int maxFrameLength;
+
+    // The compressed data of the current frame
+    private final byte[] compressed;
+
+    /**
+     * The constructor
+     * @param maxFrameLength The largest frame (multiple of 8)
+     */
+    public FrameCompressor(int maxFrameLength){
+        this.maxFrameLength = maxFrameLength;
+        this.compressed = new byte[getMaxDataLength()];
+    }
+
+    /**
+     * @return How many bytes of data can go into a frame
+     */
+    public int getMaxDataLength(){
+        return this.maxFrameLength - HEADER_LENGTH;
+    }
+
+    /**
+     * Turn some data into a frame in place.
+     * @param data The array holding the data at its beginning, which then holds the frame
+     * @param len The number of bytes of data (no more than getMaxDataLength())
+     * @return The length of the frame, which can be divided by 8
+     */
+    public int compress(byte[] data, int len){
+        // compress the data, giving up if it does not become smaller
+        this.deflater.reset();
+        this.deflater.setInput(data, 0, len);
+        this.deflater.finish();
+        int storedLen = this.deflater.deflate(this.compressed, 0, len);
+
+        if (this.deflater.finished() && storedLen < len){
+            System.arraycopy(this.compressed, 0, data, HEADER_LENGTH, storedLen);
+        }else {
+            // incompressible, the data is stored as it is
+            System.arraycopy(data, 0, data, HEADER_LENGTH, len);
+            storedLen = len;
+        }
+
+        writeInt(data, 0, len);
+        writeInt(data, 4, storedLen);
+
+        // fill up to a whole block
+        int frameLen = alignToBlock(HEADER_LENGTH + storedLen);
+        for (int i = HEADER_LENGTH + storedLen; i < frameLen; i++){
+            data[i] = 0;
+        }
+        return frameLen;
+    }
+
+    /**
+     * Free the memory of the deflater.
+     */
+    public void end(){
+        this.deflater.end();
+    }
+
+    /**
+     * @param len A length in bytes
+     * @return The smallest multiple of 8 no less than the length
+     */
+    static int alignToBlock(int len){
+        return (len + 7) & ~7;
+    }
+
+    private static void writeInt(byte[] data, int offset, int value){
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+}
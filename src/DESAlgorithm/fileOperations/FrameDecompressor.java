@@ -0,0 +1,128 @@
+package DESAlgorithm.fileOperations;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses the frames made by the FrameCompressor, after the data is deciphered.
+ * The deciphered data comes in pieces which do not end at the ends of the frames,
+ * so the bytes of a frame are collected until the whole frame is here.
+ */
+public class FrameDecompressor {
+
+    // The inflater, which is used again for every frame
+    private final Inflater inflater = new Inflater();
+
+    // The largest frame
+    private final int maxFrameLength;
+
+    // The bytes of the frame being collected
+    private final byte[] frame;
+    private int frameLen = 0;
+
+    /**
+     * The constructor
+     * @param maxFrameLength The largest frame (multiple of 8), the same as the one of the sender
+     */
+    public FrameDecompressor(int maxFrameLength){
+        this.maxFrameLength = maxFrameLength;
+        this.frame = new byte[maxFrameLength];
+    }
+
+    /**
+     * @return How many bytes of data a frame can hold at most
+     */
+    public int getMaxDataLength(){
+        return this.maxFrameLength - FrameCompressor.HEADER_LENGTH;
+    }
+
+    /**
+     * Collect the bytes of the current frame.
+     * @param data The deciphered data
+     * @param offset The index of the first byte not collected yet
+     * @param len The number of bytes not collected yet
+     * @return How many bytes have been collected, it stops at the end of the frame
+     */
+    public int collect(byte[] data, int offset, int len) throws IOException {
+        // collect the header first, which tells the length of the frame
+        int needed = this.frameLen < FrameCompressor.HEADER_LENGTH ? FrameCompressor.HEADER_LENGTH : getFrameLength();
+        int collectLen = Math.min(len, needed - this.frameLen);
+        System.arraycopy(data, offset, this.frame, this.frameLen, collectLen);
+        this.frameLen += collectLen;
+
+        // check the header once it is here
+        if (this.frameLen == FrameCompressor.HEADER_LENGTH && collectLen > 0){
+            int dataLen = readInt(this.frame, 0);
+            int storedLen = readInt(this.frame, 4);
+            if (dataLen <= 0 || dataLen > getMaxDataLength() || storedLen <= 0 || storedLen > dataLen){
+                throw new IOException("The compressed frame is not valid, the secret key may be wrong");
+            }
+            // collect the rest of the frame
+            return collectLen + collect(data, offset + collectLen, len - collectLen);
+        }
+        return collectLen;
+    }
+
+    /**
+     * @return Whether the whole frame has been collected
+     */
+    public boolean isFrameComplete(){
+        return this.frameLen >= FrameCompressor.HEADER_LENGTH && this.frameLen == getFrameLength();
+    }
+
+    /**
+     * @return Whether some bytes of a frame have been collected (which must not happen at the end of the data)
+     */
+    public boolean hasPartialFrame(){
+        return this.frameLen > 0;
+    }
+
+    /**
+     * Decompress the collected frame, then start collecting the next one.
+     * @param output The array for the data, which must hold getMaxDataLength() bytes
+     * @return The number of bytes of data
+     */
+    public int decompress(byte[] output) throws IOException {
+        int dataLen = readInt(this.frame, 0);
+        int storedLen = readInt(this.frame, 4);
+        this.frameLen = 0;
+
+        if (storedLen == dataLen){
+            // the data was stored as it is
+            System.arraycopy(this.frame, FrameCompressor.HEADER_LENGTH, output, 0, dataLen);
+            return dataLen;
+        }
+
+        this.inflater.reset();
+        this.inflater.setInput(this.frame, FrameCompressor.HEADER_LENGTH, storedLen);
+        try {
+            int len = this.inflater.inflate(output, 0, dataLen);
+            if (len != dataLen || !this.inflater.finished()){
+                throw new IOException("The compressed frame holds " + len + " bytes, but " + dataLen + " bytes were expected");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("The compressed frame is broken", e);
+        }
+        return dataLen;
+    }
+
+    /**
+     * Free the memory of the inflater.
+     */
+    public void end(){
+        this.inflater.end();
+    }
+
+    /**
+     * @return The length of the current frame with the 0s at its end (the header must have been collected)
+     */
+    private int getFrameLength(){
+        return FrameCompressor.alignToBlock(FrameCompressor.HEADER_LENGTH + readInt(this.frame, 4));
+    }
+
+    private static int readInt(byte[] data, int offset){
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
+}
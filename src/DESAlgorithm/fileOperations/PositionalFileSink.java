@@ -0,0 +1,210 @@
+package DESAlgorithm.fileOperations;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.InterruptedIOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The place where a downloaded file is written into.
+ * The bytes are written into a temporary file next to the target file, which is preallocated to the final size of the file.
+ * The parts of the file can be written at their positions in any order (also by several threads at the same time),
+ * and once all the bytes have been written and the download is finished, the temporary file is renamed to the target file in a single step,
+ * so the target file never appears half written.
+ *
+ * The writes are asynchronous: write() hands a copy of the bytes to the disk and returns at once
+ * (the copy is in a direct buffer borrowed from the shared BufferPool, which goes back to the pool when the write is done),
+ * so the thread reading the socket goes on receiving while the disk is busy.
+ * Only MAX_WRITES_IN_FLIGHT writes can be waiting for the disk at the same time, after that write() waits for one of them to complete,
+ * which keeps the memory bounded when the disk is slower than the network.
+ */
+public class PositionalFileSink {
+
+    // The file to be downloaded
+    private final File targetFile;
+
+    // The temporary file being written
+    private final File tempFile;
+
+    // How many writes can be waiting for the disk at the same time
+    public static final int MAX_WRITES_IN_FLIGHT = 16;
+
+    // The channel of the temporary file
+    private final AsynchronousFileChannel channel;
+
+    // The permits of the writes in flight
+    private final Semaphore writesInFlight = new Semaphore(MAX_WRITES_IN_FLIGHT);
+
+    // The first failure of a write, which is thrown by the next call of write() or finish()
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    // The final size of the file
+    private final long size;
+
+    // How many bytes have been written
+    private final AtomicLong writtenLength = new AtomicLong();
+
+    /**
+     * The constructor, which creates and preallocates the temporary file
+     * @param targetFile The file to be downloaded
+     * @param size The final size of the file in bytes
+     */
+    public PositionalFileSink(File targetFile, long size) throws IOException {
+        this.targetFile = targetFile;
+        this.size = size;
+
+        // the temporary file is a hidden one in the same directory, so that it can be renamed to the target file
+        this.tempFile = File.createTempFile("." + targetFile.getName() + ".", ".part", targetFile.getAbsoluteFile().getParentFile());
+        try (RandomAccessFile raf = new RandomAccessFile(this.tempFile, "rw")){
+            raf.setLength(size);
+        }
+        this.channel = AsynchronousFileChannel.open(this.tempFile.toPath(), StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Write a part of the file at its position.
+     * The bytes are copied, so the array can be used again as soon as this returns, before they are on the disk.
+     * @param data The array holding the bytes
+     * @param offset The index of the first byte in the array
+     * @param len The number of bytes to write
+     * @param position The position of the first byte in the file
+     */
+    public void write(byte[] data, int offset, int len, long position) throws IOException {
+        if (position < 0 || position + len > this.size){
+            throw new IllegalArgumentException("Writing " + len + " bytes at " + position + " is out of the file of " + this.size + " bytes");
+        }
+
+        checkFailure();
+
+        // wait until there is room for one more write
+        try {
+            this.writesInFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the disk");
+        }
+
+        // a positional write does not move the position of the channel, so several writes can be in flight at the same time
+        BufferPool.PooledBuffer pooledBuffer = BufferPool.getShared().borrow(len);
+        pooledBuffer.buffer().put(data, offset, len).flip();
+        this.channel.write(pooledBuffer.buffer(), position, position, new WriteHandler(pooledBuffer));
+    }
+
+    /**
+     * Forget some bytes written before, which are going to be written again (e.g. the chunks which came broken).
+     * @param len The number of bytes
+     */
+    public void forget(long len){
+        this.writtenLength.addAndGet(-len);
+    }
+
+    /**
+     * Finish the download after all the parts have been written, the temporary file is moved to the target file.
+     * If some bytes are missing, the temporary file is deleted.
+     */
+    public void finish() throws IOException {
+        // wait for the writes in flight
+        try {
+            this.writesInFlight.acquire(MAX_WRITES_IN_FLIGHT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new InterruptedIOException("Interrupted while waiting for the disk");
+        }
+        this.writesInFlight.release(MAX_WRITES_IN_FLIGHT);
+
+        try {
+            checkFailure();
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+        if (this.writtenLength.get() != this.size){
+            abort();
+            throw new IOException("Only " + this.writtenLength.get() + " of " + this.size + " bytes have been written");
+        }
+        complete();
+    }
+
+    /**
+     * Give up the download, the temporary file is deleted (the writes in flight fail, and are ignored).
+     */
+    public void abort(){
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.tempFile.delete();
+    }
+
+    /**
+     * Throw the failure of an earlier write, if any.
+     */
+    private void checkFailure() throws IOException {
+        Throwable failure = this.failure.get();
+        if (failure != null){
+            throw new IOException("Writing the download file failed", failure);
+        }
+    }
+
+    /**
+     * Close the temporary file and rename it to the target file.
+     */
+    private void complete() throws IOException {
+        // make sure the bytes are on the disk before the file appears under its name
+        this.channel.force(true);
+        this.channel.close();
+
+        try {
+            Files.move(this.tempFile.toPath(), this.targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // some file systems cannot rename in a single step
+            Files.move(this.tempFile.toPath(), this.targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Called by the channel when a write is done, on a thread of the channel.
+     * A write may only take a part of the bytes, then the rest is written from where it stopped.
+     * The attachment is the position of the first byte not written yet.
+     */
+    private class WriteHandler implements CompletionHandler<Integer, Long> {
+
+        // The bytes of this write
+        private final BufferPool.PooledBuffer pooledBuffer;
+
+        // the constructor
+        WriteHandler(BufferPool.PooledBuffer pooledBuffer) {
+            this.pooledBuffer = pooledBuffer;
+        }
+
+        @Override
+        public void completed(Integer result, Long position) {
+            writtenLength.addAndGet(result);
+            if (this.pooledBuffer.buffer().hasRemaining()){
+                channel.write(this.pooledBuffer.buffer(), position + result, position + result, this);
+                return;
+            }
+            this.pooledBuffer.release();
+            writesInFlight.release();
+        }
+
+        @Override
+        public void failed(Throwable exc, Long position) {
+            failure.compareAndSet(null, exc);
+            this.pooledBuffer.release();
+            writesInFlight.release();
+        }
+    }
+
+}
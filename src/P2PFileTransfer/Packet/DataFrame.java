@@ -0,0 +1,135 @@
+package P2PFileTransfer.Packet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The binary frames carrying the encrypted data between 2 peers, instead of a "Message" for every block.
+ * The control messages are still "Message" objects, and the frames are written in between them as raw bytes of the same stream,
+ * right after the CIPHER_IV message, until the frame holding the last block.
+ *
+ * The layout of a frame: the type (1 byte), the length of the data (unsigned varint, 7 bits per byte, low bits first), then the data,
+ * which is a whole number of 8-byte cipher blocks.
+ *
+ * A raw frame (RAW_ENCRYPTED_DATA, RAW_ENCRYPTED_DATA_FINAL) only has its header in the object stream, which is flushed right after it,
+ * so the header is the end of a block data record of the stream. Its data then goes into the socket by itself, outside the object stream
+ * (e.g. transferred from a file, see FileEncipherOperator). The object input stream does not read past the end of a record
+ * before it is asked for more, so the receiver reads the data from the stream under its object input stream, then goes back to the object stream.
+ */
+public class DataFrame {
+
+    /*
+        Possible frame types
+    */
+    public static final int ENCRYPTED_DATA = 1;
+    public static final int ENCRYPTED_DATA_FINAL = 2;
+    public static final int RAW_ENCRYPTED_DATA = 3;
+    public static final int RAW_ENCRYPTED_DATA_FINAL = 4;
+
+    // The longest data a frame can carry: the largest chunk (1 MB), with the padding after it
+    public static final int MAX_DATA_LENGTH = 1024 * 1024 + 8;
+
+    // The longest header of a frame (the type, and a length of up to 5 bytes)
+    public static final int MAX_HEADER_LENGTH = 6;
+
+    /**
+     * Write a frame.
+     * @param out The stream to the other peer
+     * @param type The type of the frame
+     * @param data The array holding the data
+     * @param offset The index of the first byte
+     * @param len The length of the data (no more than MAX_DATA_LENGTH)
+     */
+    public static void write(DataOutput out, int type, byte[] data, int offset, int len) throws IOException {
+        byte[] header = new byte[MAX_HEADER_LENGTH];
+        out.write(header, 0, writeHeader(header, type, len));
+        out.write(data, offset, len);
+    }
+
+    /**
+     * Write only the header of a frame (for a raw frame, whose data is sent outside the stream).
+     * @param out The stream to the other peer
+     * @param type The type of the frame
+     * @param len The length of the data (no more than MAX_DATA_LENGTH)
+     */
+    public static void writeHeader(DataOutput out, int type, int len) throws IOException {
+        byte[] header = new byte[MAX_HEADER_LENGTH];
+        out.write(header, 0, writeHeader(header, type, len));
+    }
+
+    /**
+     * Write the header of a frame into an array (for sending the data of the frame in another way).
+     * @param header The array for the header, which must hold MAX_HEADER_LENGTH bytes
+     * @param type The type of the frame
+     * @param len The length of the data
+     * @return The length of the header
+     */
+    public static int writeHeader(byte[] header, int type, int len){
+        int headerLen = 0;
+        header[headerLen++] = (byte) type;
+
+        // the length, 7 bits at a time
+        int value = len;
+        while ((value & ~0x7f) != 0){
+            header[headerLen++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        header[headerLen++] = (byte) value;
+        return headerLen;
+    }
+
+    /**
+     * Read the type of the next frame.
+     * @param in The stream from the other peer
+     * @return The type of the frame
+     */
+    public static int readType(DataInput in) throws IOException {
+        int type = in.readUnsignedByte();
+        if (type < ENCRYPTED_DATA || type > RAW_ENCRYPTED_DATA_FINAL){
+            throw new IOException("Unknown data frame type " + type);
+        }
+        return type;
+    }
+
+    /**
+     * @param type The type of a frame
+     * @return Whether the frame holds the last block
+     */
+    public static boolean isFinal(int type){
+        return type == ENCRYPTED_DATA_FINAL || type == RAW_ENCRYPTED_DATA_FINAL;
+    }
+
+    /**
+     * @param type The type of a frame
+     * @return Whether the data of the frame comes outside the object stream
+     */
+    public static boolean isRaw(int type){
+        return type == RAW_ENCRYPTED_DATA || type == RAW_ENCRYPTED_DATA_FINAL;
+    }
+
+    /**
+     * Read the length of the data of the frame, which comes after its type.
+     * @param in The stream from the other peer
+     * @return The length of the data, which is checked to be a whole number of blocks no more than MAX_DATA_LENGTH
+     */
+    public static int readLength(DataInput in) throws IOException {
+        long len = 0;
+        for (int shift = 0; ; shift += 7){
+            if (shift > 28){
+                throw new IOException("The length of the data frame is too long");
+            }
+            int b = in.readUnsignedByte();
+            len |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0){
+                break;
+            }
+        }
+
+        if (len > MAX_DATA_LENGTH || len % 8 != 0){
+            throw new IOException("The data frame of " + len + " bytes is not valid");
+        }
+        return (int) len;
+    }
+
+}
@@ -1,11 +1,26 @@
 package P2PFileTransfer.Packet;
 
-import java.io.Serializable;
+import P2PFileTransfer.peer.PeerBean;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * All the message packets transferred in our p2p secure communication system must be "Message" type
+ *
+ * A message writes itself by hand instead of by the default serialization: the type is sent as a 1-byte code,
+ * then the content is written by the payload codec registered for the type (see the registry at the end of this class).
  */
-public class Message implements Serializable {
+public class Message implements Externalizable {
+
+    // The layout of a message is fixed by the registry of the types, not by the fields of this class
+    private static final long serialVersionUID = 1L;
 
     /*
         Possible message types
@@ -18,26 +33,44 @@ public class Message implements Serializable {
     public static final String PORT_RECEIVER = "port_receiver";
     public static final String ACK_ACCEPT_TRANSFER = "ack_accept_transfer";
     public static final String ACK_REJECT_TRANSFER = "ack_reject_transfer";
-    public static final String ENCRYPTED_DATA_BLOCK = "encrypted_date_block";
-    public static final String ENCRYPTED_DATA_BLOCK_FINAL = "encrypted_date_block_final";
+    public static final String CHUNK_MANIFEST = "chunk_manifest";
+    public static final String HELD_CHUNKS = "held_chunks";
+    public static final String CIPHER_IV = "cipher_iv";
+    public static final String MERKLE_ROOT = "merkle_root";
+    public static final String REPAIR_REQUEST = "repair_request";
+    public static final String TRANSFER_VERIFIED = "transfer_verified";
+    public static final String TRANSFER_FAILED = "transfer_failed";
     public static final String SYNC_USERS = "sync_users";
     public static final String SYNC_REQUEST_USER_LIST = "sync_request_user_list";
+    public static final String CREDIT = "credit";
 
 
-    private String type;
+    // only the code of the type is kept (and sent), the type itself is looked up in the registry
+    private int typeCode;
     private Object content;
 
     public Message(String type, Object content) {
-        this.type = type;
+        this.typeCode = checkedTypeCode(type);
         this.content = content;
     }
 
+    // the constructor used when a message is read from a stream
+    public Message() {
+    }
+
     public String getType() {
-        return type;
+        return TYPES.get(this.typeCode);
     }
 
     public void setType(String type) {
-        this.type = type;
+        this.typeCode = checkedTypeCode(type);
+    }
+
+    /**
+     * @return The code of the type of this message
+     */
+    public int getTypeCode() {
+        return typeCode;
     }
 
     public Object getContent() {
@@ -47,5 +80,283 @@ public class Message implements Serializable {
     public void setContent(Object content) {
         this.content = content;
     }
-}
 
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(this.typeCode);
+        CODECS.get(this.typeCode).write(out, this.content);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        int typeCode = in.readUnsignedByte();
+        if (typeCode >= TYPES.size()){
+            throw new IOException("Unknown message type code " + typeCode);
+        }
+        this.typeCode = typeCode;
+        this.content = CODECS.get(typeCode).read(in);
+    }
+
+    /*
+        The registry of the message types: the code of a type is its place in the registry,
+        so both sides must have the same registry (new types are only added at the end)
+    */
+    private static final List<String> TYPES = new ArrayList<>();
+    private static final List<PayloadCodec> CODECS = new ArrayList<>();
+    private static final Map<String, Integer> TYPE_CODES = new HashMap<>();
+
+    /**
+     * Write and read the content of a type of message.
+     */
+    public interface PayloadCodec {
+        void write(ObjectOutput out, Object content) throws IOException;
+        Object read(ObjectInput in) throws IOException, ClassNotFoundException;
+    }
+
+    // a string, which may be null
+    private static final PayloadCodec STRING = new PayloadCodec() {
+        @Override
+        public void write(ObjectOutput out, Object content) throws IOException {
+            writeString(out, (String) content);
+        }
+
+        @Override
+        public Object read(ObjectInput in) throws IOException {
+            return readString(in);
+        }
+    };
+
+    // an array of strings
+    private static final PayloadCodec STRINGS = new PayloadCodec() {
+        @Override
+        public void write(ObjectOutput out, Object content) throws IOException {
+            String[] strings = (String[]) content;
+            out.writeInt(strings.length);
+            for (String str : strings){
+                writeString(out, str);
+            }
+        }
+
+        @Override
+        public Object read(ObjectInput in) throws IOException {
+            String[] strings = new String[readLength(in)];
+            for (int i = 0; i < strings.length; i++){
+                strings[i] = readString(in);
+            }
+            return strings;
+        }
+    };
+
+    // the user map (key: guid, value: username)
+    private static final PayloadCodec USER_MAP = new PayloadCodec() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public void write(ObjectOutput out, Object content) throws IOException {
+            Map<String, String> userMap = (Map<String, String>) content;
+            out.writeInt(userMap.size());
+            for (Map.Entry<String, String> entry : userMap.entrySet()){
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+
+        @Override
+        public Object read(ObjectInput in) throws IOException {
+            int size = readLength(in);
+            Map<String, String> userMap = new HashMap<>();
+            for (int i = 0; i < size; i++){
+                userMap.put(readString(in), readString(in));
+            }
+            return userMap;
+        }
+    };
+
+    // a peer bean (only its name and port, the stream to the peer stays at the main server)
+    private static final PayloadCodec PEER_BEAN = new PayloadCodec() {
+        @Override
+        public void write(ObjectOutput out, Object content) throws IOException {
+            PeerBean peerBean = (PeerBean) content;
+            writeString(out, peerBean.getName());
+            writeString(out, peerBean.getPort());
+        }
+
+        @Override
+        public Object read(ObjectInput in) throws IOException {
+            PeerBean peerBean = new PeerBean(readString(in));
+            peerBean.setPort(readString(in));
+            return peerBean;
+        }
+    };
+
+    // an array of booleans, 8 in a byte
+    private static final PayloadCodec BOOLEANS = new PayloadCodec() {
+        @Override
+        public void write(ObjectOutput out, Object content) throws IOException {
+            boolean[] booleans = (boolean[]) content;
+            out.writeInt(booleans.length);
+            for (int i = 0; i < booleans.length; i += 8){
+                int bits = 0;
+                for (int j = i; j < Math.min(i + 8, booleans.length); j++){
+                    bits |= (booleans[j] ? 1 : 0) << (j - i);
+                }
+                out.writeByte(bits);
+            }
+        }
+
+        @Override
+        public Object read(ObjectInput in) throws IOException {
+            boolean[] booleans = new boolean[readLength(in)];
+            for (int i = 0; i < booleans.length; i += 8){
+                int bits = in.readUnsignedByte();
+                for (int j = i; j < Math.min(i + 8, booleans.length); j++){
+                    booleans[j] = (bits & (1 << (j - i))) != 0;
+                }
+            }
+            return booleans;
+        }
+    };
+
+    // an int
+    private static final PayloadCodec INT = new PayloadCodec() {
+        @Override
+        public void write(ObjectOutput out, Object content) throws IOException {
+            out.writeInt((Integer) content);
+        }
+
+        @Override
+        public Object read(ObjectInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    // an array of bytes
+    private static final PayloadCodec BYTES = new PayloadCodec() {
+        @Override
+        public void write(ObjectOutput out, Object content) throws IOException {
+            byte[] bytes = (byte[]) content;
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public Object read(ObjectInput in) throws IOException {
+            byte[] bytes = new byte[readLength(in)];
+            in.readFully(bytes);
+            return bytes;
+        }
+    };
+
+    // an array of ints
+    private static final PayloadCodec INTS = new PayloadCodec() {
+        @Override
+        public void write(ObjectOutput out, Object content) throws IOException {
+            int[] ints = (int[]) content;
+            out.writeInt(ints.length);
+            for (int value : ints){
+                out.writeInt(value);
+            }
+        }
+
+        @Override
+        public Object read(ObjectInput in) throws IOException {
+            int[] ints = new int[readLength(in)];
+            for (int i = 0; i < ints.length; i++){
+                ints[i] = in.readInt();
+            }
+            return ints;
+        }
+    };
+
+    // any serializable object, by the default serialization (only for large contents sent once, e.g. the chunk manifest)
+    private static final PayloadCodec OBJECT = new PayloadCodec() {
+        @Override
+        public void write(ObjectOutput out, Object content) throws IOException {
+            out.writeObject(content);
+        }
+
+        @Override
+        public Object read(ObjectInput in) throws IOException, ClassNotFoundException {
+            return in.readObject();
+        }
+    };
+
+    static {
+        register(CONNECT_REQUEST, PEER_BEAN);
+        register(PORT_YOUR, STRING);
+        register(ACK_PEER_LEAVE, STRING);
+        register(TRANSFER_REQUEST, STRING);
+        register(TRANSFER_REQUEST_TO_RECEIVER, STRINGS);
+        register(PORT_RECEIVER, STRING);
+        register(ACK_ACCEPT_TRANSFER, STRINGS);
+        register(ACK_REJECT_TRANSFER, STRING);
+        register(CHUNK_MANIFEST, OBJECT);
+        register(HELD_CHUNKS, BOOLEANS);
+        register(CIPHER_IV, STRING);
+        register(MERKLE_ROOT, BYTES);
+        register(REPAIR_REQUEST, INTS);
+        register(TRANSFER_VERIFIED, STRING);
+        register(TRANSFER_FAILED, STRING);
+        register(SYNC_USERS, USER_MAP);
+        register(SYNC_REQUEST_USER_LIST, STRING);
+        register(CREDIT, INT);
+    }
+
+    /**
+     * Add a type of message into the registry, its code is the next one.
+     * @param type The type of message
+     * @param codec The codec of its content
+     */
+    private static void register(String type, PayloadCodec codec){
+        TYPE_CODES.put(type, TYPES.size());
+        TYPES.add(type);
+        CODECS.add(codec);
+    }
+
+    /**
+     * @param type A type of message
+     * @return The code of the type (-1 if the type is not registered)
+     */
+    public static int getTypeCode(String type){
+        Integer typeCode = TYPE_CODES.get(type);
+        return typeCode != null ? typeCode : -1;
+    }
+
+    /**
+     * @param type A type of message
+     * @return The code of the type
+     * @throws IllegalArgumentException If the type is not registered
+     */
+    private static int checkedTypeCode(String type){
+        int typeCode = getTypeCode(type);
+        if (typeCode < 0){
+            throw new IllegalArgumentException("Unknown message type " + type);
+        }
+        return typeCode;
+    }
+
+    /**
+     * @return How many types of messages there are
+     */
+    public static int getTypeNumber(){
+        return TYPES.size();
+    }
+
+    private static void writeString(ObjectOutput out, String str) throws IOException {
+        out.writeBoolean(str != null);
+        if (str != null){
+            out.writeUTF(str);
+        }
+    }
+
+    private static String readString(ObjectInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static int readLength(ObjectInput in) throws IOException {
+        int len = in.readInt();
+        if (len < 0){
+            throw new IOException("The length " + len + " in the message is not valid");
+        }
+        return len;
+    }
+}
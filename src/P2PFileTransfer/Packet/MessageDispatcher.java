@@ -0,0 +1,45 @@
+package P2PFileTransfer.Packet;
+
+/**
+ * Passes each message to the handler of its type.
+ * The handlers are kept in a table indexed by the type code of the messages, so a message is dispatched without comparing its type with every type.
+ */
+public class MessageDispatcher {
+
+    /**
+     * Deals with a type of message
+     */
+    public interface Handler {
+        void handle(Message msg) throws Exception;
+    }
+
+    // The handler of each type code (null if the type is ignored)
+    private final Handler[] handlers = new Handler[Message.getTypeNumber()];
+
+    /**
+     * Set the handler of a type of message.
+     * @param type The type of message
+     * @param handler The handler of the messages of this type
+     * @return This dispatcher
+     */
+    public MessageDispatcher on(String type, Handler handler){
+        int typeCode = Message.getTypeCode(type);
+        if (typeCode < 0){
+            throw new IllegalArgumentException("Unknown message type " + type);
+        }
+        this.handlers[typeCode] = handler;
+        return this;
+    }
+
+    /**
+     * Pass a message to the handler of its type, a message without a handler is ignored.
+     * @param msg The message
+     */
+    public void dispatch(Message msg) throws Exception {
+        int typeCode = msg.getTypeCode();
+        if (this.handlers[typeCode] != null){
+            this.handlers[typeCode].handle(msg);
+        }
+    }
+
+}
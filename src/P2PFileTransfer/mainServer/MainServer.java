@@ -1,6 +1,7 @@
 package P2PFileTransfer.mainServer;
 
 import P2PFileTransfer.Packet.Message;
+import P2PFileTransfer.Packet.MessageDispatcher;
 import P2PFileTransfer.peer.PeerBean;
 
 import java.io.IOException;
@@ -77,6 +78,13 @@ public class MainServer {
         // this is used to control the endless loop. if this peer leaves the session, this should be false
         private boolean isRunning = true;
 
+        // the handlers of the types of messages from this peer
+        private final MessageDispatcher dispatcher = new MessageDispatcher()
+                .on(Message.CONNECT_REQUEST, this::handleConnectRequest)
+                .on(Message.TRANSFER_REQUEST, this::handleTransferRequest)
+                .on(Message.ACK_PEER_LEAVE, this::handlePeerLeave)
+                .on(Message.SYNC_REQUEST_USER_LIST, this::handleSyncRequestUserList);
+
         // The constructor
         public PeerHandler(Socket socket, ObjectOutputStream oos){
             // init the socket
@@ -208,80 +216,79 @@ public class MainServer {
 
         /**
          * read in the messages from peer,
-         * and deal with different type message with different way
+         * and deal with different type message with different way (by the handler of its type in the dispatcher)
          */
         private void readInMessage(){
             try {
-                //read in the message
+                //read in the message, then let the handler of its type deal with it
                 Message msg = (Message) ois.readObject();
-                String type = msg.getType();
-
-                //check the type of message
-                if (type.equals(Message.CONNECT_REQUEST)){
-                    /*
-                        if the type is "connecting to the server",
-                        the content must be a PeerBean obj representing this peer
-                     */
-                    PeerBean peerBean = (PeerBean) msg.getContent();
-
-                    //add the new peer info into the UHPT (we must do this here)
-                    updateUHPT(peerBean);
-
-                    // tell the peer its port number
-                    sendYourPort();
+                dispatcher.dispatch(msg);
 
-                    // tell all the peers to update their user lists
-                    syncPeerUserMap();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
 
+        /**
+         * if the type is "connecting to the server",
+         * the content must be a PeerBean obj representing this peer
+         */
+        private void handleConnectRequest(Message msg){
+            PeerBean peerBean = (PeerBean) msg.getContent();
 
-                }else if (type.equals(Message.TRANSFER_REQUEST)){
-                    /*
-                        if the type is "TRANSFER_REQUEST", the content must be a string of the receiver's GUID
-                     */
+            //add the new peer info into the UHPT (we must do this here)
+            updateUHPT(peerBean);
 
-                    // get the receiver's GUID
-                    String receiverGUID = (String) msg.getContent();
+            // tell the peer its port number
+            sendYourPort();
 
-                    if (receiverGUID != null){
-                        // get the receiver peer obj from the UHPT
-                        PeerBean receiver = uhpt.get(receiverGUID);
+            // tell all the peers to update their user lists
+            syncPeerUserMap();
+        }
 
-                        // tell sender the port of the receiver, therefore, the sender can then connect to the receiver
-                        sendReceiverPort(receiver.getPort());
-                    }
+        /**
+         * if the type is "TRANSFER_REQUEST", the content must be a string of the receiver's GUID
+         */
+        private void handleTransferRequest(Message msg){
+            // get the receiver's GUID
+            String receiverGUID = (String) msg.getContent();
 
-                }else if (type.equals(Message.ACK_PEER_LEAVE)){
-                    /*
-                        if the type is "ack_peer_leave", this means this peer is leaving, we should update our UHPT
-                     */
-                    //delete the peer from the UHPT
-                    deletePeerFromUHPT(guid);
+            if (receiverGUID != null){
+                // get the receiver peer obj from the UHPT
+                PeerBean receiver = uhpt.get(receiverGUID);
 
-                    //stop the endless loop for listening to this peer
-                    this.isRunning = false;
+                // tell sender the port of the receiver, therefore, the sender can then connect to the receiver
+                sendReceiverPort(receiver.getPort());
+            }
+        }
 
-                    // tell all the peers to update their user lists
-                    syncPeerUserMap();
+        /**
+         * if the type is "ack_peer_leave", this means this peer is leaving, we should update our UHPT
+         */
+        private void handlePeerLeave(Message msg){
+            //delete the peer from the UHPT
+            deletePeerFromUHPT(guid);
 
-                }else if (type.equals(Message.SYNC_REQUEST_USER_LIST)){
-                    /*
-                        if the type is "SYNC_REQUEST_USER_LIST", this means this peer is asking for the latest user list
-                     */
-                    // create the current user map
-                    Map<String, String> userMap = createUserMap();
+            //stop the endless loop for listening to this peer
+            this.isRunning = false;
 
-                    // packet the userMap into a msg
-                    Message msgBack = new Message(Message.SYNC_USERS, userMap);
+            // tell all the peers to update their user lists
+            syncPeerUserMap();
+        }
 
-                    // tell this peer the latest user list
-                    oos.writeObject(msgBack);
-                    oos.flush();
+        /**
+         * if the type is "SYNC_REQUEST_USER_LIST", this means this peer is asking for the latest user list
+         */
+        private void handleSyncRequestUserList(Message msg) throws IOException {
+            // create the current user map
+            Map<String, String> userMap = createUserMap();
 
-                }
+            // packet the userMap into a msg
+            Message msgBack = new Message(Message.SYNC_USERS, userMap);
 
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+            // tell this peer the latest user list
+            oos.writeObject(msgBack);
+            oos.flush();
         }
 
         @Override
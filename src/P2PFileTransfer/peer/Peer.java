@@ -1,12 +1,23 @@
 package P2PFileTransfer.peer;
 
 
-import DESAlgorithm.cipherComponents.DecipherTool;
-import DESAlgorithm.cipherComponents.EncipherTool;
+import DESAlgorithm.cipherComponents.CipherToolFactory;
 import DESAlgorithm.cipherComponents.Key;
+import DESAlgorithm.fileOperations.BufferPool;
+import DESAlgorithm.fileOperations.ChunkManifest;
+import DESAlgorithm.fileOperations.ChunkStore;
+import DESAlgorithm.fileOperations.ChunkVerifier;
+import DESAlgorithm.fileOperations.CipherTextCache;
+import DESAlgorithm.fileOperations.ContentDefinedChunker;
+import DESAlgorithm.fileOperations.CreditGate;
 import DESAlgorithm.fileOperations.FileDecipherOperator;
 import DESAlgorithm.fileOperations.FileEncipherOperator;
+import DESAlgorithm.fileOperations.FileOperator;
+import DESAlgorithm.fileOperations.FrameCompressor;
+import DESAlgorithm.fileOperations.PositionalFileSink;
+import P2PFileTransfer.Packet.DataFrame;
 import P2PFileTransfer.Packet.Message;
+import P2PFileTransfer.Packet.MessageDispatcher;
 import P2PFileTransfer.mainServer.MainServer;
 import presentation.DownloadDirChoosingUI;
 import presentation.PeerStarterUI;
@@ -16,13 +27,34 @@ import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class Peer implements ActionListener {
 
+    // whether the cipher text of the sent files is cached, so that sending a file again with the same key does not encipher it again
+    public static final boolean USE_CIPHER_TEXT_CACHE = true;
+
+    // how many times the receiver asks for the broken chunks again before it gives up the file
+    public static final int MAX_REPAIR_ROUNDS = 3;
+
+    // whether the sender offers to compress the file before enciphering it (the receiver agrees on it in its ACK)
+    public static final boolean OFFER_COMPRESSION = true;
+
+    // the chunk size the sender offers to the receiver: how many bytes are enciphered and sent in a data frame at once (4 KB to 1 MB)
+    public static final int OFFERED_CHUNK_SIZE = 256 * 1024;
+
+    // how many data frames the receiver lets the sender send ahead (the credits are granted again every half of it, as the frames are written)
+    public static final int CREDIT_WINDOW = 8;
+
+    // the buffer size of the streams between 2 peers, so that a data frame is not written into the socket 1 KB at a time
+    public static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
     // the port of this peer
     private int myPort;
 
@@ -39,6 +71,12 @@ public class Peer implements ActionListener {
     public ObjectOutputStream oos;
     private ObjectInputStream ois;
 
+    // the handlers of the types of messages from the main server
+    private final MessageDispatcher serverMessageDispatcher = new MessageDispatcher()
+            .on(Message.PORT_YOUR, this::handlePortYour)
+            .on(Message.PORT_RECEIVER, this::handlePortReceiver)
+            .on(Message.SYNC_USERS, this::handleSyncUsers);
+
     // The user interfaces
     private PeerStarterUI peerStarterUI;
     private PeerUI peerUI;
@@ -48,9 +86,17 @@ public class Peer implements ActionListener {
     private String absolutFileName;
     // other cipher components
     private String keyString;
+    private String cipherMode;
+    private String cipherAlgorithm;
     private String receiverGUID;
     private String receiverName;
 
+    // the cache of the cipher text of the sent files (null if the cache is not used)
+    private final CipherTextCache cipherTextCache = USE_CIPHER_TEXT_CACHE ? openCipherTextCache() : null;
+
+    // the index of the chunks of the downloaded files, so that a chunk already here does not need to be sent again (regarding the receiver peer)
+    private final ChunkStore chunkStore = new ChunkStore(new File(System.getProperty("java.io.tmpdir"), "p2p-chunk-index"));
+
 
     // the constructor
     public Peer(){
@@ -78,6 +124,19 @@ public class Peer implements ActionListener {
         this.peerStarterUI = new PeerStarterUI(this);
     }
 
+    /**
+     * Open the cache of the cipher text of the sent files, which is kept in the home directory of the user (private to the user).
+     * @return The cache, or null if it cannot be opened (then the files are sent without the cache)
+     */
+    private static CipherTextCache openCipherTextCache(){
+        try {
+            return new CipherTextCache(new File(System.getProperty("user.home"), ".p2p-file-sharing" + File.separator + "cipher-text-cache"), CipherTextCache.DEFAULT_SIZE_BUDGET);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * show a specific text on the JTextArea
      */
@@ -180,6 +239,9 @@ public class Peer implements ActionListener {
             }else if (peerUI.mJtfKeyInput.getText().isEmpty()){
                 showOnScreen("You should input a secret key!");
 
+            }else if (!CipherToolFactory.isValidKey((String) peerUI.mJcbAlgorithm.getSelectedItem(), peerUI.mJtfKeyInput.getText())){
+                showOnScreen("The secret key of Triple DES should be 16 or 24 bytes!");
+
             }else{  // every thing is OK
                 // disable the buttons
                 peerUI.enableButtons(false);
@@ -188,6 +250,10 @@ public class Peer implements ActionListener {
                 this.keyString = peerUI.mJtfKeyInput.getText();
                 peerUI.mJtfKeyInput.setText("");
 
+                // update the block cipher and the mode of operation
+                this.cipherAlgorithm = (String) peerUI.mJcbAlgorithm.getSelectedItem();
+                this.cipherMode = (String) peerUI.mJcbMode.getSelectedItem();
+
                 // update the absolut file name
                 this.absolutFileName = peerUI.mJtfFileChosen.getText();
                 peerUI.mJtfFileChosen.setText("");
@@ -297,68 +363,71 @@ public class Peer implements ActionListener {
     }
 
     /**
-     * Read in the messages from client, and deal with different types of message
+     * Read in the messages from client, and deal with different types of message (by the handler of its type in the dispatcher)
      */
     private void readInMessage(){
         try {
-            // read in the message
+            // read in the message, then let the handler of its type deal with it
             Message msg = (Message) ois.readObject();
-            String type = msg.getType();
-
-            // giving different responds according to the type
-            if (type.equals(Message.PORT_YOUR)){
-                /*
-                    (Becoming a potential receiver)
-                    If the type is "port_your", the content must be a String of port for this client to become a server.
-                    This message can only be gotten a single time at the beginning of the connection to server.
-                 */
-                String port = (String) msg.getContent();
-                // update the port info
-                myPort = Integer.parseInt(port);
-                peerBean.setPort(port);
-
-                // Everytime connected to the server,
-                // we let the peer start another thread to be a server (waiting for being a receiver) according to the port number,
-                // waiting for another peer to connect with
-                new Thread(new ReceivingHandler()).start();
-
-            }else if (type.equals(Message.PORT_RECEIVER)){
-                /*
-                    (Becoming a sender connecting to the receiver)
-                    if the type is "PORT_RECEIVER", the content must be a string of the port of the receiver peer
-                 */
-                String receiverPortStr = (String) msg.getContent();
-                int receiverPort = Integer.parseInt(receiverPortStr);
-
-                // start a new thread to connect to the receiver peer
-                showOnScreen(">> NOTICE: connecting to the receiver peer...");
-                new Thread(new SendingHandler(receiverPort)).start();
-
-            }else if(type.equals(Message.SYNC_USERS)){
-                /*
-                      This is the msg from the mean server to tell every peer to update their user list
-                      The msg content the latest UHPT of the main server
-                */
-                Map<String, String> newUserMap = (Map<String, String>) msg.getContent();
-                // update the userMap using the new one
-                this.userMap = newUserMap;
-                // set the flag
-                this.userMapInitialized = true;
-            }
+            serverMessageDispatcher.dispatch(msg);
 
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * (Becoming a potential receiver)
+     * If the type is "port_your", the content must be a String of port for this client to become a server.
+     * This message can only be gotten a single time at the beginning of the connection to server.
+     */
+    private void handlePortYour(Message msg){
+        String port = (String) msg.getContent();
+        // update the port info
+        myPort = Integer.parseInt(port);
+        peerBean.setPort(port);
+
+        // Everytime connected to the server,
+        // we let the peer start another thread to be a server (waiting for being a receiver) according to the port number,
+        // waiting for another peer to connect with
+        new Thread(new ReceivingHandler()).start();
+    }
+
+    /**
+     * (Becoming a sender connecting to the receiver)
+     * if the type is "PORT_RECEIVER", the content must be a string of the port of the receiver peer
+     */
+    private void handlePortReceiver(Message msg){
+        String receiverPortStr = (String) msg.getContent();
+        int receiverPort = Integer.parseInt(receiverPortStr);
+
+        // start a new thread to connect to the receiver peer
+        showOnScreen(">> NOTICE: connecting to the receiver peer...");
+        new Thread(new SendingHandler(receiverPort)).start();
+    }
+
+    /**
+     * This is the msg from the mean server to tell every peer to update their user list
+     * The msg content the latest UHPT of the main server
+     */
+    @SuppressWarnings("unchecked")
+    private void handleSyncUsers(Message msg){
+        Map<String, String> newUserMap = (Map<String, String>) msg.getContent();
+        // update the userMap using the new one
+        this.userMap = newUserMap;
+        // set the flag
+        this.userMapInitialized = true;
+    }
+
     /**
      * An inner class for becoming a sender to request transferring file to receiver peer
      * (a thread for connecting to the receiver peer, acting as a client)
      */
     class SendingHandler implements Runnable{
 
-        // the socket of the request peer
+        // the socket of the request peer, and its channel (for sending the cached cipher text without copying it)
         private Socket requestSocket;
+        private SocketChannel requestChannel;
 
         // the port number of receiver peer
         private int receiverPort;
@@ -369,6 +438,24 @@ public class Peer implements ActionListener {
 
         // encryption components
         private FileEncipherOperator fileEncipherOperator;
+        private ContentDefinedChunker chunker;   // the chunker keyed by the secret key
+        private ChunkManifest chunkManifest;   // the chunks of the file, sent to the receiver before the file
+        private CipherTextCache.Entry cacheEntry;   // the entry of the cipher text cache for the sent chunks (null if not cached)
+        private long iv;   // the IV of this transfer, sent to the receiver before the encrypted blocks
+        private String compression = FrameCompressor.COMPRESSION_NONE;   // the compression agreed by the receiver
+        private int chunkSize = FileOperator.DEFAULT_CHUNK_SIZE;   // the chunk size agreed by the receiver
+        private CreditGate creditGate;   // the credits granted by the receiver for the frames being sent
+        private Thread sendingThread;   // the thread sending the frames, while this handler keeps reading the credits
+
+        // the handlers of the types of messages from the receiver peer
+        private final MessageDispatcher messageDispatcher = new MessageDispatcher()
+                .on(Message.ACK_ACCEPT_TRANSFER, this::handleAckAcceptTransfer)
+                .on(Message.HELD_CHUNKS, this::handleHeldChunks)
+                .on(Message.REPAIR_REQUEST, this::handleRepairRequest)
+                .on(Message.CREDIT, this::handleCredit)
+                .on(Message.TRANSFER_VERIFIED, this::handleTransferVerified)
+                .on(Message.TRANSFER_FAILED, this::handleTransferFailed)
+                .on(Message.ACK_REJECT_TRANSFER, this::handleAckRejectTransfer);
 
         // this is used to control the endless loop. if the sharing done, this should be false
         private boolean isRunning = true;
@@ -386,11 +473,15 @@ public class Peer implements ActionListener {
 
             try {
                 // connect to the receiver (the receiver is acting as the socket server)
-                this.requestSocket = new Socket(MainServer.MAIN_SERVER_IP, this.receiverPort);
+                // the socket is opened by a channel, so that the file channel of the cached cipher text can transfer into it
+                this.requestChannel = SocketChannel.open(new InetSocketAddress(MainServer.MAIN_SERVER_IP, this.receiverPort));
+                this.requestSocket = this.requestChannel.socket();
 
                 // initialize the IO streams between this peer and the receiver peer
-                ois = new ObjectInputStream(requestSocket.getInputStream());
-                oos = new ObjectOutputStream(requestSocket.getOutputStream());
+                // (buffered, so that a data frame goes into the socket in a few large writes, the header of the oos is flushed at once for the ois of the receiver)
+                ois = new ObjectInputStream(new BufferedInputStream(requestSocket.getInputStream(), STREAM_BUFFER_SIZE));
+                oos = new ObjectOutputStream(new BufferedOutputStream(requestSocket.getOutputStream(), STREAM_BUFFER_SIZE));
+                oos.flush();
 
                 // screen notification
                 showOnScreen(">> NOTICE: The connection with the receiver established successfully!");
@@ -406,66 +497,255 @@ public class Peer implements ActionListener {
         }
 
         /**
-         * read in the messages from receiver peer, giving different responds by type
+         * Look for the data to be sent in the cipher text cache, then use the IV of the cached cipher text, or a new random IV if it is not there.
+         * (A cached cipher text is only for exactly the same data, so the IV is never used again for different data)
+         * @param held Whether the receiver has each chunk
+         */
+        private void chooseIV(boolean[] held){
+            long newIV = CipherToolFactory.generateIV();
+            this.iv = newIV;
+            if (cipherTextCache == null){
+                return;
+            }
+
+            try {
+                this.cacheEntry = cipherTextCache.lookup(this.chunkManifest.getMissingChunksHash(held) + "/" + this.compression + "/" + this.chunkSize, keyString, cipherAlgorithm, cipherMode, newIV);
+                this.iv = this.cacheEntry.getIV();
+            } catch (IOException e) {
+                // the file is sent without the cache
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * read in the messages from receiver peer, giving different responds by type (by the handler of its type in the dispatcher)
          */
         private void readInMessage(){
             try {
-                // get the message and type
+                // read in the message, then let the handler of its type deal with it
                 Message msg = (Message) this.ois.readObject();
-                String type = msg.getType();
+                messageDispatcher.dispatch(msg);
+
+            } catch (IOException e) {
+                e.printStackTrace();
+                // the connection is broken, so no more credits can come for the frames being sent
+                if (this.creditGate != null){
+                    this.creditGate.close();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
 
-                // giving different responds by message types
-                if (type.equals(Message.ACK_ACCEPT_TRANSFER)){
-                    /*
-                        if the type is "ACK_ACCEPT_TRANSFER", this sender can start sending encrypted blocks
-                    */
-                    sendEncryptedDataBlocks();
+        /**
+         * if the type is "ACK_ACCEPT_TRANSFER", the content must be an array of strings: the compression and the chunk size agreed by the receiver,
+         * then this sender tells the receiver the chunks of the file, so that the receiver can find the chunks it already has
+         */
+        private void handleAckAcceptTransfer(Message msg) throws IOException {
+            String[] agreement = (String[]) msg.getContent();
+            if (FrameCompressor.COMPRESSION_DEFLATE.equals(agreement[0])){
+                this.compression = FrameCompressor.COMPRESSION_DEFLATE;
+            }
+            this.chunkSize = FileOperator.agreeChunkSize(Integer.parseInt(agreement[1]));
+            sendChunkManifest();
+        }
 
-                    // sending finished,
-                    showOnScreen(">> NOTICE: File sent successfully!");
+        /**
+         * if the type is "HELD_CHUNKS", the content must be an array of booleans telling whether the receiver has each chunk,
+         * then this sender can start sending the missing chunks as encrypted blocks
+         */
+        private void handleHeldChunks(Message msg) throws InterruptedException {
+            boolean[] held = (boolean[]) msg.getContent();
+            startSending(held, true);
+        }
 
-                    // enable the buttons again
-                    peerUI.enableButtons(true);
+        /**
+         * if the type is "REPAIR_REQUEST", the content must be an array of the indexes of the chunks which came broken,
+         * then this sender sends these chunks again
+         */
+        private void handleRepairRequest(Message msg) throws InterruptedException {
+            int[] failedChunks = (int[]) msg.getContent();
+            boolean[] held = new boolean[this.chunkManifest.getChunkNumber()];
+            Arrays.fill(held, true);
+            for (int failedChunk : failedChunks){
+                held[failedChunk] = false;
+            }
 
-                    // transmission done, stop listening to the receiver peer
-                    isRunning = false;
+            showOnScreen(">> NOTICE: " + failedChunks.length + " chunks came broken, sending them again...");
+            startSending(held, false);
+        }
+
+        /**
+         * if the type is "CREDIT", the content must be how many more data frames the receiver is ready to take
+         */
+        private void handleCredit(Message msg){
+            this.creditGate.grant((Integer) msg.getContent());
+        }
+
+        /**
+         * if the type is "TRANSFER_VERIFIED", the receiver has checked the whole file
+         */
+        private void handleTransferVerified(Message msg){
+            // sending finished,
+            showOnScreen(">> NOTICE: File sent successfully!");
+
+            // enable the buttons again
+            peerUI.enableButtons(true);
+
+            // transmission done, stop listening to the receiver peer
+            isRunning = false;
+        }
+
+        /**
+         * if the type is "TRANSFER_FAILED", the content must be the reason why the receiver gave up the file
+         */
+        private void handleTransferFailed(Message msg){
+            showOnScreen(">> NOTICE: The transmission failed: " + msg.getContent());
+
+            // the frames still waiting for credits are not sent
+            if (this.creditGate != null){
+                this.creditGate.close();
+            }
+
+            // enable the buttons again
+            peerUI.enableButtons(true);
+
+            // transmission done, stop listening to the receiver peer
+            isRunning = false;
+        }
+
+        /**
+         * if the type is "ACK_REJECT_TRANSFER", the transfer request is turned down by the receiver
+         */
+        private void handleAckRejectTransfer(Message msg){
+            // give the system notification
+            showOnScreen(">> NOTICE: Your transfer request has been rejected!");
+            // enable the buttons again
+            peerUI.enableButtons(true);
+        }
+
+        /**
+         * Split the file into chunks by its content, then send the list of the chunks to the receiver.
+         * Message type should be CHUNK_MANIFEST
+         */
+        private void sendChunkManifest() throws IOException {
+            this.chunker = new ContentDefinedChunker(keyString);
+            this.chunkManifest = this.chunker.chunk(theFile);
+
+            Message msg = new Message(Message.CHUNK_MANIFEST, this.chunkManifest);
+            oos.writeObject(msg);
+            oos.flush();
+        }
+
+        /**
+         * Start sending the chunks the receiver does not have on a thread of its own,
+         * so that this handler keeps reading the credits granted by the receiver while the frames are sent.
+         * @param held Whether the receiver has each chunk
+         * @param useCache Whether the cipher text cache can be used (not for the chunks sent again)
+         */
+        private void startSending(boolean[] held, boolean useCache) throws InterruptedException {
+            // the last sending has written everything before the receiver could ask for more, its thread is only waited for to end
+            if (this.sendingThread != null){
+                this.sendingThread.join();
+            }
+
+            // new credits for this sending, the receiver grants the first ones when the IV comes
+            CreditGate creditGate = new CreditGate();
+            this.creditGate = creditGate;
 
-                }else if (type.equals(Message.ACK_REJECT_TRANSFER)){
-                    /*
-                        if the type is "ACK_REJECT_TRANSFER", the transfer request is turned down by the receiver
-                    */
-                    // give the system notification
-                    showOnScreen(">> NOTICE: Your transfer request has been rejected!");
-                    // enable the buttons again
-                    peerUI.enableButtons(true);
+            this.sendingThread = new Thread(() -> {
+                try {
+                    sendEncryptedDataBlocks(held, useCache, creditGate);
+                    showOnScreen(">> NOTICE: File sent, waiting for the receiver to verify it...");
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    giveUpSending(e.getMessage(), creditGate);
                 }
+            });
+            this.sendingThread.start();
+        }
 
-            } catch (Exception e) {
+        /**
+         * Give up sending the file (e.g. it cannot be read), and tell the receiver why instead of the Merkle root.
+         * The receiver gives up too and answers with TRANSFER_FAILED, which stops this handler.
+         * Message type should be TRANSFER_FAILED
+         * @param reason Why the sending is given up
+         * @param creditGate The credits of this sending, which are closed if the receiver has given up first (then nothing is sent)
+         */
+        private void giveUpSending(String reason, CreditGate creditGate){
+            if (creditGate.isClosed()){
+                return;
+            }
+            showOnScreen(">> NOTICE: Sending failed: " + reason);
+            try {
+                oos.writeObject(new Message(Message.TRANSFER_FAILED, reason));
+                oos.flush();
+            } catch (IOException e) {
                 e.printStackTrace();
             }
         }
 
         /**
-         * Break the file into blocks, then encapsulate each encrypted block into a message and send them to the receiver.
-         * Message type should be ENCRYPTED_DATA_BLOCK
+         * Encipher the chunks the receiver does not have, and send them to the receiver.
+         * The IV is sent first (message type CIPHER_IV), then the cipher text right after it as data frames (see DataFrame),
+         * then the Merkle root of the chunks read while sending (message type MERKLE_ROOT)
+         * @param held Whether the receiver has each chunk
+         * @param useCache Whether the cipher text cache can be used (not for the chunks sent again)
+         * @param creditGate The credits granted by the receiver, which each frame waits for
          */
-        private void sendEncryptedDataBlocks(){
+        private void sendEncryptedDataBlocks(boolean[] held, boolean useCache, CreditGate creditGate) throws IOException {
+            // choose the IV, and send it to the receiver
+            if (useCache){
+                chooseIV(held);
+            }else {
+                this.iv = CipherToolFactory.generateIV();
+                this.cacheEntry = null;
+            }
+            oos.writeObject(new Message(Message.CIPHER_IV, String.valueOf(this.iv)));
+            oos.flush();
+
+            // tell how much of the file does not need to be sent
+            long[] ranges = this.chunkManifest.getMissingRanges(held);
+            long sentLength = 0;
+            for (int i = 1; i < ranges.length; i += 2){
+                sentLength += ranges[i];
+            }
+            showOnScreen(">> NOTICE: The receiver already has " + (theFile.length() - sentLength) + " of " + theFile.length() + " bytes of this file");
+
+            // the chunks are hashed again as they are read, so that the receiver can tell if the file has changed since the manifest
+            ChunkVerifier chunkVerifier = new ChunkVerifier(this.chunkManifest, this.chunker, held);
+
             // initialize the file encryption operator
-            this.fileEncipherOperator = new FileEncipherOperator(theFile, new EncipherTool(new Key(keyString)), this.oos);
+            this.fileEncipherOperator = new FileEncipherOperator(theFile, ranges, CipherToolFactory.createEncipherTool(cipherAlgorithm, cipherMode, Key.getInstance(keyString), this.iv), this.oos, this.cacheEntry, this.chunkSize, this.compression.equals(FrameCompressor.COMPRESSION_DEFLATE), chunkVerifier);
+            this.fileEncipherOperator.setCreditGate(creditGate);
+            this.fileEncipherOperator.setSocketChannel(this.requestChannel);
+            if (this.cacheEntry != null && this.cacheEntry.isHit()){
+                showOnScreen(">> NOTICE: The file has been enciphered before, sending the cached cipher text...");
+            }
             showOnScreen(">> NOTICE: Start sending file...");
 
             // start encryption and file transmission
             this.fileEncipherOperator.encipherAndSendBlocks();
+
+            // send the Merkle root right after the last block
+            // (on a cache hit, no chunk is read, so this is the root of the manifest: the cache entry is named by the ids of the missing chunks,
+            // so its cipher text is the one of exactly these chunks, and a broken cached file shows up as broken chunks at the receiver,
+            // which are sent again without the cache)
+            oos.writeObject(new Message(Message.MERKLE_ROOT, chunkVerifier.getMerkleRoot()));
+            oos.flush();
         }
 
 
         /**
-         * Send the file transformation request to the receiver peer (Sender name + File name).
+         * Send the file transformation request to the receiver peer (Sender name + File name + Mode + Block cipher + File length + Compression + Chunk size).
          * Tell the receiver that I am going to start an encrypted transmission to you.
          */
         private void sendTransferRequest(){
-            // send the transfer request to the receiver peer, (0: sender name, 1: file name)
-            Message msg = new Message(Message.TRANSFER_REQUEST_TO_RECEIVER, new String[]{peerBean.getName(), theFile.getName()});
+            // the compression offered to the receiver
+            String offeredCompression = OFFER_COMPRESSION ? FrameCompressor.COMPRESSION_DEFLATE : FrameCompressor.COMPRESSION_NONE;
+
+            // send the transfer request to the receiver peer, (0: sender name, 1: file name, 2: mode of operation, 3: block cipher, 4: file length, 5: offered compression, 6: offered chunk size)
+            Message msg = new Message(Message.TRANSFER_REQUEST_TO_RECEIVER, new String[]{peerBean.getName(), theFile.getName(), cipherMode, cipherAlgorithm, String.valueOf(theFile.length()), offeredCompression, String.valueOf(OFFERED_CHUNK_SIZE)});
             try {
                 oos.writeObject(msg);
                 oos.flush();
@@ -507,7 +787,8 @@ public class Peer implements ActionListener {
 
                     // init the output stream
                     /* Attention!! We must let the oos be initialized here and let ois be initialized inside the new thread, otherwise, the statement of getting the streams will be blocked */
-                    oosServerPeer = new ObjectOutputStream(socket.getOutputStream());
+                    oosServerPeer = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER_SIZE));
+                    oosServerPeer.flush();
 
                     // show notice on screen
                     showOnScreen(">> NOTICE: a sender peer connected");
@@ -533,17 +814,38 @@ public class Peer implements ActionListener {
             //IO streams with this peer
             private ObjectInputStream ois;
             private ObjectOutputStream oos;
+            private DataInputStream rawIn;   // the stream under the ois, for the data of the raw frames
 
             // The components used for decryption of the data between receiver and this sender
             private String keyStr;
+            private String cipherMode;
+            private String cipherAlgorithm;
+            private long iv;
+            private long fileLength;
+            private String compression;   // the compression agreed with the sender
+            private int chunkSize;   // the chunk size agreed with the sender
             private String outputFileName; // (with dir)
             private String downloadDir; // (without filename)
+            private File downloadFile;
+            private PositionalFileSink downloadSink;   // the preallocated download file
+            private ChunkManifest chunkManifest;   // the chunks of the file
+            private boolean[] heldChunks;   // whether each chunk is already in the download file (found locally, or received and verified)
+            private ContentDefinedChunker chunker;   // the chunker keyed by the secret key
+            private int repairRound = 0;   // how many times the broken chunks have been asked for again
             private FileDecipherOperator fileDecipherOperator;
-            private BufferedOutputStream bos;   // used to write the download file
+            private byte[] frameData;   // the data of the frame being read
 
             // user interface used in this event
             private DownloadDirChoosingUI downloadDirChoosingUI;
 
+            // the handlers of the types of messages from the sender peer
+            private final MessageDispatcher messageDispatcher = new MessageDispatcher()
+                    .on(Message.TRANSFER_REQUEST_TO_RECEIVER, this::handleTransferRequest)
+                    .on(Message.CHUNK_MANIFEST, this::handleChunkManifest)
+                    .on(Message.CIPHER_IV, this::handleCipherIV)
+                    .on(Message.MERKLE_ROOT, this::handleMerkleRoot)
+                    .on(Message.TRANSFER_FAILED, this::handleTransferFailed);
+
             //this is used to control the endless loop. if the sharing done, this should be false
             private boolean isRunning = true;
 
@@ -555,84 +857,187 @@ public class Peer implements ActionListener {
                 this.oos = oos;
                 //init the input stream
                 try {
-                    this.ois = new ObjectInputStream(this.requestPeerSocket.getInputStream());
+                    BufferedInputStream bufferedIn = new BufferedInputStream(this.requestPeerSocket.getInputStream(), STREAM_BUFFER_SIZE);
+                    this.rawIn = new DataInputStream(bufferedIn);
+                    this.ois = new ObjectInputStream(bufferedIn);
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
             }
 
             /**
-             * read in the messages from the sender peer, and deal with different types of messages
+             * read in the messages from the sender peer, and deal with different types of messages (by the handler of its type in the dispatcher)
              */
             private void readInMessage(){
                 try {
-                    //get the message and type
+                    // read in the message, then let the handler of its type deal with it
                     Message msg = (Message) this.ois.readObject();
-                    String type = msg.getType();
-
-                    if (type.equals(Message.TRANSFER_REQUEST_TO_RECEIVER)){
-                        /*
-                            if the type is "TRANSFER_REQUEST_TO_RECEIVER", the content must be a string representing the file name
-                        */
-                        // get the package of requesting
-                        String senderName = ((String[]) msg.getContent())[0];
-                        this.outputFileName = ((String[]) msg.getContent())[1];
-
-                        // tell this receiver, a sender wants to send you a file:..., would you like to accept the transmission
-                        int option = JOptionPane.showConfirmDialog(null, "User " + senderName + " wants to send you a file: " + this.outputFileName + ", do you accept it?", "File transmission request", JOptionPane.YES_NO_OPTION);
-
-                        // if this receiver accepts,
-                        if(option == JOptionPane.OK_OPTION){
-                            // ask this receiver the secret key
-                            this.keyStr = JOptionPane.showInputDialog(null, "Please enter the secret key of this transmission", "Secret key for decipher", JOptionPane.PLAIN_MESSAGE);
-                            // check if the key is inputted
-                            while(this.keyStr.isEmpty()){
-                                // if not, we let the receiver input the key again
-                                this.keyStr = JOptionPane.showInputDialog(null, "Please enter the secret key of this transmission", "Secret key for decipher", JOptionPane.PLAIN_MESSAGE);
-                            }
-
-                            // show another window to ask for the download dir
-                            this.downloadDirChoosingUI = new DownloadDirChoosingUI(this);
-
-                        // The receiver does not accept
-                        }else {
-                            // send a reject message back to the sender
-                            sendRejectMessage();
-                        }
-
-
-                    }else if (type.equals(Message.ENCRYPTED_DATA_BLOCK)){
-                        /*
-                            if the type is "ENCRYPTED_DATA_BLOCK", the content must be a 64-bit block of encrypted data
-                        */
-                        // get the encrypted data block from message packet
-                        byte[] cipherBlock = (byte[]) msg.getContent();
-
-                        // decipher the data block and write it into the local place
-                        downloadDataBlock(cipherBlock, false);
-
-                    }else if (type.equals(Message.ENCRYPTED_DATA_BLOCK_FINAL)){
-                        /*
-                            if the type is "ENCRYPTED_DATA_BLOCK_FINAL", the content must be a 64-bit block of encrypted data
-                            and this is the last block of data in the transmission.
-                        */
-                        // get the encrypted data block from message packet
-                        byte[] cipherBlock = (byte[]) msg.getContent();
-
-                        // decipher the data block and write it into the local place
-                        downloadDataBlock(cipherBlock, true);
-
-                        // transmission done, stop listening to the sender peer
-                        isRunning = false;
-
-                        showOnScreen(">> NOTICE: Download finished!");
-                    }
+                    messageDispatcher.dispatch(msg);
 
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
             }
 
+            /**
+             * if the type is "TRANSFER_REQUEST_TO_RECEIVER", the content must be an array of strings: sender name, file name, mode of operation, block cipher, file length, offered compression and offered chunk size
+             */
+            private void handleTransferRequest(Message msg){
+                // get the package of requesting
+                String senderName = ((String[]) msg.getContent())[0];
+                this.outputFileName = ((String[]) msg.getContent())[1];
+                this.cipherMode = ((String[]) msg.getContent())[2];
+                this.cipherAlgorithm = ((String[]) msg.getContent())[3];
+                this.fileLength = Long.parseLong(((String[]) msg.getContent())[4]);
+                // agree on the compression if it is offered
+                this.compression = FrameCompressor.COMPRESSION_DEFLATE.equals(((String[]) msg.getContent())[5]) ? FrameCompressor.COMPRESSION_DEFLATE : FrameCompressor.COMPRESSION_NONE;
+                // agree on the chunk size, as near to the offered one as this receiver allows
+                this.chunkSize = FileOperator.agreeChunkSize(Integer.parseInt(((String[]) msg.getContent())[6]));
+
+                // tell this receiver, a sender wants to send you a file:..., would you like to accept the transmission
+                int option = JOptionPane.showConfirmDialog(null, "User " + senderName + " wants to send you a file: " + this.outputFileName + ", do you accept it?", "File transmission request", JOptionPane.YES_NO_OPTION);
+
+                // if this receiver accepts,
+                if(option == JOptionPane.OK_OPTION){
+                    // ask this receiver the secret key
+                    this.keyStr = JOptionPane.showInputDialog(null, "Please enter the secret key of this transmission", "Secret key for decipher", JOptionPane.PLAIN_MESSAGE);
+                    // check if the key is inputted (and has the right length for Triple DES)
+                    while(!CipherToolFactory.isValidKey(this.cipherAlgorithm, this.keyStr)){
+                        // if not, we let the receiver input the key again
+                        this.keyStr = JOptionPane.showInputDialog(null, "Please enter the secret key of this transmission", "Secret key for decipher", JOptionPane.PLAIN_MESSAGE);
+                    }
+
+                    // show another window to ask for the download dir
+                    this.downloadDirChoosingUI = new DownloadDirChoosingUI(this);
+
+                // The receiver does not accept
+                }else {
+                    // send a reject message back to the sender
+                    sendRejectMessage();
+                }
+            }
+
+            /**
+             * if the type is "CHUNK_MANIFEST", the content must be the chunk manifest of the file
+             */
+            private void handleChunkManifest(Message msg) throws IOException {
+                this.chunkManifest = (ChunkManifest) msg.getContent();
+                if (!this.chunkManifest.isValid() || this.chunkManifest.getFileLength() != this.fileLength){
+                    throw new IOException("The chunk manifest does not match the file of " + this.fileLength + " bytes");
+                }
+
+                // copy the chunks found in the files downloaded before, then tell the sender which chunks are not needed
+                sendHeldChunks();
+            }
+
+            /**
+             * if the type is "CIPHER_IV", the content must be the IV of the encrypted blocks coming next
+             */
+            private void handleCipherIV(Message msg) throws IOException {
+                this.iv = Long.parseLong((String) msg.getContent());
+
+                // initialize the file decipher operator, which fills the chunks not found locally
+                this.fileDecipherOperator = new FileDecipherOperator(CipherToolFactory.createDecipherTool(cipherAlgorithm, cipherMode, Key.getInstance(keyStr), iv), this.downloadSink, this.chunkManifest.getMissingRanges(this.heldChunks), this.chunkSize, this.compression.equals(FrameCompressor.COMPRESSION_DEFLATE), new ChunkVerifier(this.chunkManifest, this.chunker, this.heldChunks));
+
+                // the data frames come right after the IV, they are deciphered and written into the local place
+                // (the chunks are verified when the Merkle root comes)
+                try {
+                    grantCredits(CREDIT_WINDOW);
+                    downloadDataFrames();
+                } catch (EOFException e) {
+                    // the frames have stopped before the last one, because the sender has given up,
+                    // its TRANSFER_FAILED is the next message
+                    this.fileDecipherOperator.abort();
+                } catch (IOException e) {
+                    // the file cannot be used (e.g. wrong key, or broken frames), tell the sender
+                    this.fileDecipherOperator.abort();
+                    giveUpDownload(e.getMessage());
+                }
+            }
+
+            /**
+             * if the type is "MERKLE_ROOT", the content must be the Merkle root of the chunks the sender has read,
+             * which comes right after the last block
+             */
+            private void handleMerkleRoot(Message msg) throws IOException {
+                verifyDownload((byte[]) msg.getContent());
+            }
+
+            /**
+             * if the type is "TRANSFER_FAILED", the content must be the reason why the sender gave up the file,
+             * which comes in place of the rest of the data frames
+             */
+            private void handleTransferFailed(Message msg) throws IOException {
+                giveUpDownload("The sender gave up: " + msg.getContent());
+            }
+
+            /**
+             * Check the downloaded file after the last block:
+             * the Merkle root of the sender must match the manifest (otherwise the file was changed while it was being sent),
+             * and every received chunk must match its id, otherwise the broken chunks are asked for again.
+             * @param merkleRoot The Merkle root of the chunks the sender has read
+             */
+            private void verifyDownload(byte[] merkleRoot) throws IOException {
+                if (!Arrays.equals(merkleRoot, this.chunkManifest.getMerkleRoot())){
+                    this.fileDecipherOperator.abort();
+                    giveUpDownload("The file was changed while it was being sent");
+                    return;
+                }
+
+                int[] failedChunks = this.fileDecipherOperator.getFailedChunks();
+                if (failedChunks.length == 0){
+                    // all the chunks are right, the download file is moved into its place
+                    this.fileDecipherOperator.finish();
+
+                    // the chunks of this file can be used by the later downloads
+                    chunkStore.addFile(this.downloadFile, this.chunkManifest);
+
+                    oos.writeObject(new Message(Message.TRANSFER_VERIFIED, "verified"));
+                    oos.flush();
+
+                    // transmission done, stop listening to the sender peer
+                    isRunning = false;
+
+                    showOnScreen(">> NOTICE: Download finished and verified!");
+                    System.out.println("--- download finished, " + BufferPool.getShared() + " ---");
+                    return;
+                }
+
+                if (++this.repairRound > MAX_REPAIR_ROUNDS){
+                    this.fileDecipherOperator.abort();
+                    giveUpDownload(failedChunks.length + " chunks are still broken after " + MAX_REPAIR_ROUNDS + " retries");
+                    return;
+                }
+
+                // the chunks received this time are all right except for the broken ones, which will be written again
+                Arrays.fill(this.heldChunks, true);
+                long failedLength = 0;
+                for (int failedChunk : failedChunks){
+                    this.heldChunks[failedChunk] = false;
+                    failedLength += this.chunkManifest.getLength(failedChunk);
+                }
+                this.downloadSink.forget(failedLength);
+
+                showOnScreen(">> NOTICE: " + failedChunks.length + " chunks came broken, asking for them again...");
+                oos.writeObject(new Message(Message.REPAIR_REQUEST, failedChunks));
+                oos.flush();
+            }
+
+            /**
+             * Give up the download, and tell the sender why.
+             * @param reason Why the download is given up
+             */
+            private void giveUpDownload(String reason) throws IOException {
+                showOnScreen(">> NOTICE: Download failed: " + reason);
+
+                oos.writeObject(new Message(Message.TRANSFER_FAILED, reason));
+                oos.flush();
+
+                // transmission done, stop listening to the sender peer
+                isRunning = false;
+                System.out.println("--- download given up, " + BufferPool.getShared() + " ---");
+            }
+
             /**
              * Send a message to tell the sender, I rejected your sending request.
              */
@@ -647,20 +1052,72 @@ public class Peer implements ActionListener {
             }
 
             /**
-             * For a cipher block received from the sender, we decipher it into the new data block,
-             * then write this decrypted data block into the local place.
-             * @param cipherBlock A 64-bit (8-byte) encrypted block received from the sender.
-             * @param isFinal Whether this block is the last one of this file transmission.
+             * Copy the chunks already held (in the files downloaded before) into the download file,
+             * then tell the sender whether each chunk is held, so that only the others are sent.
+             */
+            private void sendHeldChunks() throws IOException {
+                // the ids of the chunks are keyed by the secret key of this transmission
+                this.chunker = new ContentDefinedChunker(keyStr);
+                this.heldChunks = chunkStore.copyHeldChunks(this.chunkManifest, this.chunker, this.downloadSink);
+
+                int heldNum = 0;
+                for (boolean held : this.heldChunks){
+                    if (held){
+                        heldNum++;
+                    }
+                }
+                showOnScreen(">> NOTICE: " + heldNum + " of " + this.heldChunks.length + " chunks of the file are found locally");
+
+                Message msg = new Message(Message.HELD_CHUNKS, this.heldChunks);
+                oos.writeObject(msg);
+                oos.flush();
+            }
+
+            /**
+             * Read the data frames from the sender until the one holding the last block,
+             * the cipher blocks of each frame are deciphered, then written into the local place.
+             * Every half of the credit window, the sender is given credits for the frames written since the last ones.
+             */
+            private void downloadDataFrames() throws IOException {
+                int frameType;
+                boolean isFinal;
+                int framesSinceGrant = 0;
+                do {
+                    frameType = DataFrame.readType(this.ois);
+                    isFinal = DataFrame.isFinal(frameType);
+                    int len = DataFrame.readLength(this.ois);
+                    if (this.frameData == null || this.frameData.length < len){
+                        this.frameData = new byte[len];
+                    }
+                    // the data of a raw frame comes after the object stream, the others inside it (see DataFrame)
+                    DataInput frameIn = DataFrame.isRaw(frameType) ? this.rawIn : this.ois;
+                    frameIn.readFully(this.frameData, 0, len);
+
+                    fileDecipherOperator.decipherAndDownload(this.frameData, 0, len, isFinal);
+
+                    // the frame is written, so the sender can send more
+                    if (++framesSinceGrant == CREDIT_WINDOW / 2 && !isFinal){
+                        grantCredits(framesSinceGrant);
+                        framesSinceGrant = 0;
+                    }
+                } while (!isFinal);
+            }
+
+            /**
+             * Let the sender send more data frames.
+             * Message type should be CREDIT
+             * @param frameNumber How many more frames this receiver is ready to take
              */
-            private void downloadDataBlock(byte[] cipherBlock, boolean isFinal) throws IOException {
-                fileDecipherOperator.decipherAndDownloadBlock(cipherBlock, isFinal, this.bos);
+            private void grantCredits(int frameNumber) throws IOException {
+                oos.writeObject(new Message(Message.CREDIT, frameNumber));
+                oos.flush();
             }
 
             /**
-             * Send the ACK of the transmission acceptation to the sender
+             * Send the ACK of the transmission acceptation to the sender, with the compression and the chunk size agreed on
              */
             private void sendACKAcceptTransfer(){
-                Message msg = new Message(Message.ACK_ACCEPT_TRANSFER, "transfer accepted");
+                Message msg = new Message(Message.ACK_ACCEPT_TRANSFER, new String[]{this.compression, String.valueOf(this.chunkSize)});
                 try {
                     oos.writeObject(msg);
                     oos.flush();
@@ -701,12 +1158,11 @@ public class Peer implements ActionListener {
                     String absoluteFilename = this.downloadDir + "deciphered-" + this.outputFileName;
                     // close this dialog window
                     downloadDirChoosingUI.dispose();
-                    // initialize the file decipher operator
-                    this.fileDecipherOperator = new FileDecipherOperator(new DecipherTool(new Key(keyStr)), new File(absoluteFilename));
-                    // initialize the file output stream to write in the download file
+                    // preallocate the download file
+                    this.downloadFile = new File(absoluteFilename);
                     try {
-                        this.bos = new BufferedOutputStream(new FileOutputStream(absoluteFilename));
-                    } catch (FileNotFoundException ex) {
+                        this.downloadSink = new PositionalFileSink(this.downloadFile, fileLength);
+                    } catch (IOException ex) {
                         ex.printStackTrace();
                     }
                     // then an ACK should be sent to the sender
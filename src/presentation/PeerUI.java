@@ -1,5 +1,6 @@
 package presentation;
 
+import DESAlgorithm.cipherComponents.CipherToolFactory;
 import P2PFileTransfer.peer.Peer;
 
 import javax.swing.*;
@@ -23,6 +24,8 @@ public class PeerUI extends JFrame {
     // operation section - key section
     public JLabel mJlKey;
     public JTextField mJtfKeyInput;
+    public JComboBox<String> mJcbAlgorithm;
+    public JComboBox<String> mJcbMode;
 
     // operation section - file chosen section
     public JButton mJbFileChosen;
@@ -61,9 +64,13 @@ public class PeerUI extends JFrame {
         // Panel of secret key input
         mJpKeyPanel = new JPanel();
         mJlKey = new JLabel("Secret Key: ");
-        mJtfKeyInput = new JTextField(20);
+        mJtfKeyInput = new JTextField(12);
+        mJcbAlgorithm = new JComboBox<>(CipherToolFactory.ALGORITHMS);
+        mJcbMode = new JComboBox<>(CipherToolFactory.MODES);
         mJpKeyPanel.add(mJlKey);
         mJpKeyPanel.add(mJtfKeyInput);
+        mJpKeyPanel.add(mJcbAlgorithm);
+        mJpKeyPanel.add(mJcbMode);
 
         // Panel of file chosen
         mJpFilePanel = new JPanel();
@@ -131,6 +138,8 @@ public class PeerUI extends JFrame {
         this.mJbConfirm.setEnabled(isEnable);
         this.mJbReceiverChosen.setEnabled(isEnable);
         this.mJbFileChosen.setEnabled(isEnable);
+        this.mJcbAlgorithm.setEnabled(isEnable);
+        this.mJcbMode.setEnabled(isEnable);
     }
 
     /**
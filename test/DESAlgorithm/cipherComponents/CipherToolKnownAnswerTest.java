@@ -0,0 +1,228 @@
+package DESAlgorithm.cipherComponents;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static testing.Assert.*;
+
+/**
+ * Known-answer tests of every engine and mode of operation, against the DES and DESede ciphers of the Java platform (JCE).
+ * The lengths cover a single block, a bitsliced batch (64 blocks) with a few blocks after it, and enough blocks for the parallel segments of CTR and CBC.
+ */
+public class CipherToolKnownAnswerTest {
+
+    // The lengths of the plain texts, in bytes
+    private static final int[] LENGTHS = {8, 64 * 8 + 24, 256 * 1024 + 40};
+
+    // The key strings of single DES, and of Triple DES (16 and 24 bytes)
+    private static final String DES_KEY = "secret!";
+    private static final String[] TRIPLE_DES_KEYS = {"0123456789abcdef", "a 24-byte 3DES key here!"};
+
+    // The IV of CTR and CBC, close to the end of the counter so that the counter wraps around
+    private static final long IV = 0xfffffffffffff000L;
+
+    public static void main(String[] args) throws Exception {
+        publishedVector();
+        singleDESEngines();
+        tripleDESEngine();
+        modesOfOperation();
+        directBuffers();
+
+        System.out.println("CipherToolKnownAnswerTest: OK");
+    }
+
+    /**
+     * The example worked through in many text books: the key 133457799BBCDFF1 enciphers 0123456789ABCDEF into 85E813540F0AB405.
+     * The key string "\t\u001a+<M^ox" gives exactly these key bytes once the parity bits are added.
+     */
+    private static void publishedVector() throws Exception {
+        Key key = new Key("\t\u001a+<M^ox");
+        byte[] keyBytes = keyBytes(key.getKeyStr(), 0);
+        assertArrayEquals("key bytes", hex("133457799BBCDFF1"), keyBytes);
+
+        byte[] plainText = hex("0123456789ABCDEF");
+        byte[] expected = hex("85E813540F0AB405");
+        assertArrayEquals("JCE", expected, jce("DES/ECB/NoPadding", Cipher.ENCRYPT_MODE, keyBytes, null, plainText));
+        for (EncipherTool tool : new EncipherTool[]{new EncipherTool(key), new PackedEncipherTool(key), new BitslicedEncipherTool(key)}){
+            assertArrayEquals(tool.getClass().getSimpleName() + " single block", expected, tool.encipher(plainText));
+        }
+        for (DecipherTool tool : new DecipherTool[]{new DecipherTool(key), new PackedDecipherTool(key), new BitslicedDecipherTool(key)}){
+            assertArrayEquals(tool.getClass().getSimpleName() + " single block", plainText, tool.decipher(expected));
+        }
+    }
+
+    /**
+     * The bit-array, packed and bitsliced engines of single DES, in both directions.
+     */
+    private static void singleDESEngines() throws Exception {
+        Key key = Key.getInstance(DES_KEY);
+        EncipherTool[] encipherTools = {new EncipherTool(key), new PackedEncipherTool(key), new BitslicedEncipherTool(key)};
+        DecipherTool[] decipherTools = {new DecipherTool(key), new PackedDecipherTool(key), new BitslicedDecipherTool(key)};
+
+        for (int len : LENGTHS){
+            byte[] plainText = randomBytes(len);
+            byte[] expected = jce("DES/ECB/NoPadding", Cipher.ENCRYPT_MODE, keyBytes(DES_KEY, 0), null, plainText);
+
+            for (int i = 0; i < encipherTools.length; i++){
+                String name = encipherTools[i].getClass().getSimpleName() + " " + len;
+                byte[] cipherText = new byte[len];
+                encipherTools[i].encipher(plainText, 0, len, cipherText, 0);
+                assertArrayEquals(name, expected, cipherText);
+
+                byte[] decipheredText = new byte[len];
+                decipherTools[i].decipher(cipherText, 0, len, decipheredText, 0);
+                assertArrayEquals(decipherTools[i].getClass().getSimpleName() + " " + len, plainText, decipheredText);
+            }
+
+            // a single block goes through the block methods as well
+            assertArrayEquals("single block", Arrays.copyOf(expected, 8), encipherTools[0].encipher(Arrays.copyOf(plainText, 8)));
+        }
+    }
+
+    /**
+     * The fused Triple DES (EDE) engine, with 2 and 3 different keys.
+     */
+    private static void tripleDESEngine() throws Exception {
+        for (String keyStr : TRIPLE_DES_KEYS){
+            Key key = Key.getInstance(keyStr);
+            for (int len : LENGTHS){
+                byte[] plainText = randomBytes(len);
+                byte[] expected = jce("DESede/ECB/NoPadding", Cipher.ENCRYPT_MODE, tripleDESKeyBytes(keyStr), null, plainText);
+
+                byte[] cipherText = new byte[len];
+                new TripleDESEncipherTool(key).encipher(plainText, 0, len, cipherText, 0);
+                assertArrayEquals("3DES " + keyStr.length() + " " + len, expected, cipherText);
+
+                byte[] decipheredText = new byte[len];
+                new TripleDESDecipherTool(key).decipher(cipherText, 0, len, decipheredText, 0);
+                assertArrayEquals("3DES decipher " + keyStr.length() + " " + len, plainText, decipheredText);
+            }
+        }
+    }
+
+    /**
+     * Every algorithm with every mode of operation, as the tools of a transfer are made by the CipherToolFactory.
+     */
+    private static void modesOfOperation() throws Exception {
+        for (String algorithm : CipherToolFactory.ALGORITHMS){
+            boolean tripleDES = CipherToolFactory.ALGORITHM_3DES.equals(algorithm);
+            String keyStr = tripleDES ? TRIPLE_DES_KEYS[1] : DES_KEY;
+            byte[] keyBytes = tripleDES ? tripleDESKeyBytes(keyStr) : keyBytes(keyStr, 0);
+
+            for (String mode : CipherToolFactory.MODES){
+                String transformation = (tripleDES ? "DESede/" : "DES/") + mode + "/NoPadding";
+                for (int len : LENGTHS){
+                    String name = algorithm + " " + mode + " " + len;
+                    byte[] plainText = randomBytes(len);
+                    byte[] iv = CipherToolFactory.MODE_ECB.equals(mode) ? null : ByteBuffer.allocate(8).putLong(IV).array();
+                    byte[] expected = jce(transformation, Cipher.ENCRYPT_MODE, keyBytes, iv, plainText);
+
+                    // encipher in 2 calls, the second one going on from where the first one stopped
+                    EncipherTool encipherTool = CipherToolFactory.createEncipherTool(algorithm, mode, Key.getInstance(keyStr), IV);
+                    byte[] cipherText = new byte[len];
+                    int half = len / 16 * 8;
+                    encipherTool.encipher(plainText, 0, half, cipherText, 0);
+                    encipherTool.encipher(plainText, half, len - half, cipherText, half);
+                    assertArrayEquals(name, expected, cipherText);
+
+                    DecipherTool decipherTool = CipherToolFactory.createDecipherTool(algorithm, mode, Key.getInstance(keyStr), IV);
+                    byte[] decipheredText = new byte[len];
+                    decipherTool.decipher(cipherText, 0, half, decipheredText, 0);
+                    decipherTool.decipher(cipherText, half, len - half, decipheredText, half);
+                    assertArrayEquals(name + " decipher", plainText, decipheredText);
+
+                    // a tool starting at a later block gives the rest of the same cipher text (unless the mode can only go block by block)
+                    EncipherTool laterTool = CipherToolFactory.createEncipherTool(algorithm, mode, Key.getInstance(keyStr), IV).startingAt(half / 8);
+                    if (laterTool != null){
+                        byte[] rest = new byte[len - half];
+                        laterTool.encipher(plainText, half, len - half, rest, 0);
+                        assertArrayEquals(name + " starting at block " + half / 8, Arrays.copyOfRange(expected, half, len), rest);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The bulk methods on direct buffers (e.g. from the buffer pool) give the same cipher text as on arrays.
+     */
+    private static void directBuffers() throws Exception {
+        Key key = Key.getInstance(DES_KEY);
+        int len = LENGTHS[2];
+        byte[] plainText = randomBytes(len);
+        byte[] expected = jce("DES/ECB/NoPadding", Cipher.ENCRYPT_MODE, keyBytes(DES_KEY, 0), null, plainText);
+
+        for (EncipherTool tool : new EncipherTool[]{new EncipherTool(key), new BitslicedEncipherTool(key)}){
+            ByteBuffer in = ByteBuffer.allocateDirect(len);
+            in.put(plainText).flip();
+            ByteBuffer out = ByteBuffer.allocateDirect(len);
+            tool.encipher(in, out);
+
+            byte[] cipherText = new byte[len];
+            out.flip();
+            out.get(cipherText);
+            assertArrayEquals(tool.getClass().getSimpleName() + " direct buffers", expected, cipherText);
+        }
+    }
+
+    /**
+     * Run a cipher of the Java platform.
+     */
+    private static byte[] jce(String transformation, int cipherMode, byte[] keyBytes, byte[] iv, byte[] input) throws Exception {
+        Cipher cipher = Cipher.getInstance(transformation);
+        SecretKeySpec keySpec = new SecretKeySpec(keyBytes, transformation.substring(0, transformation.indexOf('/')));
+        if (iv == null){
+            cipher.init(cipherMode, keySpec);
+        }else {
+            cipher.init(cipherMode, keySpec, new IvParameterSpec(iv));
+        }
+        return cipher.doFinal(input);
+    }
+
+    /**
+     * The 8 key bytes made from a key string (as the Key does it): the UTF-8 bytes, filled with 0s,
+     * where a byte below 128 is shifted left with an odd parity bit added at its end.
+     */
+    private static byte[] keyBytes(String keyStr, int byteOffset){
+        byte[] strBytes = keyStr.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = new byte[8];
+        for (int i = 0; i < 8; i++){
+            int b = byteOffset + i < strBytes.length ? strBytes[byteOffset + i] & 0xff : 0;
+            if (b < 0x80){
+                b = (b << 1) | (Integer.bitCount(b) % 2 == 0 ? 1 : 0);
+            }
+            keyBytes[i] = (byte) b;
+        }
+        return keyBytes;
+    }
+
+    /**
+     * The 24 key bytes of Triple DES, where K3 is K1 for a 16-byte key string.
+     */
+    private static byte[] tripleDESKeyBytes(String keyStr){
+        boolean threeKeys = keyStr.getBytes(StandardCharsets.UTF_8).length == 24;
+        ByteBuffer keyBytes = ByteBuffer.allocate(24);
+        keyBytes.put(keyBytes(keyStr, 0)).put(keyBytes(keyStr, 8)).put(keyBytes(keyStr, threeKeys ? 16 : 0));
+        return keyBytes.array();
+    }
+
+    private static byte[] randomBytes(int len){
+        byte[] bytes = new byte[len];
+        new Random(len).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] hex(String hex){
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++){
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,129 @@
+package DESAlgorithm.fileOperations;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static testing.Assert.*;
+
+/**
+ * Tests the checks of the chunks going by against the chunk manifest, and the Merkle root made from them,
+ * both when the bytes are hashed right away (update) and when whole chunks are hashed on several threads (updateOn).
+ */
+public class ChunkVerifierTest {
+
+    // The secret key of the transmission, which keys the chunk ids
+    private static final String KEY_STR = "secret!";
+
+    public static void main(String[] args) throws Exception {
+        byte[] fileData = new byte[600 * 1024 + 123];
+        new Random(18).nextBytes(fileData);
+        File file = File.createTempFile("chunk-verifier-test", ".bin");
+        try {
+            Files.write(file.toPath(), fileData);
+            ContentDefinedChunker chunker = new ContentDefinedChunker(KEY_STR);
+            ChunkManifest manifest = chunker.chunk(file);
+            assertTrue("enough chunks", manifest.getChunkNumber() > 4);
+
+            for (boolean onThreads : new boolean[]{false, true}){
+                intactChunks(manifest, chunker, fileData, onThreads);
+                corruptedChunk(manifest, chunker, fileData, onThreads);
+                heldChunks(manifest, chunker, fileData, onThreads);
+            }
+            missingBytes(manifest, chunker, fileData);
+        }finally {
+            file.delete();
+        }
+
+        System.out.println("ChunkVerifierTest: OK");
+    }
+
+    /**
+     * No chunk fails when the bytes are the ones of the file, and the root is the one of the manifest.
+     */
+    private static void intactChunks(ChunkManifest manifest, ContentDefinedChunker chunker, byte[] fileData, boolean onThreads) throws InterruptedException {
+        ChunkVerifier verifier = verify(manifest, chunker, new boolean[manifest.getChunkNumber()], fileData, onThreads);
+        assertEquals("failed chunks", 0, verifier.getFailedChunks().length);
+        assertArrayEquals("Merkle root", manifest.getMerkleRoot(), verifier.getMerkleRoot());
+    }
+
+    /**
+     * A single flipped bit fails exactly the chunk holding it, and the root is not the one of the manifest any more.
+     */
+    private static void corruptedChunk(ChunkManifest manifest, ContentDefinedChunker chunker, byte[] fileData, boolean onThreads) throws InterruptedException {
+        for (int broken : new int[]{0, manifest.getChunkNumber() / 2, manifest.getChunkNumber() - 1}){
+            byte[] corrupted = fileData.clone();
+            corrupted[(int) manifest.getOffset(broken) + manifest.getLength(broken) / 2] ^= 0x10;
+
+            ChunkVerifier verifier = verify(manifest, chunker, new boolean[manifest.getChunkNumber()], corrupted, onThreads);
+            assertArrayEquals("failed chunks", new int[]{broken}, verifier.getFailedChunks());
+            assertTrue("Merkle root of chunk " + broken + " broken", !Arrays.equals(manifest.getMerkleRoot(), verifier.getMerkleRoot()));
+        }
+    }
+
+    /**
+     * Only the chunks not held go by, and the held ones keep their ids from the manifest.
+     */
+    private static void heldChunks(ChunkManifest manifest, ContentDefinedChunker chunker, byte[] fileData, boolean onThreads) throws InterruptedException {
+        boolean[] held = new boolean[manifest.getChunkNumber()];
+        for (int i = 0; i < held.length; i += 2){
+            held[i] = true;
+        }
+
+        // the bytes of the missing chunks, one after another
+        byte[] missingData = new byte[fileData.length];
+        int missingLen = 0;
+        for (int i = 0; i < held.length; i++){
+            if (!held[i]){
+                System.arraycopy(fileData, (int) manifest.getOffset(i), missingData, missingLen, manifest.getLength(i));
+                missingLen += manifest.getLength(i);
+            }
+        }
+
+        ChunkVerifier verifier = verify(manifest, chunker, held, Arrays.copyOf(missingData, missingLen), onThreads);
+        assertEquals("failed chunks", 0, verifier.getFailedChunks().length);
+        assertArrayEquals("Merkle root", manifest.getMerkleRoot(), verifier.getMerkleRoot());
+
+        // a broken missing chunk is reported with its index in the file
+        missingData[manifest.getLength(1) / 2] ^= 1;
+        verifier = verify(manifest, chunker, held, Arrays.copyOf(missingData, missingLen), onThreads);
+        assertArrayEquals("failed chunks", new int[]{1}, verifier.getFailedChunks());
+    }
+
+    /**
+     * The chunks whose bytes did not all come (e.g. the connection was lost) fail too.
+     */
+    private static void missingBytes(ChunkManifest manifest, ContentDefinedChunker chunker, byte[] fileData){
+        int last = manifest.getChunkNumber() - 1;
+        ChunkVerifier verifier = new ChunkVerifier(manifest, chunker, new boolean[manifest.getChunkNumber()]);
+        verifier.update(fileData, 0, (int) manifest.getOffset(last - 1) + 1);
+        assertArrayEquals("failed chunks", new int[]{last - 1, last}, verifier.getFailedChunks());
+    }
+
+    /**
+     * Give the bytes to a verifier in pieces of random lengths, either hashed right away or on a pool of threads.
+     */
+    private static ChunkVerifier verify(ChunkManifest manifest, ContentDefinedChunker chunker, boolean[] held, byte[] data, boolean onThreads) throws InterruptedException {
+        ChunkVerifier verifier = new ChunkVerifier(manifest, chunker, held);
+        ThreadPoolExecutor threads = new ThreadPoolExecutor(3, 3, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(4), new ThreadPoolExecutor.CallerRunsPolicy());
+        Random random = new Random(data.length);
+        for (int offset = 0; offset < data.length; ){
+            int len = Math.min(data.length - offset, 1 + random.nextInt(20000));
+            if (onThreads){
+                verifier.updateOn(data, offset, len, threads);
+            }else {
+                verifier.update(data, offset, len);
+            }
+            offset += len;
+        }
+        threads.shutdown();
+        assertTrue("threads done", threads.awaitTermination(10, TimeUnit.SECONDS));
+        return verifier;
+    }
+
+}
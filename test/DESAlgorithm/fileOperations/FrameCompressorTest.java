@@ -0,0 +1,151 @@
+package DESAlgorithm.fileOperations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static testing.Assert.*;
+
+/**
+ * Tests the frames of the FrameCompressor, which the FrameDecompressor reads back from deciphered data split at any point.
+ */
+public class FrameCompressorTest {
+
+    // The largest frame used by the tests
+    private static final int MAX_FRAME_LENGTH = 16 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        framesAreWholeBlocks();
+        roundTripsSplitEverywhere();
+        roundTripsSplitAtRandom();
+        brokenHeaderIsRejected();
+
+        System.out.println("FrameCompressorTest: OK");
+    }
+
+    /**
+     * Every frame can be divided by 8, and data which does not compress is stored as it is.
+     */
+    private static void framesAreWholeBlocks(){
+        FrameCompressor compressor = new FrameCompressor(MAX_FRAME_LENGTH);
+        Random random = new Random(17);
+        for (int len : new int[]{1, 7, 8, 9, 1000, compressor.getMaxDataLength()}){
+            byte[] data = new byte[MAX_FRAME_LENGTH];
+            random.nextBytes(data);
+            int frameLen = compressor.compress(data, len);
+            assertEquals("frame of " + len + " random bytes", FrameCompressor.alignToBlock(FrameCompressor.HEADER_LENGTH + len), frameLen);
+
+            data = new byte[MAX_FRAME_LENGTH];
+            frameLen = compressor.compress(data, len);
+            assertTrue("frame of " + len + " zeros is whole blocks", frameLen % 8 == 0 && frameLen <= FrameCompressor.alignToBlock(FrameCompressor.HEADER_LENGTH + len));
+        }
+        compressor.end();
+    }
+
+    /**
+     * A few frames come back whichever byte the data is split at.
+     */
+    private static void roundTripsSplitEverywhere() throws IOException {
+        List<byte[]> frames = someFrames(new Random(1), 6, 300);
+        byte[] stream = compressAll(frames);
+        for (int split = 0; split <= stream.length; split++){
+            assertFramesEqual("split at " + split, frames, decompressAll(stream, new int[]{split, stream.length - split}));
+        }
+    }
+
+    /**
+     * Many frames, from a single byte up to the largest one, come back when the data is split into pieces of random lengths.
+     */
+    private static void roundTripsSplitAtRandom() throws IOException {
+        Random random = new Random(2);
+        List<byte[]> frames = someFrames(random, 60, new FrameCompressor(MAX_FRAME_LENGTH).getMaxDataLength());
+        byte[] stream = compressAll(frames);
+
+        for (int round = 0; round < 20; round++){
+            List<Integer> pieces = new ArrayList<>();
+            for (int left = stream.length; left > 0; ){
+                int piece = Math.min(left, 1 + random.nextInt(round % 2 == 0 ? 64 : 3 * MAX_FRAME_LENGTH));
+                pieces.add(piece);
+                left -= piece;
+            }
+            assertFramesEqual("round " + round, frames, decompressAll(stream, pieces.stream().mapToInt(Integer::intValue).toArray()));
+        }
+    }
+
+    /**
+     * A header which cannot have been made by the compressor (e.g. the data was deciphered with a wrong key) is rejected.
+     */
+    private static void brokenHeaderIsRejected(){
+        FrameDecompressor decompressor = new FrameDecompressor(MAX_FRAME_LENGTH);
+        assertThrows("empty frame", IOException.class, () -> decompressor.collect(new byte[8], 0, 8));
+        assertThrows("stored more than the data", IOException.class, () -> new FrameDecompressor(MAX_FRAME_LENGTH).collect(new byte[]{0, 0, 0, 8, 0, 0, 0, 9}, 0, 8));
+        assertThrows("too much data", IOException.class, () -> new FrameDecompressor(MAX_FRAME_LENGTH).collect(new byte[]{0, 1, 0, 0, 0, 0, 0, 1}, 0, 8));
+    }
+
+    /**
+     * Make frames of text (which compresses), zeros, and random bytes (which does not).
+     */
+    private static List<byte[]> someFrames(Random random, int frameNum, int maxLen){
+        byte[] text = "The quick brown fox jumps over the lazy dog. ".getBytes(StandardCharsets.UTF_8);
+        List<byte[]> frames = new ArrayList<>();
+        for (int i = 0; i < frameNum; i++){
+            byte[] data = new byte[1 + random.nextInt(maxLen)];
+            if (i % 3 == 0){
+                for (int j = 0; j < data.length; j++){
+                    data[j] = text[j % text.length];
+                }
+            }else if (i % 3 == 1){
+                random.nextBytes(data);
+            }
+            frames.add(data);
+        }
+        return frames;
+    }
+
+    private static byte[] compressAll(List<byte[]> frames){
+        FrameCompressor compressor = new FrameCompressor(MAX_FRAME_LENGTH);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        byte[] frame = new byte[MAX_FRAME_LENGTH];
+        for (byte[] data : frames){
+            System.arraycopy(data, 0, frame, 0, data.length);
+            stream.write(frame, 0, compressor.compress(frame, data.length));
+        }
+        compressor.end();
+        return stream.toByteArray();
+    }
+
+    /**
+     * Read the frames back from the data given piece by piece, as the deciphered chunks come.
+     */
+    private static List<byte[]> decompressAll(byte[] stream, int[] pieces) throws IOException {
+        FrameDecompressor decompressor = new FrameDecompressor(MAX_FRAME_LENGTH);
+        byte[] output = new byte[decompressor.getMaxDataLength()];
+        List<byte[]> frames = new ArrayList<>();
+
+        int offset = 0;
+        for (int piece : pieces){
+            int end = offset + piece;
+            while (offset < end){
+                offset += decompressor.collect(stream, offset, end - offset);
+                if (decompressor.isFrameComplete()){
+                    frames.add(Arrays.copyOf(output, decompressor.decompress(output)));
+                }
+            }
+        }
+        assertTrue("no partial frame at the end", !decompressor.hasPartialFrame());
+        decompressor.end();
+        return frames;
+    }
+
+    private static void assertFramesEqual(String message, List<byte[]> expected, List<byte[]> actual){
+        assertEquals(message + ": number of frames", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++){
+            assertArrayEquals(message + ": frame " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+}
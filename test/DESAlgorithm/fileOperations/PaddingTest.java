@@ -0,0 +1,66 @@
+package DESAlgorithm.fileOperations;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static testing.Assert.*;
+
+/**
+ * Tests the PKCS#5 padding of the last block (FileOperator.addPadding and removePadding).
+ */
+public class PaddingTest {
+
+    public static void main(String[] args) throws Exception {
+        roundTrips();
+        paddingIsAlwaysAdded();
+        brokenPaddingIsRejected();
+
+        System.out.println("PaddingTest: OK");
+    }
+
+    /**
+     * The data comes back with its length, around the ends of the blocks (0, 7, 8 and 9 bytes) and a bit further.
+     */
+    private static void roundTrips() throws IOException {
+        for (int len : new int[]{0, 1, 7, 8, 9, 15, 16, 17, 4096}){
+            byte[] data = new byte[len + 8];
+            for (int i = 0; i < len; i++){
+                // the data may end with bytes which look like padding
+                data[i] = (byte) (i % 3 == 0 ? 1 : 8);
+            }
+            byte[] original = Arrays.copyOf(data, len);
+
+            int paddedLen = FileOperator.addPadding(data, len);
+            assertEquals("padded length of " + len, (len / 8 + 1) * 8, paddedLen);
+            assertEquals("unpadded length of " + len, len, FileOperator.removePadding(data, paddedLen));
+            assertArrayEquals("data of " + len, original, Arrays.copyOf(data, len));
+        }
+    }
+
+    /**
+     * A whole block of padding follows data ending at the end of a block, so the last byte always tells the padding length.
+     */
+    private static void paddingIsAlwaysAdded(){
+        byte[] data = new byte[16];
+        assertEquals("padded length", 16, FileOperator.addPadding(data, 8));
+        for (int i = 8; i < 16; i++){
+            assertEquals("padding byte " + i, 8, data[i]);
+        }
+
+        data = new byte[16];
+        assertEquals("padded length", 8, FileOperator.addPadding(data, 7));
+        assertEquals("padding byte", 1, data[7]);
+    }
+
+    /**
+     * A padding which cannot have been added (e.g. the blocks were deciphered with a wrong key) is rejected.
+     */
+    private static void brokenPaddingIsRejected(){
+        assertThrows("no data", IOException.class, () -> FileOperator.removePadding(new byte[0], 0));
+        assertThrows("padding of 0", IOException.class, () -> FileOperator.removePadding(new byte[8], 8));
+        assertThrows("padding of 9", IOException.class, () -> FileOperator.removePadding(new byte[]{9, 9, 9, 9, 9, 9, 9, 9, 9}, 9));
+        assertThrows("padding longer than the data", IOException.class, () -> FileOperator.removePadding(new byte[]{3, 3}, 2));
+        assertThrows("padding bytes differ", IOException.class, () -> FileOperator.removePadding(new byte[]{0, 0, 0, 0, 0, 2, 3, 3}, 8));
+    }
+
+}
@@ -0,0 +1,133 @@
+package P2PFileTransfer.Packet;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+import static testing.Assert.*;
+
+/**
+ * Tests the layout of the data frames: the varint lengths, the checks of the reader,
+ * and the frames going through an object stream between messages (the raw frames too).
+ */
+public class DataFrameTest {
+
+    public static void main(String[] args) throws Exception {
+        varintLengths();
+        lengthRoundTrips();
+        invalidFramesAreRejected();
+        framesBetweenMessages();
+
+        System.out.println("DataFrameTest: OK");
+    }
+
+    /**
+     * The length takes 1 byte up to 127, 2 bytes from 128, and so on, up to 5 bytes for the largest int.
+     */
+    private static void varintLengths(){
+        int[][] lengthAndBytes = {
+                {0, 1}, {127, 1},
+                {128, 2}, {16383, 2},
+                {16384, 3}, {(1 << 21) - 1, 3},
+                {1 << 21, 4}, {(1 << 28) - 1, 4},
+                {1 << 28, 5}, {Integer.MAX_VALUE, 5}};
+        byte[] header = new byte[DataFrame.MAX_HEADER_LENGTH];
+        for (int[] pair : lengthAndBytes){
+            assertEquals("header of " + pair[0], 1 + pair[1], DataFrame.writeHeader(header, DataFrame.ENCRYPTED_DATA, pair[0]));
+            assertEquals("type of " + pair[0], DataFrame.ENCRYPTED_DATA, header[0]);
+        }
+    }
+
+    /**
+     * The lengths a frame can have are read back as they were written, on both sides of the ends of the 1-, 2- and 3-byte varints.
+     */
+    private static void lengthRoundTrips() throws IOException {
+        int[] lengths = {0, 8, 120, 128, 136, 16376, 16384, 16392, 1 << 20, DataFrame.MAX_DATA_LENGTH};
+        for (int type : new int[]{DataFrame.ENCRYPTED_DATA, DataFrame.ENCRYPTED_DATA_FINAL, DataFrame.RAW_ENCRYPTED_DATA, DataFrame.RAW_ENCRYPTED_DATA_FINAL}){
+            for (int len : lengths){
+                byte[] header = new byte[DataFrame.MAX_HEADER_LENGTH];
+                int headerLen = DataFrame.writeHeader(header, type, len);
+
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(header, 0, headerLen));
+                assertEquals("type", type, DataFrame.readType(in));
+                assertEquals("length", len, DataFrame.readLength(in));
+                assertEquals("bytes left after " + len, 0, in.available());
+            }
+        }
+
+        assertTrue("final", DataFrame.isFinal(DataFrame.ENCRYPTED_DATA_FINAL) && DataFrame.isFinal(DataFrame.RAW_ENCRYPTED_DATA_FINAL));
+        assertTrue("not final", !DataFrame.isFinal(DataFrame.ENCRYPTED_DATA) && !DataFrame.isFinal(DataFrame.RAW_ENCRYPTED_DATA));
+        assertTrue("raw", DataFrame.isRaw(DataFrame.RAW_ENCRYPTED_DATA) && DataFrame.isRaw(DataFrame.RAW_ENCRYPTED_DATA_FINAL));
+        assertTrue("not raw", !DataFrame.isRaw(DataFrame.ENCRYPTED_DATA) && !DataFrame.isRaw(DataFrame.ENCRYPTED_DATA_FINAL));
+    }
+
+    /**
+     * Unknown types, lengths over MAX_DATA_LENGTH (e.g. a 5-byte varint), lengths which are not whole blocks,
+     * and varints longer than 5 bytes are rejected.
+     */
+    private static void invalidFramesAreRejected(){
+        for (int type : new int[]{0, 5, 255}){
+            assertThrows("type " + type, IOException.class, () -> DataFrame.readType(new DataInputStream(new ByteArrayInputStream(new byte[]{(byte) type}))));
+        }
+
+        for (int len : new int[]{DataFrame.MAX_DATA_LENGTH + 8, 1 << 28, Integer.MAX_VALUE - 7, 12}){
+            byte[] header = new byte[DataFrame.MAX_HEADER_LENGTH];
+            int headerLen = DataFrame.writeHeader(header, DataFrame.ENCRYPTED_DATA, len);
+            assertThrows("length " + len, IOException.class, () -> DataFrame.readLength(new DataInputStream(new ByteArrayInputStream(header, 1, headerLen - 1))));
+        }
+
+        byte[] tooLong = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0};
+        assertThrows("6-byte varint", IOException.class, () -> DataFrame.readLength(new DataInputStream(new ByteArrayInputStream(tooLong))));
+        assertThrows("cut varint", EOFException.class, () -> DataFrame.readLength(new DataInputStream(new ByteArrayInputStream(new byte[]{(byte) 0x80}))));
+    }
+
+    /**
+     * Frames written between messages are read back between them, as the receiver reads them.
+     * The data of a raw frame is written after the object stream (as the sender transfers it into the socket),
+     * and is read from the stream under the object input stream.
+     */
+    private static void framesBetweenMessages() throws Exception {
+        Random random = new Random(21);
+        byte[][] data = new byte[5][];
+        int[] types = {DataFrame.ENCRYPTED_DATA, DataFrame.RAW_ENCRYPTED_DATA, DataFrame.ENCRYPTED_DATA, DataFrame.RAW_ENCRYPTED_DATA, DataFrame.RAW_ENCRYPTED_DATA_FINAL};
+        int[] lengths = {16, 1024 * 1024, 1000 * 8, 8, 3000 * 8};
+        for (int i = 0; i < data.length; i++){
+            data[i] = new byte[lengths[i]];
+            random.nextBytes(data[i]);
+        }
+
+        // the sender side
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        BufferedOutputStream bufferedOut = new BufferedOutputStream(wire, 8192);
+        ObjectOutputStream oos = new ObjectOutputStream(bufferedOut);
+        oos.writeObject(new Message(Message.CIPHER_IV, "42"));
+        for (int i = 0; i < data.length; i++){
+            if (DataFrame.isRaw(types[i])){
+                DataFrame.writeHeader(oos, types[i], lengths[i]);
+                oos.flush();
+                bufferedOut.write(data[i]);
+                bufferedOut.flush();
+            }else {
+                DataFrame.write(oos, types[i], data[i], 0, lengths[i]);
+            }
+        }
+        oos.writeObject(new Message(Message.MERKLE_ROOT, new byte[]{1, 2, 3}));
+        oos.flush();
+
+        // the receiver side, with a buffer smaller than the frames
+        BufferedInputStream bufferedIn = new BufferedInputStream(new ByteArrayInputStream(wire.toByteArray()), 4096);
+        DataInputStream rawIn = new DataInputStream(bufferedIn);
+        ObjectInputStream ois = new ObjectInputStream(bufferedIn);
+        assertTrue("IV message", Message.CIPHER_IV.equals(((Message) ois.readObject()).getType()));
+        for (int i = 0; i < data.length; i++){
+            int type = DataFrame.readType(ois);
+            assertEquals("type of frame " + i, types[i], type);
+            byte[] frameData = new byte[DataFrame.readLength(ois)];
+            (DataFrame.isRaw(type) ? rawIn : ois).readFully(frameData);
+            assertArrayEquals("data of frame " + i, data[i], frameData);
+        }
+        Message root = (Message) ois.readObject();
+        assertTrue("root message", Arrays.equals(new byte[]{1, 2, 3}, (byte[]) root.getContent()));
+    }
+
+}
@@ -0,0 +1,28 @@
+package testing;
+
+import DESAlgorithm.cipherComponents.CipherToolKnownAnswerTest;
+import DESAlgorithm.fileOperations.ChunkVerifierTest;
+import DESAlgorithm.fileOperations.FrameCompressorTest;
+import DESAlgorithm.fileOperations.PaddingTest;
+import P2PFileTransfer.Packet.DataFrameTest;
+
+/**
+ * Runs all the tests, which are in the test source root (next to src), in the same packages as the classes they test.
+ * Build and run them with plain javac:
+ *     javac -encoding UTF-8 -d out $(find src test -name "*.java")
+ *     java -cp out testing.AllTests
+ * (the vector core is only tested when src-vector is compiled onto the same output and java is given --add-modules jdk.incubator.vector)
+ */
+public class AllTests {
+
+    public static void main(String[] args) throws Exception {
+        CipherToolKnownAnswerTest.main(args);
+        PaddingTest.main(args);
+        FrameCompressorTest.main(args);
+        ChunkVerifierTest.main(args);
+        DataFrameTest.main(args);
+
+        System.out.println("All tests passed");
+    }
+
+}
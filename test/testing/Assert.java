@@ -0,0 +1,61 @@
+package testing;
+
+import java.util.Arrays;
+
+/**
+ * The checks used by the tests.
+ * The tests run without a test framework: each test class has a main method running its cases one after another,
+ * and a failed check throws an AssertionError, which stops the run.
+ */
+public class Assert {
+
+    /**
+     * Something which is expected to throw
+     */
+    public interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    public static void assertTrue(String message, boolean condition){
+        if (!condition){
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void assertEquals(String message, long expected, long actual){
+        if (expected != actual){
+            throw new AssertionError(message + ": expected " + expected + ", but was " + actual);
+        }
+    }
+
+    public static void assertArrayEquals(String message, byte[] expected, byte[] actual){
+        if (!Arrays.equals(expected, actual)){
+            throw new AssertionError(message + ": the arrays are different");
+        }
+    }
+
+    public static void assertArrayEquals(String message, int[] expected, int[] actual){
+        if (!Arrays.equals(expected, actual)){
+            throw new AssertionError(message + ": expected " + Arrays.toString(expected) + ", but was " + Arrays.toString(actual));
+        }
+    }
+
+    /**
+     * Check that something throws an exception of a type (or of a subtype of it).
+     * @param message What is checked
+     * @param type The type of the exception
+     * @param runnable The code which should throw
+     */
+    public static void assertThrows(String message, Class<? extends Throwable> type, ThrowingRunnable runnable){
+        try {
+            runnable.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e)){
+                return;
+            }
+            throw new AssertionError(message + ": expected " + type.getSimpleName() + ", but " + e + " was thrown", e);
+        }
+        throw new AssertionError(message + ": expected " + type.getSimpleName() + ", but nothing was thrown");
+    }
+
+}